@@ -2,6 +2,7 @@ package fr.atlasworld.protocol;
 
 import fr.atlasworld.common.reflection.ReflectionFactory;
 import fr.atlasworld.protocol.internal.ApiBridge;
+import fr.atlasworld.protocol.socket.ClientRouter;
 import fr.atlasworld.protocol.socket.ClientSocket;
 import fr.atlasworld.protocol.socket.ServerSocket;
 import org.jetbrains.annotations.ApiStatus;
@@ -37,4 +38,8 @@ public final class AtlasProtocol {
     public static ClientSocket.Builder createClient() {
         return BRIDGE.createClient();
     }
+
+    public static ClientRouter createRouter() {
+        return BRIDGE.createRouter();
+    }
 }
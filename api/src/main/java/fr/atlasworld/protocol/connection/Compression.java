@@ -0,0 +1,25 @@
+package fr.atlasworld.protocol.connection;
+
+/**
+ * Payload compression algorithms that can be negotiated during the handshake.
+ * <p>
+ * Only payloads larger than the configured threshold are compressed,
+ * and only if compressing them actually makes them smaller.
+ */
+public enum Compression {
+
+    /**
+     * Payloads are sent as is.
+     */
+    NONE,
+
+    /**
+     * LZ4, very fast with a decent compression ratio.
+     */
+    LZ4,
+
+    /**
+     * Zstandard, slower than {@link #LZ4} but with a much better compression ratio.
+     */
+    ZSTD;
+}
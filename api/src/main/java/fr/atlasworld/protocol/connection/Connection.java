@@ -3,6 +3,9 @@ package fr.atlasworld.protocol.connection;
 import com.google.protobuf.Message;
 import fr.atlasworld.event.api.EventNode;
 import fr.atlasworld.protocol.event.connection.ConnectionEvent;
+import fr.atlasworld.protocol.metrics.NetworkMetrics;
+import fr.atlasworld.protocol.metrics.RoundTripTime;
+import fr.atlasworld.protocol.packet.Priority;
 import fr.atlasworld.protocol.packet.Response;
 import fr.atlasworld.protocol.socket.Socket;
 import fr.atlasworld.registry.RegistryKey;
@@ -50,13 +53,49 @@ public interface Connection {
     @UnknownNullability
     PublicKey publicKey();
 
+    /**
+     * Retrieve the payload compression negotiated with the remote.
+     *
+     * @return negotiated compression, {@link Compression#NONE} if the connection is not yet initialized,
+     *         or if no compression could be agreed on.
+     */
+    @NotNull
+    Compression compression();
+
+    /**
+     * Checks whether the connection resumed a previous session using a session ticket,
+     * in which case no asymmetric cryptography was involved during the handshake.
+     *
+     * @return true if the connection was resumed.
+     */
+    boolean resumed();
+
     /**
      * Ping (or latency) between the packets being sent and received.
+     * <p>
+     * This is the smoothed {@link #roundTripTime() round-trip time} in milliseconds.
      *
-     * @return current ping of the connection, {@code -1} if the connection has been terminated.
+     * @return current ping of the connection, {@code -1} if the connection has been terminated,
+     *         or if no ping has been answered yet.
      */
     int ping();
 
+    /**
+     * Retrieve the round-trip time of the connection, measured with keep-alive pings.
+     *
+     * @return current round-trip time estimate, {@link RoundTripTime#UNKNOWN} if no ping has been answered yet.
+     */
+    @NotNull
+    RoundTripTime roundTripTime();
+
+    /**
+     * Take a snapshot of the connection metrics.
+     *
+     * @return current metrics of the connection.
+     */
+    @NotNull
+    NetworkMetrics metrics();
+
     /**
      * Checks whether the connection is connected.
      * <p>
@@ -77,6 +116,8 @@ public interface Connection {
 
     /**
      * Send a packet to the remote.
+     * <p>
+     * Cancelling the returned future cancels the request, the remote is notified and stops awaiting a response.
      *
      * @param key key of the packet.
      * @param payload payload to be sent within the packet.
@@ -87,6 +128,41 @@ public interface Connection {
     @NotNull
     <P extends Message> CompletableFuture<Response> sendPacket(@NotNull RegistryKey key, @NotNull P payload);
 
+    /**
+     * Send a packet to the remote with a specific priority.
+     * <p>
+     * The response of the remote will be sent back using the same priority.
+     * Cancelling the returned future cancels the request, the remote is notified and stops awaiting a response.
+     *
+     * @param key key of the packet.
+     * @param payload payload to be sent within the packet.
+     * @param priority priority class of the packet.
+     *
+     * @return future that will contain the response from remote,
+     *         or fail if something went wrong during sending or receiving.
+     */
+    @NotNull
+    <P extends Message> CompletableFuture<Response> sendPacket(@NotNull RegistryKey key, @NotNull P payload, @NotNull Priority priority);
+
+    /**
+     * Send a packet to the remote with a specific priority and timeout, instead of the {@link #timeout() connection timeout}.
+     * <p>
+     * Handlers sending requests of their own should pass the {@link PacketHandlerContext#remainingTime() remaining time}
+     * of the request they handle, so nested requests don't outlive the original caller.
+     *
+     * @param key key of the packet.
+     * @param payload payload to be sent within the packet.
+     * @param priority priority class of the packet.
+     * @param timeout maximum time to wait for a response.
+     *
+     * @return future that will contain the response from remote,
+     *         or fail if something went wrong during sending or receiving.
+     *         Already failed with a {@link java.util.concurrent.TimeoutException} if the {@code timeout} is lower than a millisecond.
+     */
+    @NotNull
+    <P extends Message> CompletableFuture<Response> sendPacket(@NotNull RegistryKey key, @NotNull P payload, @NotNull Priority priority,
+                                                               @NotNull Duration timeout);
+
     /**
      * Disconnects this connection.
      *
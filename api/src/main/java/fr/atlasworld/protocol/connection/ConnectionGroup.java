@@ -3,6 +3,7 @@ package fr.atlasworld.protocol.connection;
 import com.google.protobuf.Message;
 import fr.atlasworld.event.api.EventNode;
 import fr.atlasworld.protocol.event.connection.ConnectionEvent;
+import fr.atlasworld.protocol.packet.Priority;
 import fr.atlasworld.protocol.packet.Response;
 import fr.atlasworld.registry.RegistryKey;
 import org.jetbrains.annotations.NotNull;
@@ -62,6 +63,17 @@ public interface ConnectionGroup {
      */
     <P extends Message> Set<CompletableFuture<Response>> sendPacket(@NotNull RegistryKey key, @NotNull P payload);
 
+    /**
+     * Send a packet to all connections with a specific priority.
+     *
+     * @param key key of the packet.
+     * @param payload payload to be sent within the packet.
+     * @param priority priority class of the packet.
+     *
+     * @return a set of future for every remote the packet was sent to.
+     */
+    <P extends Message> Set<CompletableFuture<Response>> sendPacket(@NotNull RegistryKey key, @NotNull P payload, @NotNull Priority priority);
+
     /**
      * Retrieve all connections in this group.
      *
@@ -0,0 +1,132 @@
+package fr.atlasworld.protocol.connection;
+
+import com.google.common.base.Preconditions;
+import com.google.protobuf.Message;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Trains a compression dictionary from sample payloads of a single packet type.
+ * <p>
+ * Small packets barely compress on their own, but packets of the same type tend to share most of their content.
+ * A dictionary built from captured traffic lets those shared parts be referenced instead of being sent again.
+ * Train it offline, ship it with both the client and the server and register it on both socket builders.
+ * <p>
+ * The dictionary is made of the byte sequences shared by the most samples,
+ * the most common ones are placed last as they are the cheapest to reference.
+ */
+public final class DictionaryTrainer {
+
+    /**
+     * Default size of a trained dictionary.
+     */
+    public static final int DEFAULT_DICTIONARY_SIZE = 4096;
+
+    /**
+     * Maximum size of a dictionary, anything past this size can't be referenced by the compressor.
+     */
+    public static final int MAX_DICTIONARY_SIZE = 32768;
+
+    private static final int SEGMENT_SIZE = 8;
+
+    private final List<byte[]> samples;
+
+    public DictionaryTrainer() {
+        this.samples = new ArrayList<>();
+    }
+
+    /**
+     * Adds a sample payload.
+     *
+     * @param payload raw payload of a packet.
+     *
+     * @return this trainer.
+     */
+    public DictionaryTrainer addSample(byte @NotNull [] payload) {
+        Preconditions.checkNotNull(payload);
+
+        this.samples.add(payload.clone());
+        return this;
+    }
+
+    /**
+     * Adds a sample payload.
+     *
+     * @param payload payload of a packet.
+     *
+     * @return this trainer.
+     */
+    public DictionaryTrainer addSample(@NotNull Message payload) {
+        Preconditions.checkNotNull(payload);
+
+        this.samples.add(payload.toByteArray());
+        return this;
+    }
+
+    /**
+     * Trains a dictionary of at most {@link #DEFAULT_DICTIONARY_SIZE} bytes.
+     *
+     * @return trained dictionary, may be empty if the samples have nothing in common.
+     */
+    public byte @NotNull [] train() {
+        return this.train(DEFAULT_DICTIONARY_SIZE);
+    }
+
+    /**
+     * Trains a dictionary.
+     *
+     * @param maxSize maximum size of the dictionary in bytes.
+     *
+     * @return trained dictionary, may be empty if the samples have nothing in common.
+     *
+     * @throws IllegalArgumentException if {@code maxSize} is not positive or exceeds {@link #MAX_DICTIONARY_SIZE}.
+     */
+    public byte @NotNull [] train(int maxSize) {
+        Preconditions.checkArgument(maxSize > 0 && maxSize <= MAX_DICTIONARY_SIZE,
+                "Dictionary size must be between 1 and " + MAX_DICTIONARY_SIZE + " bytes!");
+
+        // Count in how many samples each segment appears, common segments across samples are what we are after.
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (byte[] sample : this.samples) {
+            Set<String> seen = new HashSet<>();
+
+            for (int i = 0; i + SEGMENT_SIZE <= sample.length; i++) {
+                String segment = new String(sample, i, SEGMENT_SIZE, StandardCharsets.ISO_8859_1);
+
+                if (seen.add(segment))
+                    frequencies.merge(segment, 1, Integer::sum);
+            }
+        }
+
+        List<Map.Entry<String, Integer>> segments = new ArrayList<>(frequencies.entrySet());
+        segments.removeIf(entry -> entry.getValue() < 2);
+        segments.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+
+        List<String> selected = new ArrayList<>();
+        StringBuilder content = new StringBuilder();
+        int size = 0;
+
+        for (Map.Entry<String, Integer> entry : segments) {
+            if (size + SEGMENT_SIZE > maxSize)
+                break;
+
+            String segment = entry.getKey();
+            if (content.indexOf(segment) != -1) // Already covered by previous segments.
+                continue;
+
+            selected.add(segment);
+            content.append(segment);
+            size += SEGMENT_SIZE;
+        }
+
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(size);
+        for (int i = selected.size() - 1; i >= 0; i--) {
+            dictionary.writeBytes(selected.get(i).getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        return dictionary.toByteArray();
+    }
+}
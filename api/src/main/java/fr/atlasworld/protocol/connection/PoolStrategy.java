@@ -0,0 +1,22 @@
+package fr.atlasworld.protocol.connection;
+
+/**
+ * Strategy used by a pooled client to pick the connection a packet is sent on.
+ */
+public enum PoolStrategy {
+
+    /**
+     * Sends every packet on the connection with the least requests awaiting a response.
+     * <p>
+     * Spreads the load the best, but packets of the same type may be received out of order.
+     */
+    LEAST_IN_FLIGHT,
+
+    /**
+     * Sends all packets of the same type on the same connection, picked from the packet key.
+     * <p>
+     * Packets of the same type and {@link fr.atlasworld.protocol.packet.Priority priority} are received in order,
+     * as long as their connection stays up.
+     */
+    KEY_AFFINITY;
+}
@@ -71,6 +71,12 @@ public class ConnectionTerminatedEvent extends ConnectionEvent {
          */
         INTERRUPTED,
 
+        /**
+         * The remote stopped sending anything, not even heartbeats, for longer than the read idle timeout.
+         * The connection was considered dead and evicted.
+         */
+        UNRESPONSIVE,
+
         /**
          * Called when the connection was refused,
          * in that case a {@link ConnectionRefusedEvent} is also called for more details.
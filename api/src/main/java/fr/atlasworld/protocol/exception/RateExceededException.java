@@ -16,6 +16,10 @@ public class RateExceededException extends NetworkException {
         super(message, CODE, UNDEFINED_COMMUNICATION_IDENTIFIER);
     }
 
+    public RateExceededException(String message, UUID identifier) {
+        super(message, CODE, identifier);
+    }
+
     public RateExceededException(String message, Throwable cause) {
         super(message, cause, CODE, UNDEFINED_COMMUNICATION_IDENTIFIER);
     }
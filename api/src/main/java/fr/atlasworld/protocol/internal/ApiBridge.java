@@ -1,5 +1,6 @@
 package fr.atlasworld.protocol.internal;
 
+import fr.atlasworld.protocol.socket.ClientRouter;
 import fr.atlasworld.protocol.socket.ClientSocket;
 import fr.atlasworld.protocol.socket.ServerSocket;
 import org.jetbrains.annotations.ApiStatus;
@@ -8,4 +9,5 @@ import org.jetbrains.annotations.ApiStatus;
 public interface ApiBridge {
     ServerSocket.Builder createServer();
     ClientSocket.Builder createClient();
+    ClientRouter createRouter();
 }
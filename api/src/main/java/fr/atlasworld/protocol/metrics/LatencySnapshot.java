@@ -0,0 +1,20 @@
+package fr.atlasworld.protocol.metrics;
+
+/**
+ * Point-in-time view of a latency histogram.
+ * <p>
+ * All values are in nanoseconds, percentiles are approximated:
+ * recorded values are bucketed and reported with a relative error of at most 12.5%.
+ *
+ * @param count amount of recorded values.
+ * @param min lowest recorded value.
+ * @param max highest recorded value.
+ * @param mean average of all recorded values.
+ * @param p50 median of the recorded values.
+ * @param p90 90th percentile of the recorded values.
+ * @param p99 99th percentile of the recorded values.
+ * @param p999 99.9th percentile of the recorded values.
+ */
+public record LatencySnapshot(long count, long min, long max, long mean, long p50, long p90, long p99, long p999) {
+    public static final LatencySnapshot EMPTY = new LatencySnapshot(0, 0, 0, 0, 0, 0, 0, 0);
+}
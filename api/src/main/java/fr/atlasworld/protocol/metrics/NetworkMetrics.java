@@ -0,0 +1,42 @@
+package fr.atlasworld.protocol.metrics;
+
+import fr.atlasworld.protocol.connection.Connection;
+import fr.atlasworld.protocol.socket.Socket;
+import fr.atlasworld.registry.RegistryKey;
+
+import java.util.Map;
+
+/**
+ * Point-in-time view of the metrics of a {@link Socket} or a {@link Connection}.
+ * <p>
+ * Counters are cumulative since the creation of the socket or connection,
+ * compare two snapshots to compute rates.
+ *
+ * @param packetsIn amount of packets received.
+ * @param packetsOut amount of packets sent.
+ * @param bytesIn amount of bytes received, after decryption and before decompression.
+ * @param bytesOut amount of bytes sent, after compression and before encryption.
+ * @param inFlightRequests amount of sent requests still awaiting a response.
+ * @param timeouts amount of sent requests that timed out.
+ * @param acknowledgements amount of sent requests acknowledged by the remote.
+ * @param expiredRequests amount of received requests dropped because their deadline passed before being handled.
+ * @param deduplicatedRequests amount of received duplicate requests answered without being handled again.
+ * @param queuedPackets amount of packets waiting to be written to the network.
+ * @param queuedHandshakes amount of handshakes waiting for a handshake worker, always 0 on client-side and for connections.
+ * @param handshakeDuration time taken by handshakes, from the connection being opened to the connection being validated.
+ * @param encryptionTime time taken to encrypt or decrypt and sign a single packet.
+ * @param requestLatency time taken to serve received requests per packet type,
+ *                       from the request being received to the response being sent.
+ * @param acknowledgementLatency time taken by the remote to acknowledge sent requests per packet type,
+ *                               from the request being written to the acknowledgement being received.
+ * @param responseLatency time taken by the remote to respond to sent requests per packet type,
+ *                        from the request being written to the response being received.
+ */
+public record NetworkMetrics(long packetsIn, long packetsOut, long bytesIn, long bytesOut,
+                             long inFlightRequests, long timeouts, long acknowledgements, long expiredRequests, long deduplicatedRequests,
+                             long queuedPackets, long queuedHandshakes,
+                             LatencySnapshot handshakeDuration, LatencySnapshot encryptionTime,
+                             Map<RegistryKey, LatencySnapshot> requestLatency,
+                             Map<RegistryKey, LatencySnapshot> acknowledgementLatency,
+                             Map<RegistryKey, LatencySnapshot> responseLatency) {
+}
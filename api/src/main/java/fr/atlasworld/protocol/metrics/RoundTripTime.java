@@ -0,0 +1,20 @@
+package fr.atlasworld.protocol.metrics;
+
+/**
+ * Round-trip time of a connection, measured with keep-alive pings.
+ * <p>
+ * All values are in nanoseconds and measured using the local clock only,
+ * clock differences between the two hosts have no effect.
+ *
+ * @param smoothed exponentially weighted moving average of the round-trip time.
+ * @param jitter smoothed mean deviation of the round-trip time.
+ * @param min lowest round-trip time of the last {@value #WINDOW} pings.
+ * @param max highest round-trip time of the last {@value #WINDOW} pings.
+ * @param last round-trip time of the last ping.
+ * @param samples amount of pings answered since the connection was established.
+ */
+public record RoundTripTime(long smoothed, long jitter, long min, long max, long last, long samples) {
+    public static final int WINDOW = 16;
+
+    public static final RoundTripTime UNKNOWN = new RoundTripTime(0, 0, 0, 0, 0, 0);
+}
@@ -5,6 +5,8 @@ import fr.atlasworld.protocol.connection.Connection;
 import fr.atlasworld.protocol.socket.Socket;
 import org.jetbrains.annotations.NotNull;
 
+import java.time.Duration;
+
 /**
  * Packet Handling context, used to handle packets.
  */
@@ -17,6 +19,35 @@ public interface PacketHandlerContext {
      */
     Responder responder();
 
+    /**
+     * Checks whether the request was cancelled by the remote.
+     * <p>
+     * Long-running handlers should check it regularly and stop early,
+     * responses to cancelled requests are never sent.
+     *
+     * @return true if the request was cancelled, false otherwise.
+     */
+    boolean cancelled();
+
+    /**
+     * Retrieve the time left before the remote stops awaiting the response.
+     * <p>
+     * The deadline is computed from the request timeout and the time the request was received,
+     * and is extended when the request is {@link Responder#acknowledge(Duration) acknowledged}.
+     * Pass it when {@link Connection#sendPacket sending} nested requests, so they don't outlive this one.
+     *
+     * @return remaining time, {@link Duration#ZERO} if the deadline passed.
+     */
+    @NotNull
+    Duration remainingTime();
+
+    /**
+     * Checks whether the deadline of the request passed, the response would then be ignored by the remote.
+     *
+     * @return true if the deadline passed, false otherwise.
+     */
+    boolean expired();
+
     /**
      * Retrieve the side on which the packet was received.
      *
@@ -0,0 +1,44 @@
+package fr.atlasworld.protocol.packet;
+
+/**
+ * Priority class of a packet.
+ * <p>
+ * Every connection schedules its outgoing packets per priority class,
+ * large packets are split into chunks and interleaved with packets of the other classes.
+ * This prevents a large transfer from blocking small latency-sensitive requests behind it.
+ * <p>
+ * Packets within the same priority class are always sent in order.
+ */
+public enum Priority {
+
+    /**
+     * Latency-sensitive packets, gets the biggest share of the connection.
+     */
+    HIGH(4),
+
+    /**
+     * Default priority of packets.
+     */
+    NORMAL(2),
+
+    /**
+     * Bulk transfers, only gets the left-over share of the connection.
+     */
+    LOW(1);
+
+    private final int weight;
+
+    Priority(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * Retrieve the weight of the priority class,
+     * this is the amount of chunks the class can send per scheduling round.
+     *
+     * @return weight of the priority class.
+     */
+    public int weight() {
+        return this.weight;
+    }
+}
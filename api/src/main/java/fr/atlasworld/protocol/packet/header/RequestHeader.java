@@ -1,6 +1,7 @@
 package fr.atlasworld.protocol.packet.header;
 
 import fr.atlasworld.protocol.exception.request.UnknownRequestException;
+import fr.atlasworld.protocol.packet.Priority;
 import fr.atlasworld.registry.RegistryKey;
 import org.jetbrains.annotations.NotNull;
 
@@ -25,4 +26,12 @@ public interface RequestHeader extends Header {
      */
     @NotNull
     RegistryKey request() throws UnknownRequestException;
+
+    /**
+     * Retrieve the priority class the request was sent with.
+     *
+     * @return priority of the request.
+     */
+    @NotNull
+    Priority priority();
 }
@@ -0,0 +1,24 @@
+package fr.atlasworld.protocol.security;
+
+/**
+ * Cryptographic suite used by the server to establish the session key during the handshake.
+ * <p>
+ * The suite is chosen by the server, clients must use identity keys matching the server's suite,
+ * and the {@link Authenticator} must return keys of the same kind.
+ */
+public enum HandshakeSuite {
+
+    /**
+     * RSA identity keys, the session key is generated by the server
+     * and exchanged encrypted with the identity keys of both sides.
+     */
+    RSA,
+
+    /**
+     * Ed25519 identity keys, the session key is agreed on using ephemeral X25519 keys,
+     * and both sides sign the exchange with their identity keys.
+     * <p>
+     * Key generation and handshake are an order of magnitude cheaper than {@link #RSA}.
+     */
+    X25519;
+}
@@ -0,0 +1,112 @@
+package fr.atlasworld.protocol.socket;
+
+import com.google.protobuf.Message;
+import fr.atlasworld.protocol.AtlasProtocol;
+import fr.atlasworld.protocol.connection.Connection;
+import fr.atlasworld.protocol.packet.Priority;
+import fr.atlasworld.protocol.packet.Response;
+import fr.atlasworld.registry.RegistryKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Routes requests across client sockets connected to identical servers.
+ * <p>
+ * Every request is routed using a key supplied by the caller, like a player identifier,
+ * a key is always routed to the same socket as long as the sockets don't change.
+ * Sockets are picked using rendezvous hashing: adding or removing a socket only moves the keys routed to or from it,
+ * and keys of a socket which is not connected are routed to their next socket until it reconnects.
+ * <p>
+ * Routing keys must have a {@link Object#hashCode() hash code} consistent across processes,
+ * like {@link String} or {@link java.util.UUID}, for different clients to route a key to the same socket.
+ */
+public interface ClientRouter {
+
+    /**
+     * Create a new empty {@link ClientRouter}.
+     *
+     * @return newly created {@link ClientRouter}.
+     */
+    static ClientRouter create() {
+        return AtlasProtocol.createRouter();
+    }
+
+    /**
+     * Adds a socket to the router.
+     * <p>
+     * Sockets are identified by their {@link Socket#address() address} when added,
+     * which must be the same across clients for them to route keys the same way.
+     *
+     * @param socket socket to add.
+     *
+     * @throws IllegalArgumentException if the socket or a socket with the same address was already added.
+     */
+    void addSocket(@NotNull ClientSocket socket);
+
+    /**
+     * Removes a socket from the router, the socket is not stopped.
+     *
+     * @param socket socket to remove.
+     *
+     * @return true if the socket was removed, false if it was not part of the router.
+     */
+    boolean removeSocket(@NotNull ClientSocket socket);
+
+    /**
+     * Retrieve the sockets of the router.
+     *
+     * @return unmodifiable list of the sockets.
+     */
+    @NotNull
+    List<ClientSocket> sockets();
+
+    /**
+     * Retrieve the socket a key is routed to.
+     *
+     * @param key routing key.
+     *
+     * @return socket the key is routed to.
+     *
+     * @throws IllegalStateException if none of the sockets are connected.
+     */
+    @NotNull
+    ClientSocket route(@NotNull Object key);
+
+    /**
+     * Sends a request to the socket the key is routed to.
+     *
+     * @param routingKey routing key.
+     * @param key key of the packet.
+     * @param payload payload of the request.
+     *
+     * @return future completed with the response.
+     *
+     * @throws IllegalStateException if none of the sockets are connected.
+     * @see Connection#sendPacket(RegistryKey, Message)
+     */
+    default <P extends Message> CompletableFuture<Response> sendPacket(@NotNull Object routingKey, @NotNull RegistryKey key,
+                                                                      @Nullable P payload) {
+        return this.sendPacket(routingKey, key, payload, Priority.NORMAL);
+    }
+
+    /**
+     * Sends a request to the socket the key is routed to.
+     *
+     * @param routingKey routing key.
+     * @param key key of the packet.
+     * @param payload payload of the request.
+     * @param priority priority of the request.
+     *
+     * @return future completed with the response.
+     *
+     * @throws IllegalStateException if none of the sockets are connected.
+     * @see Connection#sendPacket(RegistryKey, Message, Priority)
+     */
+    default <P extends Message> CompletableFuture<Response> sendPacket(@NotNull Object routingKey, @NotNull RegistryKey key,
+                                                                      @Nullable P payload, @NotNull Priority priority) {
+        return this.route(routingKey).connection().sendPacket(key, payload, priority);
+    }
+}
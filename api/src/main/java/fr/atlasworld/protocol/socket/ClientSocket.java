@@ -6,11 +6,18 @@ import fr.atlasworld.event.api.Event;
 import fr.atlasworld.event.api.EventNode;
 import fr.atlasworld.protocol.AtlasProtocol;
 import fr.atlasworld.protocol.ServerInfo;
+import fr.atlasworld.protocol.connection.Compression;
 import fr.atlasworld.protocol.connection.Connection;
+import fr.atlasworld.protocol.connection.DictionaryTrainer;
+import fr.atlasworld.protocol.connection.PoolStrategy;
+import fr.atlasworld.protocol.event.connection.ConnectionTerminatedEvent;
 import fr.atlasworld.protocol.exception.NetworkRateLimitedException;
+import fr.atlasworld.protocol.exception.RateExceededException;
 import fr.atlasworld.protocol.packet.Packet;
 import fr.atlasworld.protocol.security.HandshakeHandler;
+import fr.atlasworld.protocol.security.HandshakeSuite;
 import fr.atlasworld.registry.Registry;
+import fr.atlasworld.registry.RegistryKey;
 import org.jetbrains.annotations.NotNull;
 
 import java.net.InetSocketAddress;
@@ -28,6 +35,9 @@ public interface ClientSocket extends Socket {
 
     /**
      * Retrieve the client connection.
+     * <p>
+     * When the socket uses a {@link Builder#connectionPool(int, PoolStrategy) connection pool},
+     * the returned connection spreads its packets across all the pooled connections.
      *
      * @return client connection.
      *
@@ -58,6 +68,21 @@ public interface ClientSocket extends Socket {
         @RequiredBuilderArgument
         Builder connectAddress(@NotNull InetSocketAddress address);
 
+        /**
+         * Sets the addresses of the server, replacing the {@link #connectAddress(InetSocketAddress) connect address}.
+         * <p>
+         * Connections are attempted in parallel, healthiest endpoints first with a short delay between two attempts,
+         * the first connection to finish its handshake is kept and the others are closed.
+         * Endpoints failing to connect or losing their connection are tried last on the next attempts,
+         * when {@link #reconnect(Duration, Duration, int) reconnecting} the client fails over to the other endpoints right away.
+         *
+         * @param addresses addresses of the server.
+         *
+         * @throws IllegalArgumentException if no address is specified.
+         */
+        @RequiredBuilderArgument
+        Builder connectAddresses(@NotNull InetSocketAddress... addresses);
+
         /**
          * Define the root node, where socket events will be notified.
          *
@@ -80,7 +105,8 @@ public interface ClientSocket extends Socket {
         /**
          * Sets the client authentication parameters required to authenticate to the server.
          * <p>
-         * This uses the default authentication mechanism from the protocol.
+         * This uses the default authentication mechanism from the protocol,
+         * the key must match the server's {@link HandshakeSuite}.
          *
          * @param identifier   identifier of the client.
          * @param challengeKey private key used in the challenge.
@@ -91,7 +117,8 @@ public interface ClientSocket extends Socket {
         /**
          * Sets the client authentication parameters required to authenticate to the server.
          * <p>
-         * This uses the default authentication mechanism from the protocol.
+         * This uses the default authentication mechanism from the protocol,
+         * the keys must match the server's {@link HandshakeSuite}.
          *
          * @param identifier identifier of the client.
          * @param pair key pair used in the authentication challenge.
@@ -127,6 +154,7 @@ public interface ClientSocket extends Socket {
          * <p>
          * <b>Warning: </b> We speak about packets not requests,
          * this includes acknowledgement, requests and response packets.
+         * Only applies once the handshake completed, see {@link #handshakeRateLimit(int)}.
          * <p>
          * <b>Default: </b> 50 packets per seconds.
          * <br>
@@ -138,6 +166,60 @@ public interface ClientSocket extends Socket {
         @OptionalBuilderArgument
         Builder rateLimit(int rateLimit);
 
+        /**
+         * Sets the handshake packet rate-limit <b>per second</b>,
+         * applies to every packet received before the handshake completed.
+         * <p>
+         * <b>Default: </b> 10 packets per seconds.
+         *
+         * @param rateLimit amount of handshake packets that can be sent per seconds.
+         *
+         * @throws IllegalArgumentException if {@code rateLimit} is negative or zero.
+         */
+        @OptionalBuilderArgument
+        Builder handshakeRateLimit(int rateLimit);
+
+        /**
+         * Sets the inbound bandwidth limit of a connection, in bytes <b>per second</b>.
+         * Exceeding it has the same effect as exceeding the {@link #rateLimit(int) rate-limit}.
+         * <p>
+         * <b>Default: </b> unlimited.
+         *
+         * @param bytesPerSecond amount of bytes that can be received per seconds, {@code 0} for unlimited.
+         *
+         * @throws IllegalArgumentException if {@code bytesPerSecond} is negative.
+         */
+        @OptionalBuilderArgument
+        Builder bandwidthLimit(int bytesPerSecond);
+
+        /**
+         * Sets the rate-limit <b>per second</b> of a packet type, applied on top of the {@link #rateLimit(int) rate-limit}.
+         * Requests exceeding it are not handled, and a {@link RateExceededException} is sent back as response.
+         * <p>
+         * <b>Default: </b> only the {@link #rateLimit(int) rate-limit} applies.
+         *
+         * @param packet key of the packet.
+         * @param rateLimit amount of requests of this type that can be received per seconds.
+         *
+         * @throws IllegalArgumentException if {@code rateLimit} is negative or zero.
+         */
+        @OptionalBuilderArgument
+        Builder packetRateLimit(@NotNull RegistryKey packet, int rateLimit);
+
+        /**
+         * Sets the rate-limit <b>per second</b> of a packet type, applied on top of the {@link #rateLimit(int) rate-limit}.
+         * Also limits the payload bytes of this type, making large requests cost more.
+         * Requests exceeding it are not handled, and a {@link RateExceededException} is sent back as response.
+         *
+         * @param packet key of the packet.
+         * @param rateLimit amount of requests of this type that can be received per seconds.
+         * @param bytesPerSecond amount of payload bytes of this type that can be received per seconds, {@code 0} for unlimited.
+         *
+         * @throws IllegalArgumentException if {@code rateLimit} is negative or zero, or if {@code bytesPerSecond} is negative.
+         */
+        @OptionalBuilderArgument
+        Builder packetRateLimit(@NotNull RegistryKey packet, int rateLimit, int bytesPerSecond);
+
         /**
          * Sets the timeout for a request to be responded to.
          * <p>
@@ -162,6 +244,130 @@ public interface ClientSocket extends Socket {
         @OptionalBuilderArgument
         Builder connectTimeout(@NotNull Duration timeout);
 
+        /**
+         * Sets the interval between keep-alive pings.
+         * <p>
+         * Pings measure the {@link Connection#roundTripTime() round-trip time} of the connection,
+         * using {@link Duration#ZERO} disables them and the connection ping will stay unknown.
+         * <p>
+         * <b>Default:</b> 5secs.
+         *
+         * @param interval duration between two pings.
+         *
+         * @throws IllegalArgumentException if the specified {@code interval} is negative.
+         */
+        @OptionalBuilderArgument
+        Builder pingInterval(@NotNull Duration interval);
+
+        /**
+         * Sets the idle timeouts of connections.
+         * <p>
+         * A connection that did not write anything for the {@code writeTimeout} sends a heartbeat,
+         * a connection that did not receive anything for the {@code readTimeout} is considered dead and is evicted,
+         * terminating it with {@link ConnectionTerminatedEvent.Cause#UNRESPONSIVE}.
+         * The read timeout should be longer than the write timeout (and ping interval) of the remote.
+         * Using {@link Duration#ZERO} disables the timeout.
+         * <p>
+         * <b>Default:</b> 30secs read, 10secs write.
+         *
+         * @param readTimeout duration without receiving anything before evicting the connection.
+         * @param writeTimeout duration without sending anything before sending a heartbeat.
+         *
+         * @throws IllegalArgumentException if one of the specified timeouts is negative.
+         */
+        @OptionalBuilderArgument
+        Builder idleTimeout(@NotNull Duration readTimeout, @NotNull Duration writeTimeout);
+
+        /**
+         * Sets the amount of connections opened to the server.
+         * <p>
+         * Every pooled connection is authenticated separately and has its own event loop and encryption keys,
+         * so the network and encryption load is spread across multiple cores.
+         * The socket is considered opened once all the connections are established.
+         * <p>
+         * <b>Default:</b> a single connection.
+         *
+         * @param size amount of connections to open.
+         * @param strategy strategy used to pick the connection of every packet.
+         *
+         * @throws IllegalArgumentException if the specified {@code size} is lower than 1.
+         */
+        @OptionalBuilderArgument
+        Builder connectionPool(int size, @NotNull PoolStrategy strategy);
+
+        /**
+         * Enables reconnecting when a connection to the server is lost.
+         * <p>
+         * Attempts are delayed exponentially from the {@code initialDelay} up to the {@code maxDelay}, with a random jitter.
+         * Requests sent while reconnecting are buffered, up to {@code bufferSize}, and sent once reconnected,
+         * they fail if the client did not reconnect within the request timeout.
+         * Requests of {@link #idempotentPacket(RegistryKey) idempotent packets} awaiting a response
+         * when the connection was lost are sent again.
+         * <p>
+         * The client keeps reconnecting until it is {@link ClientSocket#stop(boolean) stopped}
+         * or its {@link ClientSocket#connection() connection} is disconnected.
+         * <p>
+         * <b>Default:</b> disabled.
+         *
+         * @param initialDelay delay before the first attempt.
+         * @param maxDelay maximum delay between two attempts.
+         * @param bufferSize maximum amount of requests buffered while reconnecting, {@code 0} to not buffer.
+         *
+         * @throws IllegalArgumentException if a delay is not positive, if the {@code maxDelay} is lower
+         *                                  than the {@code initialDelay} or if the {@code bufferSize} is negative.
+         */
+        @OptionalBuilderArgument
+        Builder reconnect(@NotNull Duration initialDelay, @NotNull Duration maxDelay, int bufferSize);
+
+        /**
+         * Marks a packet as idempotent, handling it multiple times has the same effect as handling it once.
+         * <p>
+         * Requests of idempotent packets may be sent again, using the same request identifier,
+         * when their connection is lost before a response was received.
+         *
+         * @param packet idempotent packet.
+         */
+        @OptionalBuilderArgument
+        Builder idempotentPacket(@NotNull RegistryKey packet);
+
+        /**
+         * Enables hedging of {@link #idempotentPacket(RegistryKey) idempotent} requests.
+         * <p>
+         * A request still awaiting a response after the specified {@code percentile} of the response latency
+         * of its packet is sent again on another pooled connection, the first response received is kept
+         * and the other request is cancelled.
+         * Hedging only starts once enough responses of the packet were received,
+         * and requires a {@link #connectionPool(int, PoolStrategy) connection pool} of at least two connections.
+         * <p>
+         * Hedging after the 95th percentile sends about 5% more requests, and cuts the tail latency caused by a slow connection.
+         * <p>
+         * <b>Default:</b> disabled.
+         *
+         * @param percentile percentile of the response latency after which requests are hedged, like {@code 0.95}.
+         *
+         * @throws IllegalArgumentException if the {@code percentile} is not between 0 and 1, both excluded.
+         */
+        @OptionalBuilderArgument
+        Builder hedging(double percentile);
+
+        /**
+         * Caches the responses received for a read-only packet type, requests with identical payloads
+         * are completed from the cache without being sent to the server.
+         * <p>
+         * Only success responses are cached, until they expire or are {@link ClientSocket#invalidateResponses(RegistryKey) invalidated}.
+         * When full, the responses requested the least often recently are evicted first.
+         * <p>
+         * <b>Default:</b> responses are not cached.
+         *
+         * @param packet key of the packet.
+         * @param lifetime time during which a response is kept.
+         * @param maxEntries maximum amount of kept responses for this packet type.
+         *
+         * @throws IllegalArgumentException if {@code lifetime} or {@code maxEntries} is negative or zero.
+         */
+        @OptionalBuilderArgument
+        Builder cacheResponses(@NotNull RegistryKey packet, @NotNull Duration lifetime, int maxEntries);
+
         /**
          * Whether fast TCP should be enabled.
          * <p>
@@ -170,6 +376,49 @@ public interface ClientSocket extends Socket {
         @OptionalBuilderArgument
         Builder enableFastTCP(boolean fastTcp);
 
+        /**
+         * Sets the payload compression algorithms supported by the client, in order of preference.
+         * <p>
+         * The first algorithm also supported by the server will be used for the connection,
+         * if none match the connection won't use compression.
+         * <p>
+         * Default: no compression.
+         *
+         * @param algorithms supported algorithms.
+         */
+        @OptionalBuilderArgument
+        Builder compression(@NotNull Compression... algorithms);
+
+        /**
+         * Sets the minimum payload size before compressing it, smaller payloads are sent as is.
+         * <p>
+         * Default: 256 bytes.
+         *
+         * @param threshold minimum size in bytes of a payload to compress it.
+         *
+         * @throws IllegalArgumentException if {@code threshold} is negative.
+         */
+        @OptionalBuilderArgument
+        Builder compressionThreshold(int threshold);
+
+        /**
+         * Registers a compression dictionary for a packet type,
+         * see {@link DictionaryTrainer} to create one.
+         * <p>
+         * Requests of this type will be compressed with the dictionary,
+         * as long as the server registered the exact same dictionary for it.
+         * This works regardless of the negotiated {@link #compression(Compression...) compression},
+         * and is meant for small packets that would not compress on their own.
+         *
+         * @param packet key of the packet.
+         * @param dictionary dictionary of the packet.
+         *
+         * @throws IllegalArgumentException if the dictionary is empty,
+         *         or larger than {@link DictionaryTrainer#MAX_DICTIONARY_SIZE}.
+         */
+        @OptionalBuilderArgument
+        Builder compressionDictionary(@NotNull RegistryKey packet, byte @NotNull [] dictionary);
+
         /**
          * Whether to disable Nagle's Algorithm.
          * This can lower the latency but at cost of bandwidth.
@@ -5,12 +5,19 @@ import fr.atlasworld.common.annotation.RequiredBuilderArgument;
 import fr.atlasworld.event.api.Event;
 import fr.atlasworld.event.api.EventNode;
 import fr.atlasworld.protocol.AtlasProtocol;
+import fr.atlasworld.protocol.connection.Compression;
+import fr.atlasworld.protocol.connection.Connection;
 import fr.atlasworld.protocol.connection.ConnectionGroup;
+import fr.atlasworld.protocol.connection.DictionaryTrainer;
+import fr.atlasworld.protocol.event.connection.ConnectionTerminatedEvent;
 import fr.atlasworld.protocol.exception.NetworkRateLimitedException;
+import fr.atlasworld.protocol.exception.RateExceededException;
 import fr.atlasworld.protocol.packet.Packet;
 import fr.atlasworld.protocol.security.Authenticator;
 import fr.atlasworld.protocol.security.HandshakeHandler;
+import fr.atlasworld.protocol.security.HandshakeSuite;
 import fr.atlasworld.registry.Registry;
+import fr.atlasworld.registry.RegistryKey;
 import org.jetbrains.annotations.NotNull;
 
 import java.net.InetSocketAddress;
@@ -41,6 +48,20 @@ public interface ServerSocket extends Socket {
     @NotNull
     KeyPair sessionKeyPair();
 
+    /**
+     * Retrieve the amount of bytes received by all connections during the last second.
+     *
+     * @return inbound bytes per second, or 0 if the socket is not running.
+     */
+    long inboundThroughput();
+
+    /**
+     * Retrieve the amount of bytes sent to all connections during the last second.
+     *
+     * @return outbound bytes per second, or 0 if the socket is not running.
+     */
+    long outboundThroughput();
+
     /**
      * Builder to create a new {@link ServerSocket}.
      */
@@ -106,6 +127,7 @@ public interface ServerSocket extends Socket {
          * <p>
          * <b>Warning: </b> We speak about packets not requests,
          * this includes acknowledgement, requests and response packets.
+         * Only applies once the handshake completed, see {@link #handshakeRateLimit(int)}.
          * <p>
          * <b>Default: </b> 50 packets per seconds.
          * <br>
@@ -117,6 +139,87 @@ public interface ServerSocket extends Socket {
         @OptionalBuilderArgument
         Builder rateLimit(int rateLimit);
 
+        /**
+         * Sets the handshake packet rate-limit <b>per second</b>,
+         * applies to every packet received before the handshake completed.
+         * <p>
+         * <b>Default: </b> 10 packets per seconds.
+         *
+         * @param rateLimit amount of handshake packets that can be sent per seconds.
+         *
+         * @throws IllegalArgumentException if {@code rateLimit} is negative or zero.
+         */
+        @OptionalBuilderArgument
+        Builder handshakeRateLimit(int rateLimit);
+
+        /**
+         * Sets the inbound bandwidth limit of a connection, in bytes <b>per second</b>.
+         * Exceeding it has the same effect as exceeding the {@link #rateLimit(int) rate-limit}.
+         * <p>
+         * <b>Default: </b> unlimited.
+         *
+         * @param bytesPerSecond amount of bytes that can be received per seconds, {@code 0} for unlimited.
+         *
+         * @throws IllegalArgumentException if {@code bytesPerSecond} is negative.
+         */
+        @OptionalBuilderArgument
+        Builder bandwidthLimit(int bytesPerSecond);
+
+        /**
+         * Sets the rate-limit <b>per second</b> of a packet type, applied on top of the {@link #rateLimit(int) rate-limit}.
+         * Requests exceeding it are not handled, and a {@link RateExceededException} is sent back as response.
+         * <p>
+         * <b>Default: </b> only the {@link #rateLimit(int) rate-limit} applies.
+         *
+         * @param packet key of the packet.
+         * @param rateLimit amount of requests of this type that can be received per seconds.
+         *
+         * @throws IllegalArgumentException if {@code rateLimit} is negative or zero.
+         */
+        @OptionalBuilderArgument
+        Builder packetRateLimit(@NotNull RegistryKey packet, int rateLimit);
+
+        /**
+         * Sets the rate-limit <b>per second</b> of a packet type, applied on top of the {@link #rateLimit(int) rate-limit}.
+         * Also limits the payload bytes of this type, making large requests cost more.
+         * Requests exceeding it are not handled, and a {@link RateExceededException} is sent back as response.
+         *
+         * @param packet key of the packet.
+         * @param rateLimit amount of requests of this type that can be received per seconds.
+         * @param bytesPerSecond amount of payload bytes of this type that can be received per seconds, {@code 0} for unlimited.
+         *
+         * @throws IllegalArgumentException if {@code rateLimit} is negative or zero, or if {@code bytesPerSecond} is negative.
+         */
+        @OptionalBuilderArgument
+        Builder packetRateLimit(@NotNull RegistryKey packet, int rateLimit, int bytesPerSecond);
+
+        /**
+         * Sets the request rate-limit <b>per second</b> of the whole socket, shared by all connections.
+         * Requests exceeding it are not handled, and a {@link RateExceededException} is sent back as response.
+         * <p>
+         * <b>Default: </b> unlimited.
+         *
+         * @param rateLimit amount of requests the socket can receive per seconds, {@code 0} for unlimited.
+         *
+         * @throws IllegalArgumentException if {@code rateLimit} is negative.
+         */
+        @OptionalBuilderArgument
+        Builder globalRateLimit(int rateLimit);
+
+        /**
+         * Sets the bandwidth of the whole socket, in bytes <b>per second</b>, shared by all connections.
+         * Traffic exceeding it is delayed rather than refused.
+         * <p>
+         * <b>Default: </b> unlimited.
+         *
+         * @param inboundBytesPerSecond amount of bytes the socket can receive per seconds, {@code 0} for unlimited.
+         * @param outboundBytesPerSecond amount of bytes the socket can send per seconds, {@code 0} for unlimited.
+         *
+         * @throws IllegalArgumentException if any of the limits is negative.
+         */
+        @OptionalBuilderArgument
+        Builder globalBandwidthLimit(long inboundBytesPerSecond, long outboundBytesPerSecond);
+
         /**
          * Adds a property to the handshake properties.
          *
@@ -150,9 +253,46 @@ public interface ServerSocket extends Socket {
         @OptionalBuilderArgument
         Builder connectTimeout(@NotNull Duration timeout);
 
+        /**
+         * Sets the interval between keep-alive pings.
+         * <p>
+         * Pings measure the {@link Connection#roundTripTime() round-trip time} of the connection,
+         * using {@link Duration#ZERO} disables them and the connection ping will stay unknown.
+         * <p>
+         * <b>Default:</b> 5secs.
+         *
+         * @param interval duration between two pings.
+         *
+         * @throws IllegalArgumentException if the specified {@code interval} is negative.
+         */
+        @OptionalBuilderArgument
+        Builder pingInterval(@NotNull Duration interval);
+
+        /**
+         * Sets the idle timeouts of connections.
+         * <p>
+         * A connection that did not write anything for the {@code writeTimeout} sends a heartbeat,
+         * a connection that did not receive anything for the {@code readTimeout} is considered dead and is evicted,
+         * terminating it with {@link ConnectionTerminatedEvent.Cause#UNRESPONSIVE}.
+         * The read timeout should be longer than the write timeout (and ping interval) of the remote.
+         * Using {@link Duration#ZERO} disables the timeout.
+         * <p>
+         * <b>Default:</b> 30secs read, 10secs write.
+         *
+         * @param readTimeout duration without receiving anything before evicting the connection.
+         * @param writeTimeout duration without sending anything before sending a heartbeat.
+         *
+         * @throws IllegalArgumentException if one of the specified timeouts is negative.
+         */
+        @OptionalBuilderArgument
+        Builder idleTimeout(@NotNull Duration readTimeout, @NotNull Duration writeTimeout);
+
         /**
          * Sets the sessions key pair.
          * <p>
+         * Must be an RSA key pair for the {@link HandshakeSuite#RSA} suite,
+         * or an Ed25519 key pair for the {@link HandshakeSuite#X25519} suite.
+         * <p>
          * Default: Generated Key Pair.
          *
          * @param pair keypair.
@@ -160,6 +300,117 @@ public interface ServerSocket extends Socket {
         @OptionalBuilderArgument
         Builder keyPair(@NotNull KeyPair pair);
 
+        /**
+         * Sets the handshake suite used to establish the session key with clients.
+         * <p>
+         * Default: {@link HandshakeSuite#RSA}.
+         *
+         * @param suite handshake suite.
+         */
+        @OptionalBuilderArgument
+        Builder handshakeSuite(@NotNull HandshakeSuite suite);
+
+        /**
+         * Enables session resumption.
+         * <p>
+         * After a successful handshake the client receives a session ticket,
+         * when reconnecting it can use the ticket to resume the session with only symmetric cryptography,
+         * skipping the authenticator and the key exchange.
+         * Tickets can only be used once and are encrypted with a key rotating every {@code lifetime}.
+         * <p>
+         * Default: disabled.
+         *
+         * @param lifetime time during which a ticket can be used.
+         * @param maxTickets maximum amount of tickets awaiting use, the oldest are discarded first.
+         */
+        @OptionalBuilderArgument
+        Builder sessionTickets(@NotNull Duration lifetime, int maxTickets);
+
+        /**
+         * Enables request deduplication.
+         * <p>
+         * The responses of the recently handled requests are kept per client and request identifier,
+         * requests replayed by the client after losing its connection or hedged on another connection
+         * are answered with the kept response instead of being handled again.
+         * Handlers with side effects, like transactions, are then only run once per request.
+         * <p>
+         * Default: disabled.
+         *
+         * @param lifetime time during which a response is kept.
+         * @param maxRequests maximum amount of kept responses, the oldest are discarded first.
+         */
+        @OptionalBuilderArgument
+        Builder requestDeduplication(@NotNull Duration lifetime, int maxRequests);
+
+        /**
+         * Caches the responses of a read-only packet type, requests with identical payloads
+         * are answered from the cache without {@link fr.atlasworld.protocol.packet.Packet#handle handling} them again.
+         * <p>
+         * Only success responses are cached, until they expire or are {@link ServerSocket#invalidateResponses(RegistryKey) invalidated}.
+         * When full, the responses requested the least often recently are evicted first.
+         * <p>
+         * Responses are shared between all clients, so they must not depend on the client which sent the request,
+         * use {@link #cacheResponses(RegistryKey, Duration, int, boolean)} for responses specific to the client.
+         * <p>
+         * Default: responses are not cached.
+         *
+         * @param packet key of the packet.
+         * @param lifetime time during which a response is kept.
+         * @param maxEntries maximum amount of kept responses for this packet type.
+         *
+         * @throws IllegalArgumentException if {@code lifetime} or {@code maxEntries} is negative or zero.
+         */
+        @OptionalBuilderArgument
+        Builder cacheResponses(@NotNull RegistryKey packet, @NotNull Duration lifetime, int maxEntries);
+
+        /**
+         * Caches the responses of a read-only packet type, requests with identical payloads
+         * are answered from the cache without {@link fr.atlasworld.protocol.packet.Packet#handle handling} them again.
+         * <p>
+         * Only success responses are cached, until they expire or are {@link ServerSocket#invalidateResponses(RegistryKey) invalidated}.
+         * When full, the responses requested the least often recently are evicted first.
+         *
+         * @param packet key of the packet.
+         * @param lifetime time during which a response is kept.
+         * @param maxEntries maximum amount of kept responses for this packet type, across all clients.
+         * @param perClient whether a response is only reused for the client which sent the request,
+         *                  required when responses depend on the client.
+         *
+         * @throws IllegalArgumentException if {@code lifetime} or {@code maxEntries} is negative or zero.
+         */
+        @OptionalBuilderArgument
+        Builder cacheResponses(@NotNull RegistryKey packet, @NotNull Duration lifetime, int maxEntries, boolean perClient);
+
+        /**
+         * Sets the worker pool running the handshake cryptography and the {@link Authenticator}.
+         * <p>
+         * Handshakes are kept off the network threads, so a burst of new connections
+         * doesn't slow down already established connections.
+         * Handshake steps exceeding the pending limit are refused and their connection closed.
+         * <p>
+         * Default: one thread per available processor, 256 pending handshake steps.
+         *
+         * @param threads maximum amount of concurrent handshake steps.
+         * @param maxPending maximum amount of handshake steps waiting for a thread.
+         */
+        @OptionalBuilderArgument
+        Builder handshakeWorkers(int threads, int maxPending);
+
+        /**
+         * Sets the maximum amount of handshakes in progress at once.
+         * <p>
+         * Limits are checked when a connection is accepted, before any handshake work,
+         * connections exceeding them are closed right away.
+         * Handshakes not completed within the {@link #connectTimeout(Duration) connect timeout} are closed.
+         * <p>
+         * Default: 1024 handshakes, 16 per address.
+         *
+         * @param maxHandshakes maximum amount of handshakes in progress.
+         * @param maxPerAddress maximum amount of handshakes in progress from a single remote address.
+         */
+        @OptionalBuilderArgument
+        Builder maxHandshakes(int maxHandshakes, int maxPerAddress);
+
         /**
          * Whether the connection should stay alive.
          * <p>
@@ -168,6 +419,49 @@ public interface ServerSocket extends Socket {
         @OptionalBuilderArgument
         Builder keepAlive(boolean keepAlive);
 
+        /**
+         * Sets the payload compression algorithms supported by the server, in order of preference.
+         * <p>
+         * The client picks the first algorithm of its own list also supported by the server,
+         * if none match the connection won't use compression.
+         * <p>
+         * Default: no compression.
+         *
+         * @param algorithms supported algorithms.
+         */
+        @OptionalBuilderArgument
+        Builder compression(@NotNull Compression... algorithms);
+
+        /**
+         * Sets the minimum payload size before compressing it, smaller payloads are sent as is.
+         * <p>
+         * Default: 256 bytes.
+         *
+         * @param threshold minimum size in bytes of a payload to compress it.
+         *
+         * @throws IllegalArgumentException if {@code threshold} is negative.
+         */
+        @OptionalBuilderArgument
+        Builder compressionThreshold(int threshold);
+
+        /**
+         * Registers a compression dictionary for a packet type,
+         * see {@link DictionaryTrainer} to create one.
+         * <p>
+         * Requests of this type will be compressed with the dictionary,
+         * as long as the client registered the exact same dictionary for it.
+         * This works regardless of the negotiated {@link #compression(Compression...) compression},
+         * and is meant for small packets that would not compress on their own.
+         *
+         * @param packet key of the packet.
+         * @param dictionary dictionary of the packet.
+         *
+         * @throws IllegalArgumentException if the dictionary is empty,
+         *         or larger than {@link DictionaryTrainer#MAX_DICTIONARY_SIZE}.
+         */
+        @OptionalBuilderArgument
+        Builder compressionDictionary(@NotNull RegistryKey packet, byte @NotNull [] dictionary);
+
         /**
          * Whether to disable Nagle's Algorithm.
          * This can lower the latency but at cost of bandwidth.
@@ -1,10 +1,14 @@
 package fr.atlasworld.protocol.socket;
 
+import com.google.protobuf.Message;
 import fr.atlasworld.event.api.EventNode;
 import fr.atlasworld.protocol.Side;
 import fr.atlasworld.protocol.connection.Connection;
 import fr.atlasworld.protocol.event.NetworkEvent;
 import fr.atlasworld.protocol.event.connection.ConnectionEvent;
+import fr.atlasworld.protocol.metrics.NetworkMetrics;
+import fr.atlasworld.registry.RegistryKey;
+import org.jetbrains.annotations.NotNull;
 
 import java.net.InetSocketAddress;
 import java.util.concurrent.CompletableFuture;
@@ -45,6 +49,15 @@ public interface Socket {
      */
     InetSocketAddress address();
 
+    /**
+     * Take a snapshot of the socket metrics.
+     * <p>
+     * Socket metrics aggregate every connection the socket ever had, including terminated ones.
+     *
+     * @return current metrics of the socket.
+     */
+    NetworkMetrics metrics();
+
     /**
      * Starts the socket.
      *
@@ -65,4 +78,25 @@ public interface Socket {
      * @throws IllegalStateException if the socket is not running.
      */
     CompletableFuture<Void> stop(boolean interrupt);
+
+    /**
+     * Invalidates all the cached responses of a packet type,
+     * does nothing if the responses of this packet type are not cached.
+     * <p>
+     * Only the cache of this socket is invalidated, responses cached by the remote expire after their lifetime.
+     *
+     * @param packet key of the packet.
+     */
+    void invalidateResponses(@NotNull RegistryKey packet);
+
+    /**
+     * Invalidates the cached response of a request, for every client if responses are cached per client,
+     * does nothing if the responses of this packet type are not cached.
+     * <p>
+     * Only the cache of this socket is invalidated, responses cached by the remote expire after their lifetime.
+     *
+     * @param packet key of the packet.
+     * @param payload payload of the request.
+     */
+    void invalidateResponse(@NotNull RegistryKey packet, @NotNull Message payload);
 }
@@ -0,0 +1,204 @@
+package fr.atlasworld.protocol.benchmark;
+
+import fr.atlasworld.protocol.handler.HandshakeHandler;
+import fr.atlasworld.protocol.handshake.CryptoCache;
+import fr.atlasworld.protocol.handshake.KeyExchange;
+import fr.atlasworld.protocol.handshake.SessionCipher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.*;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cryptographic work done by both sides of a handshake, without any networking.
+ * <p>
+ * Benchmarks run on a single thread, the score is the number of handshakes per second per core.
+ * The {@code uncached} variants look up every primitive from the providers, like the handshake did before {@link CryptoCache}.
+ */
+@State(Scope.Thread)
+@Threads(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HandshakeBenchmark {
+    private static final byte[] PAYLOAD = new byte[256];
+
+    private KeyPair serverRsaKeys;
+    private KeyPair clientRsaKeys;
+
+    private KeyPair serverEdKeys;
+    private KeyPair clientEdKeys;
+
+    private KeyGenerator secretKeyGenerator;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance(HandshakeHandler.ASYMMETRIC_KEY_ALGORITHM);
+        rsaGenerator.initialize(2048);
+
+        this.serverRsaKeys = rsaGenerator.generateKeyPair();
+        this.clientRsaKeys = rsaGenerator.generateKeyPair();
+
+        KeyPairGenerator edGenerator = KeyPairGenerator.getInstance(HandshakeHandler.IDENTITY_KEY_ALGORITHM);
+        this.serverEdKeys = edGenerator.generateKeyPair();
+        this.clientEdKeys = edGenerator.generateKeyPair();
+
+        this.secretKeyGenerator = KeyGenerator.getInstance(HandshakeHandler.SECRET_KEY_ALGORITHM);
+    }
+
+    @Benchmark
+    public void rsaHandshake(Blackhole blackhole) throws GeneralSecurityException {
+        SecretKey secretKey = this.secretKeyGenerator.generateKey();
+
+        // Server -> Client
+        Cipher cipher = CryptoCache.cipher(HandshakeHandler.ASYMMETRIC_KEY_ALGORITHM);
+        cipher.init(Cipher.ENCRYPT_MODE, this.clientRsaKeys.getPublic());
+        byte[] challenge = cipher.doFinal(secretKey.getEncoded());
+
+        cipher = CryptoCache.cipher(HandshakeHandler.ASYMMETRIC_KEY_ALGORITHM);
+        cipher.init(Cipher.DECRYPT_MODE, this.clientRsaKeys.getPrivate());
+        byte[] clientKey = cipher.doFinal(challenge);
+
+        // Client -> Server
+        cipher = CryptoCache.cipher(HandshakeHandler.ASYMMETRIC_KEY_ALGORITHM);
+        cipher.init(Cipher.ENCRYPT_MODE, this.serverRsaKeys.getPublic());
+        byte[] response = cipher.doFinal(clientKey);
+
+        cipher = CryptoCache.cipher(HandshakeHandler.ASYMMETRIC_KEY_ALGORITHM);
+        cipher.init(Cipher.DECRYPT_MODE, this.serverRsaKeys.getPrivate());
+        blackhole.consume(MessageDigest.isEqual(cipher.doFinal(response), secretKey.getEncoded()));
+
+        this.firstPacket(new SessionCipher(secretKey), blackhole);
+    }
+
+    @Benchmark
+    public void rsaHandshakeUncached(Blackhole blackhole) throws GeneralSecurityException {
+        SecretKey secretKey = this.secretKeyGenerator.generateKey();
+
+        // Server -> Client
+        Cipher cipher = Cipher.getInstance(HandshakeHandler.ASYMMETRIC_KEY_ALGORITHM);
+        cipher.init(Cipher.ENCRYPT_MODE, this.clientRsaKeys.getPublic());
+        byte[] challenge = cipher.doFinal(secretKey.getEncoded());
+
+        cipher = Cipher.getInstance(HandshakeHandler.ASYMMETRIC_KEY_ALGORITHM);
+        cipher.init(Cipher.DECRYPT_MODE, this.clientRsaKeys.getPrivate());
+        byte[] clientKey = cipher.doFinal(challenge);
+
+        // Client -> Server
+        cipher = Cipher.getInstance(HandshakeHandler.ASYMMETRIC_KEY_ALGORITHM);
+        cipher.init(Cipher.ENCRYPT_MODE, this.serverRsaKeys.getPublic());
+        byte[] response = cipher.doFinal(clientKey);
+
+        cipher = Cipher.getInstance(HandshakeHandler.ASYMMETRIC_KEY_ALGORITHM);
+        cipher.init(Cipher.DECRYPT_MODE, this.serverRsaKeys.getPrivate());
+        blackhole.consume(MessageDigest.isEqual(cipher.doFinal(response), secretKey.getEncoded()));
+
+        this.firstPacketUncached(secretKey, blackhole);
+    }
+
+    @Benchmark
+    public void x25519Handshake(Blackhole blackhole) throws GeneralSecurityException {
+        KeyPair clientExchange = KeyExchange.generateExchangeKeys();
+        KeyPair serverExchange = KeyExchange.generateExchangeKeys();
+
+        byte[] clientKey = clientExchange.getPublic().getEncoded();
+        byte[] serverKey = serverExchange.getPublic().getEncoded();
+
+        // Server side
+        SecretKey serverSecret = KeyExchange.deriveSessionKey(serverExchange.getPrivate(), clientKey, clientKey, serverKey);
+        byte[] serverSignature = KeyExchange.sign(this.serverEdKeys.getPrivate(), KeyExchange.SERVER_SIGNATURE_LABEL, clientKey, serverKey);
+
+        // Client side
+        blackhole.consume(KeyExchange.verify(this.serverEdKeys.getPublic(), serverSignature, KeyExchange.SERVER_SIGNATURE_LABEL, clientKey, serverKey));
+        SecretKey clientSecret = KeyExchange.deriveSessionKey(clientExchange.getPrivate(), serverKey, clientKey, serverKey);
+        byte[] clientSignature = KeyExchange.sign(this.clientEdKeys.getPrivate(), KeyExchange.CLIENT_SIGNATURE_LABEL, clientKey, serverKey);
+
+        // Server side
+        blackhole.consume(KeyExchange.verify(this.clientEdKeys.getPublic(), clientSignature, KeyExchange.CLIENT_SIGNATURE_LABEL, clientKey, serverKey));
+
+        blackhole.consume(clientSecret);
+        this.firstPacket(new SessionCipher(serverSecret), blackhole);
+    }
+
+    @Benchmark
+    public void x25519HandshakeUncached(Blackhole blackhole) throws GeneralSecurityException {
+        KeyPair clientExchange = KeyPairGenerator.getInstance(HandshakeHandler.EXCHANGE_KEY_ALGORITHM).generateKeyPair();
+        KeyPair serverExchange = KeyPairGenerator.getInstance(HandshakeHandler.EXCHANGE_KEY_ALGORITHM).generateKeyPair();
+
+        byte[] clientKey = clientExchange.getPublic().getEncoded();
+        byte[] serverKey = serverExchange.getPublic().getEncoded();
+
+        // Server side
+        SecretKey serverSecret = deriveUncached(serverExchange.getPrivate(), clientKey, clientKey, serverKey);
+        byte[] serverSignature = signUncached(this.serverEdKeys.getPrivate(), KeyExchange.SERVER_SIGNATURE_LABEL, clientKey, serverKey);
+
+        // Client side
+        blackhole.consume(verifyUncached(this.serverEdKeys.getPublic(), serverSignature, KeyExchange.SERVER_SIGNATURE_LABEL, clientKey, serverKey));
+        SecretKey clientSecret = deriveUncached(clientExchange.getPrivate(), serverKey, clientKey, serverKey);
+        byte[] clientSignature = signUncached(this.clientEdKeys.getPrivate(), KeyExchange.CLIENT_SIGNATURE_LABEL, clientKey, serverKey);
+
+        // Server side
+        blackhole.consume(verifyUncached(this.clientEdKeys.getPublic(), clientSignature, KeyExchange.CLIENT_SIGNATURE_LABEL, clientKey, serverKey));
+
+        blackhole.consume(clientSecret);
+        this.firstPacketUncached(serverSecret, blackhole);
+    }
+
+    private void firstPacket(SessionCipher session, Blackhole blackhole) throws GeneralSecurityException {
+        byte[] encrypted = session.encrypt(PAYLOAD);
+        blackhole.consume(session.sign(encrypted));
+    }
+
+    private void firstPacketUncached(SecretKey key, Blackhole blackhole) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(HandshakeHandler.SECRET_KEY_ALGORITHM);
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        byte[] encrypted = cipher.doFinal(PAYLOAD);
+
+        Mac mac = Mac.getInstance(HandshakeHandler.SIGNATURE_ALGORITHM);
+        mac.init(key);
+        blackhole.consume(mac.doFinal(encrypted));
+    }
+
+    private static SecretKey deriveUncached(PrivateKey exchangeKey, byte[] remoteKey, byte[] clientKey, byte[] serverKey) throws GeneralSecurityException {
+        PublicKey remote = KeyFactory.getInstance(HandshakeHandler.EXCHANGE_KEY_ALGORITHM)
+                .generatePublic(new X509EncodedKeySpec(remoteKey));
+
+        KeyAgreement agreement = KeyAgreement.getInstance(HandshakeHandler.EXCHANGE_KEY_ALGORITHM);
+        agreement.init(exchangeKey);
+        agreement.doPhase(remote, true);
+
+        Mac mac = Mac.getInstance(HandshakeHandler.SIGNATURE_ALGORITHM);
+        mac.init(new SecretKeySpec(agreement.generateSecret(), HandshakeHandler.SIGNATURE_ALGORITHM));
+        mac.update(clientKey);
+        mac.update(serverKey);
+
+        return new SecretKeySpec(mac.doFinal(), HandshakeHandler.SECRET_KEY_ALGORITHM);
+    }
+
+    private static byte[] signUncached(PrivateKey identityKey, byte[] label, byte[] clientKey, byte[] serverKey) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance(HandshakeHandler.IDENTITY_KEY_ALGORITHM);
+        signature.initSign(identityKey);
+        signature.update(label);
+        signature.update(clientKey);
+        signature.update(serverKey);
+
+        return signature.sign();
+    }
+
+    private static boolean verifyUncached(PublicKey identityKey, byte[] signed, byte[] label, byte[] clientKey, byte[] serverKey) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance(HandshakeHandler.IDENTITY_KEY_ALGORITHM);
+        signature.initVerify(identityKey);
+        signature.update(label);
+        signature.update(clientKey);
+        signature.update(serverKey);
+
+        return signature.verify(signed);
+    }
+}
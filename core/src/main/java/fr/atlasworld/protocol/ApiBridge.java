@@ -1,6 +1,8 @@
 package fr.atlasworld.protocol;
 
 import fr.atlasworld.protocol.connection.ConnectionImpl;
+import fr.atlasworld.protocol.socket.ClientRouter;
+import fr.atlasworld.protocol.socket.ClientRouterImpl;
 import fr.atlasworld.protocol.socket.ClientSocket;
 import fr.atlasworld.protocol.socket.ServerSocket;
 import fr.atlasworld.protocol.socket.builder.ClientSocketBuilder;
@@ -20,6 +22,8 @@ public class ApiBridge implements fr.atlasworld.protocol.internal.ApiBridge {
     public static final Logger LOGGER = LoggerFactory.getLogger(AtlasProtocol.class);
 
     public static final RegistryKey DISCONNECT_PACKET = new RegistryKey("system", "disconnect");
+    public static final RegistryKey CANCEL_PACKET = new RegistryKey("system", "cancel");
+    public static final RegistryKey SESSION_TICKET_PACKET = new RegistryKey("system", "session_ticket");
 
     public static CompletableFuture<Void> waitOnChannel(ChannelFuture future) {
         CompletableFuture<Void> waitingFuture = new CompletableFuture<>();
@@ -50,4 +54,9 @@ public class ApiBridge implements fr.atlasworld.protocol.internal.ApiBridge {
     public ClientSocket.Builder createClient() {
         return new ClientSocketBuilder();
     }
+
+    @Override
+    public ClientRouter createRouter() {
+        return new ClientRouterImpl();
+    }
 }
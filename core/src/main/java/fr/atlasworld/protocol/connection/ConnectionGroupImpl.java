@@ -4,9 +4,11 @@ import com.google.common.base.Preconditions;
 import com.google.protobuf.Message;
 import fr.atlasworld.event.api.EventNode;
 import fr.atlasworld.protocol.event.connection.ConnectionEvent;
+import fr.atlasworld.protocol.packet.Priority;
 import fr.atlasworld.protocol.packet.Response;
 import fr.atlasworld.registry.RegistryKey;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
@@ -15,7 +17,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
 public class ConnectionGroupImpl implements ConnectionGroup {
-    private final Map<UUID, ConnectionImpl> connections;
+    private final Map<UUID, ConnectionImpl> connections; // By connection identifier, pooled connections share their client's identifier.
     private final EventNode<ConnectionEvent> node;
 
     private final ReadWriteLock lock;
@@ -77,14 +79,20 @@ public class ConnectionGroupImpl implements ConnectionGroup {
 
     @Override
     public <P extends Message> Set<CompletableFuture<Response>> sendPacket(@NotNull RegistryKey key, @NotNull P payload) {
+        return this.sendPacket(key, payload, Priority.NORMAL);
+    }
+
+    @Override
+    public <P extends Message> Set<CompletableFuture<Response>> sendPacket(@NotNull RegistryKey key, @NotNull P payload, @NotNull Priority priority) {
         Preconditions.checkNotNull(key);
         Preconditions.checkNotNull(payload);
+        Preconditions.checkNotNull(priority);
 
         this.lock.readLock().lock();
         try {
             return this.connections.values().stream()
                     .filter(ConnectionImpl::connected)
-                    .map(connection -> connection.sendPacket(key, payload))
+                    .map(connection -> connection.sendPacket(key, payload, priority))
                     .collect(Collectors.toUnmodifiableSet());
         } finally {
             this.lock.readLock().unlock();
@@ -105,27 +113,62 @@ public class ConnectionGroupImpl implements ConnectionGroup {
     public Optional<Connection> retrieveConnection(@NotNull UUID identifier) {
         this.lock.readLock().lock();
         try {
-            return Optional.ofNullable(this.connections.get(identifier));
+            ConnectionImpl connection = this.connections.get(identifier);
+            if (connection != null)
+                return Optional.of(connection);
+
+            return this.connections.values().stream()
+                    .filter(candidate -> candidate.identifier().equals(identifier))
+                    .findFirst()
+                    .map(Connection.class::cast);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieve a connection using its connection identifier.
+     *
+     * @return the connection, or null if it is not part of this group.
+     */
+    @Nullable
+    public ConnectionImpl connection(@NotNull UUID connectionId) {
+        this.lock.readLock().lock();
+        try {
+            return this.connections.get(connectionId);
         } finally {
             this.lock.readLock().unlock();
         }
     }
 
-    public void registerConnection(@NotNull ConnectionImpl connection) {
+    /**
+     * Registers a connection, replacing any connection of the same remote with the same connection identifier.
+     *
+     * @return the replaced connection, or null if there was none.
+     */
+    @Nullable
+    public ConnectionImpl registerConnection(@NotNull ConnectionImpl connection) {
         Preconditions.checkNotNull(connection);
         Preconditions.checkArgument(connection.connected(), "Connection is no longer connected!");
 
+        ConnectionImpl previous;
+
         this.lock.writeLock().lock();
         try {
-            if (this.connections.containsKey(connection.identifier()))
-                throw new IllegalArgumentException("Connection already present!");
+            previous = this.connections.get(connection.connectionId());
+            Preconditions.checkArgument(previous == null || previous.identifier().equals(connection.identifier()),
+                    "Connection identifier is used by another remote!");
 
-            this.connections.put(connection.identifier(), connection);
+            this.connections.put(connection.connectionId(), connection);
         } finally {
             this.lock.writeLock().unlock();
         }
 
+        if (previous != null)
+            previous.eventNode().removeChildNode(this.node.name());
+
         connection.eventNode().addChildNode(this.node);
+        return previous;
     }
 
     public boolean unregisterConnection(@NotNull ConnectionImpl connection) {
@@ -133,7 +176,7 @@ public class ConnectionGroupImpl implements ConnectionGroup {
 
         this.lock.writeLock().lock();
         try {
-            if (this.connections.remove(connection.identifier()) != null) {
+            if (this.connections.remove(connection.connectionId(), connection)) { // May have been replaced already.
                 connection.eventNode().removeChildNode(this.node.name());
                 return true;
             }
@@ -1,16 +1,25 @@
 package fr.atlasworld.protocol.connection;
 
 import com.google.common.base.Preconditions;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.Message;
 import fr.atlasworld.event.api.Event;
 import fr.atlasworld.event.api.EventNode;
 import fr.atlasworld.protocol.ApiBridge;
 import fr.atlasworld.protocol.event.connection.*;
+import fr.atlasworld.protocol.generated.CancelWrapper;
 import fr.atlasworld.protocol.generated.DisconnectWrapper;
 import fr.atlasworld.protocol.generated.EmptyWrapper;
+import fr.atlasworld.protocol.generated.SessionWrapper;
 import fr.atlasworld.protocol.handler.PacketPackage;
+import fr.atlasworld.protocol.handler.ResponseCache;
 import fr.atlasworld.protocol.handler.ResponseHandler;
+import fr.atlasworld.protocol.handler.StreamHandler;
+import fr.atlasworld.protocol.metrics.MetricsRecorder;
+import fr.atlasworld.protocol.metrics.NetworkMetrics;
+import fr.atlasworld.protocol.metrics.RoundTripTime;
 import fr.atlasworld.protocol.packet.PacketBase;
+import fr.atlasworld.protocol.packet.Priority;
 import fr.atlasworld.protocol.packet.ResponderImpl;
 import fr.atlasworld.protocol.packet.Response;
 import fr.atlasworld.protocol.socket.Socket;
@@ -22,6 +31,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
 import java.security.PublicKey;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
@@ -30,54 +40,70 @@ import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class ConnectionImpl implements Connection, InsecureConnection {
-    private static final String NODE_NAME = "connection-%s-%s";
+    private static final String NODE_NAME = "connection-";
     private static final HashedWheelTimer TIMER = new HashedWheelTimer();
 
     private final Map<UUID, ResponseHandler> awaitingResponses;
+    private final Map<UUID, ResponderImpl> servingRequests; // Received requests not responded yet.
+    private final Map<RegistryKey, ResponseCache> responseCaches; // Responses received, only cached on client-side.
 
     private final Channel channel;
     private final Socket socket;
 
     // Connection Settings
     private final UUID identifier;
+    private final UUID connectionId; // Pooled connections share the identifier of their client.
     private final AtomicLong timeout;
     private final boolean customAuth;
     private volatile PublicKey key;
+    private volatile Compression compression;
+    private volatile Map<String, byte[]> compressionDictionaries;
 
-    private volatile int ping;
+    private final RoundTripEstimator roundTrip;
+    private final MetricsRecorder metrics;
     private volatile boolean authenticated;
+    private volatile boolean resumed;
+    private volatile UUID replacedConnection;
+    private volatile byte[] resumptionSecret; // Client-side, until the server issues a session ticket.
 
     // Event Node
     private final EventNode<Event> rootNode;
-    private final EventNode<ConnectionEvent> node;
+    private volatile EventNode<ConnectionEvent> node; // Created on first use, most refused connections never need one.
 
     // Disconnect
     private volatile ConnectionTerminatedEvent.Cause disconnectCause;
     private volatile String disconnectReason;
 
-    public ConnectionImpl(Channel channel, UUID identifier, Socket socket, long timeout, boolean customAuth, EventNode<Event> rootNode) {
+    public ConnectionImpl(Channel channel, UUID identifier, UUID connectionId, Socket socket, long timeout, boolean customAuth,
+                          EventNode<Event> rootNode, MetricsRecorder socketMetrics, Map<RegistryKey, ResponseCache> responseCaches) {
         this.awaitingResponses = new ConcurrentHashMap<>();
+        this.servingRequests = new ConcurrentHashMap<>();
 
         this.channel = channel;
         this.socket = socket;
 
         this.identifier = identifier;
+        this.connectionId = connectionId;
         this.timeout = new AtomicLong(timeout);
         this.customAuth = customAuth;
+        this.compression = Compression.NONE;
+        this.compressionDictionaries = Map.of();
 
-        this.ping = -1;
+        this.responseCaches = responseCaches;
+        this.roundTrip = new RoundTripEstimator();
+        this.metrics = new MetricsRecorder(socketMetrics);
         this.authenticated = false;
 
         this.rootNode = rootNode;
-        this.node = socket.eventNode()
-                .createChildNode(String.format(NODE_NAME, this.channel.remoteAddress(), this.hashCode()), ConnectionEvent.class);
 
         // Events
         CompletableFuture.runAsync(() -> this.rootNode.callEvent(new ConnectionEstablishedEvent(this)));
         this.channel.closeFuture().addListener(closeFuture -> {
+            this.failPendingRequests();
             this.rootNode.callEvent(new ConnectionTerminatedEvent(this, this.authenticated,
                     this.disconnectCause == null ? ConnectionTerminatedEvent.Cause.INTERRUPTED : this.disconnectCause,
                     this.disconnectReason));
@@ -86,7 +112,17 @@ public class ConnectionImpl implements Connection, InsecureConnection {
 
     @Override
     public @NotNull EventNode<ConnectionEvent> eventNode() {
-        return this.node;
+        EventNode<ConnectionEvent> node = this.node;
+        if (node != null)
+            return node;
+
+        synchronized (this) {
+            if (this.node == null)
+                this.node = this.socket.eventNode().createChildNode(NODE_NAME + this.channel.remoteAddress() + "-" + this.hashCode(),
+                        ConnectionEvent.class);
+
+            return this.node;
+        }
     }
 
     @Override
@@ -103,13 +139,57 @@ public class ConnectionImpl implements Connection, InsecureConnection {
         this.key = key;
     }
 
+    @Override
+    public @NotNull Compression compression() {
+        return this.compression;
+    }
+
+    public synchronized void updateCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    public Map<String, byte[]> compressionDictionaries() {
+        return this.compressionDictionaries;
+    }
+
+    public synchronized void updateCompressionDictionaries(Map<String, byte[]> dictionaries) {
+        this.compressionDictionaries = Map.copyOf(dictionaries);
+    }
+
     @Override
     public int ping() {
-        return this.ping;
+        RoundTripTime roundTrip = this.roundTrip.current();
+        if (roundTrip.samples() == 0 || !this.channel.isActive())
+            return -1;
+
+        return (int) TimeUnit.NANOSECONDS.toMillis(roundTrip.smoothed());
+    }
+
+    @Override
+    public @NotNull RoundTripTime roundTripTime() {
+        return this.roundTrip.current();
     }
 
-    public synchronized void updatePing(int ping) {
-        this.ping = Math.max(ping, 0);
+    public RoundTripEstimator roundTripEstimator() {
+        return this.roundTrip;
+    }
+
+    @Override
+    public @NotNull NetworkMetrics metrics() {
+        return this.metrics.snapshot(this.queuedPackets(), 0);
+    }
+
+    public MetricsRecorder metricsRecorder() {
+        return this.metrics;
+    }
+
+    public int queuedPackets() {
+        StreamHandler handler = this.channel.pipeline().get(StreamHandler.class);
+        return handler == null ? 0 : handler.pendingPackets();
+    }
+
+    public int inFlightRequests() {
+        return this.awaitingResponses.size();
     }
 
     @Override
@@ -129,7 +209,10 @@ public class ConnectionImpl implements Connection, InsecureConnection {
 
         CompletableFuture<Void> future = new CompletableFuture<>();
         this.channel.eventLoop().execute(() -> {
-            this.eventNode().callEvent(new ConnectionRefusedEvent(this, reason));
+            EventNode<ConnectionEvent> node = this.node;
+            if (node != null) // Without a node, nobody is listening.
+                node.callEvent(new ConnectionRefusedEvent(this, reason));
+
             this.channel.close().syncUninterruptibly();
             future.complete(null);
         });
@@ -150,16 +233,62 @@ public class ConnectionImpl implements Connection, InsecureConnection {
 
     @Override
     public <P extends Message> @NotNull CompletableFuture<Response> sendPacket(@NotNull RegistryKey key, @Nullable P payload) {
+        return this.sendPacket(key, payload, Priority.NORMAL);
+    }
+
+    @Override
+    public <P extends Message> @NotNull CompletableFuture<Response> sendPacket(@NotNull RegistryKey key, @Nullable P payload, @NotNull Priority priority) {
+        return this.sendPacket(key, payload, priority, UUID.randomUUID(), this.timeout.get());
+    }
+
+    @Override
+    public <P extends Message> @NotNull CompletableFuture<Response> sendPacket(@NotNull RegistryKey key, @Nullable P payload,
+                                                                             @NotNull Priority priority, @NotNull Duration timeout) {
+        Preconditions.checkNotNull(timeout);
+
+        if (timeout.toMillis() <= 0)
+            return CompletableFuture.failedFuture(new TimeoutException("Deadline already passed."));
+
+        return this.sendPacket(key, payload, priority, UUID.randomUUID(), timeout.toMillis());
+    }
+
+    /**
+     * Sends a request using the specified identifier, replayed requests keep their identifier.
+     */
+    public <P extends Message> @NotNull CompletableFuture<Response> sendPacket(@NotNull RegistryKey key, @Nullable P payload,
+                                                                             @NotNull Priority priority, @NotNull UUID identifier,
+                                                                             long timeout) {
         Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(priority);
+        Preconditions.checkNotNull(identifier);
+
+        Message message = payload == null ? EmptyWrapper.Empty.newBuilder().build() : payload; // Allows to send requests without payload
+        ResponseCache cache = this.responseCaches.get(key);
+        byte[] cacheKey = null;
+        if (cache != null) {
+            cacheKey = message.toByteArray();
+
+            ResponseCache.CachedResponse cached = cache.get(cacheKey);
+            if (cached != null) // Skips the round trip.
+                return CompletableFuture.completedFuture(PacketPackage.createResponsePackage(identifier, cached.code(),
+                        cached.payload(), priority).asPacket(this));
+        }
 
         if (!this.channel.isActive())
             throw new IllegalStateException("Connection Disconnected!");
 
-        long currentTimeout = this.timeout.get(); // Makes sure the sent packet and the scheduler have the same timeout.
-        PacketPackage packet = PacketPackage.createRequestPackage(currentTimeout, key,
-                payload == null ? EmptyWrapper.Empty.newBuilder().build() : payload); // Allows to send requests without payload
+        long currentTimeout = timeout; // Makes sure the sent packet and the scheduler have the same timeout.
+        PacketPackage packet = PacketPackage.createRequestPackage(identifier, currentTimeout, key, message, priority);
 
         CompletableFuture<Response> future = new CompletableFuture<>();
+        if (cache != null)
+            this.cacheResponse(future, cache, cacheKey);
+
+        future.whenComplete((response, cause) -> {
+            if (future.isCancelled() && this.completeRequest(packet.requestId())) // Stop awaiting a response nobody wants.
+                this.sendCancel(packet.requestId());
+        });
+
         this.channel.writeAndFlush(packet).addListener(writeFuture -> {
             if (!writeFuture.isSuccess()) {
                 future.completeExceptionally(writeFuture.cause());
@@ -167,7 +296,12 @@ public class ConnectionImpl implements Connection, InsecureConnection {
                 return;
             }
 
-            this.scheduleResponse(future, packet.requestId(), currentTimeout);
+            if (future.isCancelled()) { // Cancelled while being written.
+                this.sendCancel(packet.requestId());
+                return;
+            }
+
+            this.scheduleResponse(future, packet.requestId(), key, currentTimeout);
             this.rootNode.callEvent(new ConnectionRequestSentEvent(this, packet.asPacket(this)));
         });
 
@@ -183,7 +317,7 @@ public class ConnectionImpl implements Connection, InsecureConnection {
 
         long currentTimeout = this.timeout.get(); // Makes sure the sent packet and the scheduler have the same timeout.
         PacketPackage packet = PacketPackage.createRequestPackage(currentTimeout, ApiBridge.DISCONNECT_PACKET,
-                DisconnectWrapper.Disconnect.newBuilder().setMessage(reason).build());
+                DisconnectWrapper.Disconnect.newBuilder().setMessage(reason).build(), Priority.HIGH);
 
         CompletableFuture<Void> future = new CompletableFuture<>();
         this.channel.writeAndFlush(packet).addListener(writeFuture -> {
@@ -226,16 +360,72 @@ public class ConnectionImpl implements Connection, InsecureConnection {
         return this.socket;
     }
 
-    public ResponderImpl createResponder(UUID requestIdentifier) {
-        return new ResponderImpl(this.channel, requestIdentifier);
+    public ResponderImpl createResponder(UUID requestIdentifier, Priority priority, RegistryKey request, long receivedAt,
+                                         long timeout) {
+        ResponderImpl responder = new ResponderImpl(this, requestIdentifier, priority, request, receivedAt, timeout);
+        this.servingRequests.put(requestIdentifier, responder);
+
+        return responder;
+    }
+
+    public void requestServed(UUID identifier) {
+        this.servingRequests.remove(identifier);
     }
 
-    private void scheduleResponse(CompletableFuture<Response> future, UUID identifier, long timeout) {
+    /**
+     * Cancels a request received from the remote, its handler may still be running.
+     *
+     * @param identifier identifier of the cancelled request.
+     */
+    public void cancelServing(UUID identifier) {
+        ResponderImpl responder = this.servingRequests.remove(identifier);
+        if (responder != null)
+            responder.cancel();
+    }
+
+    private void sendCancel(UUID identifier) {
+        if (!this.channel.isActive())
+            return;
+
+        CancelWrapper.Cancel cancel = CancelWrapper.Cancel.newBuilder()
+                .setIdMostSig(identifier.getMostSignificantBits())
+                .setIdLeastSig(identifier.getLeastSignificantBits())
+                .build();
+
+        PacketPackage packet = PacketPackage.createRequestPackage(this.timeout.get(), ApiBridge.CANCEL_PACKET, cancel,
+                Priority.HIGH); // No response expected.
+        this.channel.writeAndFlush(packet, this.channel.voidPromise());
+    }
+
+    public void sendSessionTicket(byte[] ticket, long lifetime) {
+        if (!this.channel.isActive())
+            return;
+
+        SessionWrapper.IssuedTicket issued = SessionWrapper.IssuedTicket.newBuilder()
+                .setTicket(ByteString.copyFrom(ticket))
+                .setLifetime(lifetime)
+                .build();
+
+        PacketPackage packet = PacketPackage.createRequestPackage(this.timeout.get(), ApiBridge.SESSION_TICKET_PACKET, issued,
+                Priority.HIGH); // No response expected.
+        this.channel.writeAndFlush(packet, this.channel.voidPromise());
+    }
+
+    private void cacheResponse(CompletableFuture<Response> future, ResponseCache cache, byte[] cacheKey) {
+        future.thenAccept(response -> {
+            short code = response.header().responseCode();
+            if (ResponseCache.cacheable(code) && response instanceof PacketBase packet)
+                cache.put(cacheKey, new ResponseCache.CachedResponse(code, packet.payloadBytes()));
+        });
+    }
+
+    private void scheduleResponse(CompletableFuture<Response> future, UUID identifier, RegistryKey key, long timeout) {
         if (this.awaitingResponses.containsKey(identifier))
             throw new IllegalArgumentException("There is an already existing request with this identifier: %s" + identifier);
 
-        ResponseHandler handler = new ResponseHandler(future, identifier);
+        ResponseHandler handler = new ResponseHandler(future, identifier, key, System.nanoTime());
         this.awaitingResponses.put(identifier, handler);
+        this.metrics.requestSent();
 
         TIMER.newTimeout(unused -> {
             if (!this.channel.isActive())
@@ -244,18 +434,28 @@ public class ConnectionImpl implements Connection, InsecureConnection {
             if (!handler.timeout())
                 return;
 
-            this.awaitingResponses.remove(identifier);
+            if (!this.completeRequest(identifier))
+                return;
+
+            this.metrics.requestTimedOut();
             this.rootNode.callEvent(new ConnectionRequestTimeoutEvent(this, Duration.of(timeout, ChronoUnit.MILLIS), false));
         }, timeout, TimeUnit.MILLISECONDS);
     }
 
     public void acknowledgeRequest(UUID identifier, long time) {
         ResponseHandler handler = this.awaitingResponses.get(identifier);
+        if (handler == null) // Request Timed-out.
+            return;
+
         handler.acknowledge();
+        this.metrics.requestAcknowledged(handler.request(), System.nanoTime() - handler.sentAt());
 
         TIMER.newTimeout(unused -> {
+            if (!this.completeRequest(identifier)) // Responded in time.
+                return;
+
             handler.timeoutAcknowledgement();
-            this.awaitingResponses.remove(identifier);
+            this.metrics.requestTimedOut();
             this.rootNode.callEvent(new ConnectionRequestTimeoutEvent(this, Duration.of(time, ChronoUnit.MILLIS), true));
         }, time, TimeUnit.MILLISECONDS);
     }
@@ -266,6 +466,31 @@ public class ConnectionImpl implements Connection, InsecureConnection {
             return;
 
         handler.respond(response);
+        this.metrics.responseReceived(handler.request(), System.nanoTime() - handler.sentAt());
+        this.completeRequest(identifier);
+    }
+
+    private void failPendingRequests() {
+        ClosedChannelException cause = null;
+
+        for (UUID identifier : this.awaitingResponses.keySet()) {
+            ResponseHandler handler = this.awaitingResponses.get(identifier);
+            if (handler == null || !this.completeRequest(identifier))
+                continue;
+
+            if (cause == null)
+                cause = new ClosedChannelException();
+
+            handler.fail(cause);
+        }
+    }
+
+    private boolean completeRequest(UUID identifier) {
+        if (this.awaitingResponses.remove(identifier) == null)
+            return false;
+
+        this.metrics.requestCompleted();
+        return true;
     }
 
     public synchronized void validate() {
@@ -273,10 +498,28 @@ public class ConnectionImpl implements Connection, InsecureConnection {
             throw new IllegalStateException("Connection is already validated!");
 
         this.authenticated = true;
+        this.eventNode();
+
         CompletableFuture.runAsync(() ->
                 this.rootNode.callEvent(new ConnectionValidatedEvent(this, this.customAuth)));
     }
 
+    /**
+     * Closes a connection considered dead, without attempting to notify the remote.
+     *
+     * @param reason reason of the eviction.
+     */
+    public void evict(String reason) {
+        synchronized (this) {
+            if (this.disconnectCause == null) { // Keep the cause of an already ongoing disconnection.
+                this.disconnectCause = ConnectionTerminatedEvent.Cause.UNRESPONSIVE;
+                this.disconnectReason = reason;
+            }
+        }
+
+        this.channel.close();
+    }
+
     public synchronized void markDisconnection(ConnectionTerminatedEvent.Cause cause, String reason) {
         if (this.disconnectCause != null || !this.channel.isActive())
             throw new UnsupportedOperationException("The connection has already been marked as disconnected!");
@@ -310,4 +553,48 @@ public class ConnectionImpl implements Connection, InsecureConnection {
     public boolean authenticated() {
         return this.authenticated;
     }
+
+    @Override
+    public boolean resumed() {
+        return this.resumed;
+    }
+
+    public void markResumed() {
+        this.resumed = true;
+    }
+
+    public UUID connectionId() {
+        return this.connectionId;
+    }
+
+    /**
+     * Retrieve the lost connection this connection replaces.
+     *
+     * @return identifier of the replaced connection, or null if this connection replaces none.
+     */
+    @Nullable
+    public UUID replacedConnection() {
+        return this.replacedConnection;
+    }
+
+    public void replaces(@Nullable UUID connectionId) {
+        this.replacedConnection = connectionId;
+    }
+
+    public void resumptionSecret(byte[] secret) {
+        this.resumptionSecret = secret;
+    }
+
+    /**
+     * Retrieve the secret of the session tickets of this connection, only once.
+     *
+     * @return resumption secret, or null if it was already taken.
+     */
+    @Nullable
+    public synchronized byte[] takeResumptionSecret() {
+        byte[] secret = this.resumptionSecret;
+        this.resumptionSecret = null;
+
+        return secret;
+    }
 }
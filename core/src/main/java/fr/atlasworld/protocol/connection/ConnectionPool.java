@@ -0,0 +1,387 @@
+package fr.atlasworld.protocol.connection;
+
+import com.google.common.base.Preconditions;
+import com.google.protobuf.Message;
+import fr.atlasworld.event.api.EventNode;
+import fr.atlasworld.protocol.event.connection.ConnectionEvent;
+import fr.atlasworld.protocol.metrics.NetworkMetrics;
+import fr.atlasworld.protocol.metrics.RoundTripTime;
+import fr.atlasworld.protocol.packet.Priority;
+import fr.atlasworld.protocol.packet.Response;
+import fr.atlasworld.protocol.socket.ClientSocketImpl;
+import fr.atlasworld.protocol.socket.Socket;
+import fr.atlasworld.registry.RegistryKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connection over all the pooled connections of a client,
+ * packets are spread across the connections following the {@link PoolStrategy}.
+ * <p>
+ * Every pooled connection has its own channel, event loop and session keys,
+ * so the encryption work of a single server link can use multiple cores.
+ * <p>
+ * When the client reconnects, the pool outlives its connections:
+ * requests sent while no connection is available are buffered,
+ * and idempotent requests lost with their connection are sent again once reconnected.
+ * <p>
+ * When hedging, requests of idempotent packets still awaiting a response after the configured percentile
+ * of their usual response latency are duplicated on another connection, the first response is kept.
+ */
+public class ConnectionPool implements Connection {
+    private static final long HEDGING_MIN_SAMPLES = 32; // Don't hedge from a few lucky samples.
+
+    private final ClientSocketImpl socket;
+    private final PoolStrategy strategy;
+    private final EventNode<ConnectionEvent> node;
+    private final AtomicLong timeout;
+
+    private final BlockingQueue<PendingRequest> buffer; // Null when not reconnecting.
+
+    public ConnectionPool(ClientSocketImpl socket, PoolStrategy strategy, long timeout, @Nullable ReconnectPolicy reconnectPolicy) {
+        this.socket = socket;
+        this.strategy = strategy;
+        this.node = socket.eventNode().createChildNode("connection-pool-" + this.hashCode(), ConnectionEvent.class,
+                event -> event.socket() == socket);
+        this.timeout = new AtomicLong(timeout);
+
+        this.buffer = reconnectPolicy == null || reconnectPolicy.bufferSize() == 0 ? null :
+                new LinkedBlockingQueue<>(reconnectPolicy.bufferSize());
+    }
+
+    @Override
+    public @NotNull EventNode<ConnectionEvent> eventNode() {
+        return this.node;
+    }
+
+    @Override
+    public @NotNull UUID identifier() {
+        return this.primary().identifier();
+    }
+
+    @Override
+    public PublicKey publicKey() {
+        return this.primary().publicKey();
+    }
+
+    @Override
+    public @NotNull Compression compression() {
+        return this.primary().compression();
+    }
+
+    @Override
+    public boolean resumed() {
+        return this.primary().resumed();
+    }
+
+    @Override
+    public int ping() {
+        int connectionCount = 0;
+        int totalPing = 0;
+
+        for (ConnectionImpl connection : this.connections()) {
+            int ping = connection.ping();
+            if (ping == -1)
+                continue;
+
+            totalPing += ping;
+            connectionCount++;
+        }
+
+        return connectionCount > 0 ? (totalPing / connectionCount) : -1;
+    }
+
+    @Override
+    public @NotNull RoundTripTime roundTripTime() {
+        return this.primary().roundTripTime();
+    }
+
+    @Override
+    public @NotNull NetworkMetrics metrics() {
+        return this.socket.metrics();
+    }
+
+    @Override
+    public boolean connected() {
+        return !this.connections().isEmpty();
+    }
+
+    @Override
+    public @NotNull InetSocketAddress remoteAddress() {
+        return this.primary().remoteAddress();
+    }
+
+    @Override
+    public <P extends Message> @NotNull CompletableFuture<Response> sendPacket(@NotNull RegistryKey key, @Nullable P payload) {
+        return this.sendPacket(key, payload, Priority.NORMAL);
+    }
+
+    @Override
+    public <P extends Message> @NotNull CompletableFuture<Response> sendPacket(@NotNull RegistryKey key, @Nullable P payload, @NotNull Priority priority) {
+        return this.sendPacket(key, payload, priority, this.timeout.get());
+    }
+
+    @Override
+    public <P extends Message> @NotNull CompletableFuture<Response> sendPacket(@NotNull RegistryKey key, @Nullable P payload,
+                                                                             @NotNull Priority priority, @NotNull Duration timeout) {
+        Preconditions.checkNotNull(timeout);
+
+        if (timeout.toMillis() <= 0)
+            return CompletableFuture.failedFuture(new TimeoutException("Deadline already passed."));
+
+        return this.sendPacket(key, payload, priority, timeout.toMillis());
+    }
+
+    private <P extends Message> CompletableFuture<Response> sendPacket(RegistryKey key, P payload, Priority priority, long timeout) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(priority);
+
+        PendingRequest request = new PendingRequest(key, payload, priority, UUID.randomUUID(),
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout), new CompletableFuture<>(), false);
+
+        ConnectionImpl connection = this.select(key);
+        if (connection != null) {
+            this.send(connection, request);
+            return request.future();
+        }
+
+        if (!this.bufferRequest(request))
+            throw new IllegalStateException(this.buffer == null || !this.socket.running() ?
+                    "Connection Disconnected!" : "Connection Disconnected, request buffer is full!");
+
+        return request.future();
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Void> disconnect(String reason) {
+        Preconditions.checkNotNull(reason);
+
+        return this.socket.disconnect(reason);
+    }
+
+    @Override
+    public @NotNull Duration timeout() {
+        return Duration.of(this.timeout.get(), ChronoUnit.MILLIS);
+    }
+
+    @Override
+    public void timeout(@NotNull Duration timeout) {
+        Preconditions.checkNotNull(timeout);
+        Preconditions.checkArgument(timeout.isPositive(), "Timeout must be higher than 0!");
+
+        this.timeout.set(timeout.toMillis());
+        for (ConnectionImpl connection : this.connections()) {
+            connection.timeout(timeout);
+        }
+    }
+
+    @Override
+    public @NotNull Socket socket() {
+        return this.socket;
+    }
+
+    /**
+     * Sends the buffered requests in order, called once a connection is ready.
+     */
+    public synchronized void flush() { // Concurrent flushes would reorder the requests.
+        if (this.buffer == null)
+            return;
+
+        PendingRequest request;
+        while ((request = this.buffer.peek()) != null) {
+            if (request.future().isDone()) { // Timed-out while buffered.
+                this.buffer.remove(request);
+                continue;
+            }
+
+            ConnectionImpl connection = this.select(request.key());
+            if (connection == null) // Lost the connection again, the request stays first.
+                return;
+
+            if (this.buffer.remove(request)) // Not timed-out since peeked.
+                this.send(connection, request);
+        }
+    }
+
+    private void send(ConnectionImpl connection, PendingRequest request) {
+        long timeout = request.remainingTime(); // Replays only get what is left of the original timeout.
+        if (timeout <= 0) {
+            request.future().completeExceptionally(new TimeoutException("Deadline passed before the request could be sent."));
+            return;
+        }
+
+        CompletableFuture<Response> future;
+        try {
+            future = connection.sendPacket(request.key(), request.payload(), request.priority(), request.identifier(),
+                    timeout);
+        } catch (IllegalStateException e) { // Closed since selected, nothing was sent.
+            this.resend(request, e);
+            return;
+        }
+
+        request.future().whenComplete((response, cause) -> future.cancel(false)); // Cancelled or answered elsewhere.
+        this.scheduleHedge(connection, request);
+
+        future.whenComplete((response, cause) -> {
+            if (cause == null) {
+                request.future().complete(response);
+                return;
+            }
+
+            Throwable exception = cause instanceof CompletionException ? cause.getCause() : cause;
+            if (exception instanceof ClosedChannelException && !request.replayed() && this.socket.idempotent(request.key())) {
+                this.resend(request.replay(), exception);
+                return;
+            }
+
+            request.future().completeExceptionally(exception);
+        });
+    }
+
+    private void scheduleHedge(ConnectionImpl connection, PendingRequest request) {
+        double percentile = this.socket.hedgingPercentile();
+        if (percentile <= 0 || request.replayed() || !this.socket.idempotent(request.key()))
+            return;
+
+        long delay = this.socket.metricsRecorder().responseLatency(request.key(), percentile, HEDGING_MIN_SAMPLES);
+        if (delay < 0)
+            return;
+
+        CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+            if (request.future().isDone())
+                return;
+
+            ConnectionImpl hedgeConnection = this.select(request.key(), connection);
+            long timeout = request.remainingTime();
+            if (hedgeConnection == null || timeout <= 0)
+                return;
+
+            CompletableFuture<Response> future;
+            try { // Same identifier, the server sees a duplicate of the same request.
+                future = hedgeConnection.sendPacket(request.key(), request.payload(), request.priority(), request.identifier(),
+                        timeout);
+            } catch (IllegalStateException e) {
+                return;
+            }
+
+            request.future().whenComplete((response, cause) -> future.cancel(false)); // Cancels the slower one.
+            future.thenAccept(response -> request.future().complete(response)); // Failures are left to the original.
+        });
+    }
+
+    private void resend(PendingRequest request, Throwable cause) {
+        ConnectionImpl connection = this.select(request.key());
+        if (connection != null) {
+            this.send(connection, request);
+            return;
+        }
+
+        if (!this.bufferRequest(request))
+            request.future().completeExceptionally(cause);
+    }
+
+    private boolean bufferRequest(PendingRequest request) {
+        if (this.buffer == null || !this.socket.running() || !this.buffer.offer(request))
+            return false;
+
+        CompletableFuture.delayedExecutor(Math.max(request.remainingTime(), 0), TimeUnit.MILLISECONDS).execute(() -> {
+            if (this.buffer.remove(request))
+                request.future().completeExceptionally(new TimeoutException("Connection was not re-established in time."));
+        });
+
+        if (this.select(request.key()) != null) // Reconnected while buffering.
+            this.flush();
+
+        return true;
+    }
+
+    @Nullable
+    private ConnectionImpl select(RegistryKey key) {
+        return this.select(key, null);
+    }
+
+    @Nullable
+    private ConnectionImpl select(RegistryKey key, @Nullable ConnectionImpl excluded) {
+        int size = this.socket.poolSize();
+
+        if (this.strategy == PoolStrategy.KEY_AFFINITY) {
+            int slot = Math.floorMod(key.hashCode(), size);
+
+            for (int i = 0; i < size; i++) { // Probe the next slots if the connection of the key is down.
+                ConnectionImpl connection = this.socket.pooledConnection((slot + i) % size);
+                if (connection != excluded && usable(connection))
+                    return connection;
+            }
+
+            return null;
+        }
+
+        ConnectionImpl selected = null;
+        int selectedInFlight = Integer.MAX_VALUE;
+
+        for (int slot = 0; slot < size; slot++) {
+            ConnectionImpl connection = this.socket.pooledConnection(slot);
+            if (connection == excluded || !usable(connection))
+                continue;
+
+            int inFlight = connection.inFlightRequests();
+            if (inFlight < selectedInFlight) {
+                selected = connection;
+                selectedInFlight = inFlight;
+            }
+        }
+
+        return selected;
+    }
+
+    private ConnectionImpl primary() {
+        List<ConnectionImpl> connections = this.connections();
+        if (connections.isEmpty())
+            throw new IllegalStateException("Connection Disconnected!");
+
+        return connections.getFirst();
+    }
+
+    private List<ConnectionImpl> connections() {
+        List<ConnectionImpl> connections = new ArrayList<>();
+        for (int slot = 0; slot < this.socket.poolSize(); slot++) {
+            ConnectionImpl connection = this.socket.pooledConnection(slot);
+            if (usable(connection))
+                connections.add(connection);
+        }
+
+        return connections;
+    }
+
+    private static boolean usable(@Nullable ConnectionImpl connection) {
+        return connection != null && connection.connected() && connection.authenticated();
+    }
+
+    private record PendingRequest(RegistryKey key, Message payload, Priority priority, UUID identifier,
+                                  long deadline, CompletableFuture<Response> future, boolean replayed) { // Deadline in nanoseconds.
+
+        private PendingRequest replay() {
+            return new PendingRequest(this.key, this.payload, this.priority, this.identifier, this.deadline, this.future, true);
+        }
+
+        private long remainingTime() {
+            return TimeUnit.NANOSECONDS.toMillis(this.deadline - System.nanoTime());
+        }
+    }
+}
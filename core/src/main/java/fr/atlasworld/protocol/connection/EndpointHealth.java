@@ -0,0 +1,53 @@
+package fr.atlasworld.protocol.connection;
+
+import java.net.InetSocketAddress;
+import java.util.Comparator;
+
+/**
+ * Health of a server endpoint, used to pick the endpoints a client connects to first.
+ * <p>
+ * The score is a moving average of the connection outcomes, between 0 (always fails) and 1 (always succeeds),
+ * endpoints with equal scores are ordered by their handshake duration.
+ */
+public final class EndpointHealth {
+    public static final Comparator<EndpointHealth> HEALTHIEST_FIRST = Comparator
+            .comparingDouble(EndpointHealth::score).reversed()
+            .thenComparingLong(EndpointHealth::handshakeDuration);
+
+    private static final double WEIGHT = 0.3; // Weight of the latest outcome.
+
+    private final InetSocketAddress address;
+
+    private volatile double score;
+    private volatile long handshakeDuration;
+
+    public EndpointHealth(InetSocketAddress address) {
+        this.address = address;
+        this.score = 1; // Untried endpoints are given a chance.
+    }
+
+    public InetSocketAddress address() {
+        return this.address;
+    }
+
+    public double score() {
+        return this.score;
+    }
+
+    /**
+     * Smoothed duration of the handshakes with the endpoint, in nanoseconds.
+     */
+    public long handshakeDuration() {
+        return this.handshakeDuration;
+    }
+
+    public synchronized void success(long handshakeDuration) {
+        this.score += (1 - this.score) * WEIGHT;
+        this.handshakeDuration = this.handshakeDuration == 0 ? handshakeDuration :
+                this.handshakeDuration + (handshakeDuration - this.handshakeDuration) / 4;
+    }
+
+    public synchronized void failure() {
+        this.score -= this.score * WEIGHT;
+    }
+}
@@ -0,0 +1,27 @@
+package fr.atlasworld.protocol.connection;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Reconnection policy of a client socket, delays are in milliseconds.
+ *
+ * @param initialDelay delay before the first reconnection attempt.
+ * @param maxDelay maximum delay between two attempts.
+ * @param bufferSize requests buffered while no connection is available.
+ */
+public record ReconnectPolicy(long initialDelay, long maxDelay, int bufferSize) {
+
+    /**
+     * Computes the delay before an attempt, doubling every attempt up to the {@link #maxDelay()}.
+     * <p>
+     * Up to half of the delay is randomly removed, so clients disconnected at once do not reconnect at once.
+     *
+     * @param attempt attempt number, starting at 0.
+     *
+     * @return delay before the attempt.
+     */
+    public long delay(int attempt) {
+        long delay = (long) Math.min(this.maxDelay, this.initialDelay * Math.pow(2, attempt));
+        return delay - ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+}
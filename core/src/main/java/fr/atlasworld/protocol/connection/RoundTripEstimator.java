@@ -0,0 +1,49 @@
+package fr.atlasworld.protocol.connection;
+
+import fr.atlasworld.protocol.metrics.RoundTripTime;
+
+/**
+ * Estimates the round-trip time of a connection from ping samples,
+ * using the smoothing of TCP's retransmission timer (RFC 6298).
+ * <p>
+ * Samples must be submitted from a single thread, the estimate may be read from any thread.
+ */
+public final class RoundTripEstimator {
+    private final long[] window;
+    private long smoothed;
+    private long variation;
+    private long samples;
+
+    private volatile RoundTripTime current;
+
+    public RoundTripEstimator() {
+        this.window = new long[RoundTripTime.WINDOW];
+        this.current = RoundTripTime.UNKNOWN;
+    }
+
+    public void sample(long rtt) {
+        if (this.samples == 0) {
+            this.smoothed = rtt;
+            this.variation = rtt / 2;
+        } else {
+            this.variation += (Math.abs(this.smoothed - rtt) - this.variation) / 4; // beta = 1/4
+            this.smoothed += (rtt - this.smoothed) / 8; // alpha = 1/8
+        }
+
+        this.window[(int) (this.samples % this.window.length)] = rtt;
+        this.samples++;
+
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < Math.min(this.samples, this.window.length); i++) {
+            min = Math.min(min, this.window[i]);
+            max = Math.max(max, this.window[i]);
+        }
+
+        this.current = new RoundTripTime(this.smoothed, this.variation, min, max, rtt, this.samples);
+    }
+
+    public RoundTripTime current() {
+        return this.current;
+    }
+}
@@ -10,6 +10,7 @@ import fr.atlasworld.protocol.handler.event.HandshakeFinishedEvent;
 import fr.atlasworld.protocol.packet.Header;
 import fr.atlasworld.protocol.packet.PacketBase;
 import fr.atlasworld.protocol.socket.Socket;
+import io.airlift.compress.MalformedInputException;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -17,9 +18,10 @@ import io.netty.channel.ChannelPromise;
 import io.netty.util.ReferenceCountUtil;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayDeque;
+import java.util.Queue;
 import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.DataFormatException;
 
 public class CodecHandler extends ChannelDuplexHandler {
     public static final short MAX_HEADER_SIZE = 200;
@@ -27,11 +29,16 @@ public class CodecHandler extends ChannelDuplexHandler {
     public static final int MIN_PACKET_SIZE = 4;
     public static final int MAX_PACKET_SIZE = 4194304;
 
-    private BlockingQueue<ByteBuf> packetQueue;
+    private final int compressionThreshold;
+
+    private Queue<QueuedPacket> packetQueue;
     private ConnectionImpl connection;
+    private PacketCompressor compressor;
+    private DictionaryCompressor dictionaryCompressor;
 
-    public CodecHandler() {
-        this.packetQueue = new LinkedBlockingQueue<>();
+    public CodecHandler(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+        this.packetQueue = new ArrayDeque<>(); // Only accessed from the channel's event loop.
     }
 
     @Override
@@ -46,28 +53,60 @@ public class CodecHandler extends ChannelDuplexHandler {
             throw new IllegalArgumentException("Unexpected Packet Type!");
         }
 
-        byte[] header = packet.header().toByteArray();
+        HeaderWrapper.Header packetHeader = packet.header();
+        byte[] payload = packet.payload();
+
+        byte[] compressedBuffer = null;
+        int compressedLength = -1;
+
+        if (this.dictionaryCompressor != null && packetHeader.hasRequest() && payload.length >= DictionaryCompressor.MIN_PAYLOAD_SIZE
+                && this.dictionaryCompressor.supports(packetHeader.getRequest())) {
+            compressedLength = this.dictionaryCompressor.compress(packetHeader.getRequest(), payload);
+
+            if (compressedLength != -1) { // Only send compressed if it's actually smaller.
+                compressedBuffer = this.dictionaryCompressor.buffer();
+                packetHeader = packetHeader.toBuilder().setUncompressedSize(payload.length).setDictionary(true).build();
+            }
+        }
+
+        if (compressedBuffer == null && this.compressor != null && payload.length >= this.compressionThreshold) {
+            compressedLength = this.compressor.compress(payload);
+
+            if (compressedLength != -1) { // Only send compressed if it's actually smaller.
+                compressedBuffer = this.compressor.buffer();
+                packetHeader = packetHeader.toBuilder().setUncompressedSize(payload.length).build();
+            }
+        }
+
+        byte[] header = packetHeader.toByteArray();
         if (header.length > MAX_HEADER_SIZE)
             throw new PacketToBigException("Header exceeds maximum header size (" + MAX_HEADER_SIZE + "): " + header.length,
                     NetworkException.UNDEFINED_COMMUNICATION_IDENTIFIER);
 
-        byte[] payload = packet.message().toByteArray();
         ByteBuf buffer = ctx.channel().alloc().directBuffer();
 
         buffer.writeShort(header.length);
         buffer.writeBytes(header);
-        buffer.writeBytes(payload);
 
+        if (compressedBuffer != null)
+            buffer.writeBytes(compressedBuffer, 0, compressedLength);
+        else
+            buffer.writeBytes(payload);
+
+        EncodedPacket encodedPacket = new EncodedPacket(buffer, packet.priority());
         if (this.connection == null) {
-            this.packetQueue.add(buffer); // Queue packets, prevents from sending packets while the handshake is still going.
+            // Queue packets, prevents from sending packets while the handshake is still going.
+            this.packetQueue.add(new QueuedPacket(encodedPacket, promise));
             return;
         }
 
-        ctx.write(buffer, promise);
+        this.connection.metricsRecorder().packetSent(buffer.readableBytes());
+        ctx.write(encodedPacket, promise);
     }
 
     @Override
     public void channelRead(@NotNull ChannelHandlerContext ctx, @NotNull Object msg) throws Exception {
+        long receivedAt = System.nanoTime(); // Deadlines of requests start from here, queuing before the handler counts.
         if (!ctx.channel().isActive()) {
             ReferenceCountUtil.release(msg);
             return;
@@ -83,6 +122,7 @@ public class CodecHandler extends ChannelDuplexHandler {
             throw new IllegalArgumentException("Unexpected Packet Type!");
         }
 
+        int packetSize = buffer.readableBytes();
         short headerSize = buffer.readShort();
         if (headerSize > MAX_HEADER_SIZE) {
             buffer.release();
@@ -117,7 +157,11 @@ public class CodecHandler extends ChannelDuplexHandler {
             throw new PacketInvalidException("Header has a response code but also a request entry!",
                     new UUID(header.getIdMostSig(), header.getIdLeastSig()));
 
-        PacketBase packet = new PacketBase(new Header(header, header.hasCode()), this.connection, payloadBytes);
+        if (header.hasUncompressedSize())
+            payloadBytes = this.decompress(header, payloadBytes);
+
+        PacketBase packet = new PacketBase(new Header(header, header.hasCode()), this.connection, payloadBytes, receivedAt);
+        this.connection.metricsRecorder().packetReceived(packetSize);
         ctx.fireChannelRead(packet);
     }
 
@@ -125,25 +169,60 @@ public class CodecHandler extends ChannelDuplexHandler {
     public void userEventTriggered(ChannelHandlerContext ctx, Object event) throws Exception {
         if (event instanceof HandshakeFinishedEvent(ConnectionImpl eventConnection)) {
             this.connection = eventConnection;
+            this.compressor = PacketCompressor.create(eventConnection.compression());
+
+            if (!eventConnection.compressionDictionaries().isEmpty())
+                this.dictionaryCompressor = new DictionaryCompressor(eventConnection.compressionDictionaries());
 
-            ChannelPromise lastWrite = ctx.newPromise();
             while (!this.packetQueue.isEmpty()) {
-                ByteBuf buf = this.packetQueue.poll();
+                QueuedPacket queuedPacket = this.packetQueue.poll();
+                eventConnection.metricsRecorder().packetSent(queuedPacket.packet().buffer().readableBytes());
+                ctx.write(queuedPacket.packet(), queuedPacket.promise());
+            }
 
-                if (this.packetQueue.isEmpty()) { // Last packet.
-                    ctx.write(buf, lastWrite);
-                    continue;
-                }
+            ctx.flush();
+            this.packetQueue = null; // Lose reference to the queue for GC
+        }
 
-                ctx.write(buf);
+        super.userEventTriggered(ctx, event); // Pass to next ChannelHandler
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (this.dictionaryCompressor != null)
+            this.dictionaryCompressor.close(); // Release native zlib resources.
+    }
+
+    private byte[] decompress(HeaderWrapper.Header header, byte[] payload) throws NetworkException {
+        UUID requestId = new UUID(header.getIdMostSig(), header.getIdLeastSig());
+
+        if (header.getUncompressedSize() < 0) // uint32 above Integer.MAX_VALUE.
+            throw new PacketInvalidException("Invalid uncompressed packet size!", requestId);
+
+        if (header.getUncompressedSize() > MAX_PACKET_SIZE)
+            throw new PacketToBigException("Uncompressed packet exceeds maximum packet size (" + MAX_PACKET_SIZE + " bytes)", requestId);
+
+        if (header.getDictionary()) {
+            if (this.dictionaryCompressor == null || !header.hasRequest())
+                throw new PacketInvalidException("Received dictionary compressed packet, but no dictionary was agreed on!", requestId);
+
+            try {
+                return this.dictionaryCompressor.decompress(header.getRequest(), payload, header.getUncompressedSize());
+            } catch (DataFormatException e) {
+                throw new PacketInvalidException("Unable to decompress payload!", e, requestId);
             }
+        }
+
+        if (this.compressor == null)
+            throw new PacketInvalidException("Received compressed packet, but no compression was negotiated!", requestId);
 
-            lastWrite.addListener(future -> {
-                ctx.flush();
-                this.packetQueue = null; // Lose reference to the queue for GC
-            });
+        try {
+            return this.compressor.decompress(payload, header.getUncompressedSize());
+        } catch (MalformedInputException e) {
+            throw new PacketInvalidException("Unable to decompress payload!", e, requestId);
         }
+    }
 
-        super.userEventTriggered(ctx, event); // Pass to next ChannelHandler
+    private record QueuedPacket(EncodedPacket packet, ChannelPromise promise) {
     }
 }
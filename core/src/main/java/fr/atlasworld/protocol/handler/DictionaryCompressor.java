@@ -0,0 +1,92 @@
+package fr.atlasworld.protocol.handler;
+
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses and decompresses request payloads with the dictionary of their packet type.
+ * <p>
+ * Uses raw deflate with a preset dictionary, a single deflater and inflater are reset between packets.
+ * Not thread-safe, only use it from the channel's event loop and {@link #close()} it once the channel is closed.
+ */
+public final class DictionaryCompressor {
+    public static final int MIN_PAYLOAD_SIZE = 16;
+
+    private final Map<String, byte[]> dictionaries;
+    private final Deflater deflater;
+    private final Inflater inflater;
+
+    private byte[] buffer;
+
+    public DictionaryCompressor(Map<String, byte[]> dictionaries) {
+        this.dictionaries = dictionaries;
+
+        this.deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        this.inflater = new Inflater(true);
+        this.buffer = new byte[0];
+    }
+
+    public boolean supports(String request) {
+        return this.dictionaries.containsKey(request);
+    }
+
+    /**
+     * Compresses the payload in to the internal buffer.
+     *
+     * @return size of the compressed payload in {@link #buffer()},
+     *         or -1 if compressing did not make the payload smaller.
+     */
+    public int compress(String request, byte[] payload) {
+        if (this.buffer.length < payload.length)
+            this.buffer = new byte[payload.length];
+
+        this.deflater.reset();
+        this.deflater.setDictionary(this.dictionaries.get(request));
+        this.deflater.setInput(payload);
+        this.deflater.finish();
+
+        // Output is capped to the payload size, if it does not fit it's not worth it.
+        int length = this.deflater.deflate(this.buffer, 0, payload.length);
+        return this.deflater.finished() && length < payload.length ? length : -1;
+    }
+
+    public byte[] buffer() {
+        return this.buffer;
+    }
+
+    public byte[] decompress(String request, byte[] payload, int uncompressedSize) throws DataFormatException {
+        byte[] dictionary = this.dictionaries.get(request);
+        if (dictionary == null)
+            throw new DataFormatException("No dictionary agreed on for '" + request + "'");
+
+        byte[] output = new byte[uncompressedSize];
+
+        this.inflater.reset();
+        this.inflater.setDictionary(dictionary);
+        this.inflater.setInput(payload);
+
+        int length = this.inflater.inflate(output);
+        if (!this.inflater.finished() && length == uncompressedSize) // Output is full, but the end of the stream may not have been read yet.
+            length += this.inflater.inflate(new byte[1]);
+
+        if (!this.inflater.finished() || length != uncompressedSize)
+            throw new DataFormatException("Decompressed size does not match the expected size: " + uncompressedSize);
+
+        return output;
+    }
+
+    public void close() {
+        this.deflater.end();
+        this.inflater.end();
+    }
+
+    public static int checksum(byte[] dictionary) {
+        CRC32 crc = new CRC32();
+        crc.update(dictionary);
+
+        return (int) crc.getValue();
+    }
+}
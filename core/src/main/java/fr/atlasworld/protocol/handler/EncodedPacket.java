@@ -0,0 +1,7 @@
+package fr.atlasworld.protocol.handler;
+
+import fr.atlasworld.protocol.packet.Priority;
+import io.netty.buffer.ByteBuf;
+
+public record EncodedPacket(ByteBuf buffer, Priority priority) {
+}
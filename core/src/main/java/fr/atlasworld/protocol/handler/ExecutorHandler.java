@@ -10,15 +10,22 @@ import fr.atlasworld.protocol.event.EarlyNetworkFailureEvent;
 import fr.atlasworld.protocol.event.connection.ConnectionExceptionEvent;
 import fr.atlasworld.protocol.event.connection.ConnectionRequestReceivedEvent;
 import fr.atlasworld.protocol.exception.NetworkException;
+import fr.atlasworld.protocol.exception.RateExceededException;
+import fr.atlasworld.protocol.exception.request.PacketInvalidException;
 import fr.atlasworld.protocol.exception.request.UnknownRequestException;
 import fr.atlasworld.protocol.exception.response.FailureNetworkException;
 import fr.atlasworld.protocol.generated.AcknowledgementWrapper;
+import fr.atlasworld.protocol.generated.CancelWrapper;
 import fr.atlasworld.protocol.generated.EmptyWrapper;
+import fr.atlasworld.protocol.generated.SessionWrapper;
 import fr.atlasworld.protocol.handler.event.HandshakeFinishedEvent;
+import fr.atlasworld.protocol.handshake.SessionTicket;
 import fr.atlasworld.protocol.packet.Packet;
 import fr.atlasworld.protocol.packet.PacketBase;
 import fr.atlasworld.protocol.packet.PacketHandlerContextImpl;
+import fr.atlasworld.protocol.packet.Priority;
 import fr.atlasworld.protocol.packet.ResponderImpl;
+import fr.atlasworld.protocol.socket.ClientSocketImpl;
 import fr.atlasworld.protocol.socket.Socket;
 import fr.atlasworld.registry.Registry;
 import fr.atlasworld.registry.RegistryKey;
@@ -26,11 +33,14 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.util.ReferenceCountUtil;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
 import java.lang.ref.WeakReference;
 import java.net.InetSocketAddress;
 import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
@@ -41,12 +51,26 @@ public class ExecutorHandler extends ChannelInboundHandlerAdapter {
     private final Registry<Packet> registry;
     private final EventNode<Event> rootNode;
 
+    private final GlobalRateLimiter globalLimiter;
+    private final Map<RegistryKey, PacketRateLimit> packetLimits;
+    private final Map<RegistryKey, PacketRateLimiter> packetLimiters; // Only accessed from the channel's event loop.
+    private final RequestDeduplicator deduplicator;
+    private final Map<RegistryKey, ResponseCache> responseCaches;
+
     private ConnectionImpl connection;
 
-    public ExecutorHandler(Socket socket, Registry<Packet> registry, EventNode<Event> rootNode) {
+    public ExecutorHandler(Socket socket, Registry<Packet> registry, EventNode<Event> rootNode,
+                           @Nullable GlobalRateLimiter globalLimiter, Map<RegistryKey, PacketRateLimit> packetLimits,
+                           @Nullable RequestDeduplicator deduplicator, Map<RegistryKey, ResponseCache> responseCaches) {
         this.socket = socket;
         this.registry = registry;
         this.rootNode = rootNode;
+
+        this.globalLimiter = globalLimiter;
+        this.packetLimits = packetLimits;
+        this.packetLimiters = new HashMap<>();
+        this.deduplicator = deduplicator;
+        this.responseCaches = responseCaches;
     }
 
     @Override
@@ -61,7 +85,6 @@ public class ExecutorHandler extends ChannelInboundHandlerAdapter {
             throw new IllegalArgumentException("Unexpected Packet Type!");
         }
 
-        this.updatePing(packet);
         if (packet.header().isRequestHeader()) {
             this.handleRequest(packet);
             return;
@@ -79,19 +102,54 @@ public class ExecutorHandler extends ChannelInboundHandlerAdapter {
     }
 
     private void handleRequest(PacketBase request) throws NetworkException {
+        RegistryKey key = request.header().request();
+        this.checkRateLimit(key, request);
+
+        if (key.equals(ApiBridge.CANCEL_PACKET)) {
+            this.handleCancel(request);
+            return;
+        }
+
+        if (key.equals(ApiBridge.SESSION_TICKET_PACKET)) {
+            this.handleSessionTicket(request);
+            return;
+        }
+
+        if (request.expired(System.nanoTime())) { // Nobody awaits the response anymore.
+            LOGGER.trace("Dropped request {}, its deadline passed before being handled.", request.header().uniqueId());
+            request.source().metricsRecorder().requestExpired();
+            return;
+        }
+
         CompletableFuture.runAsync(() ->
                 request.source().rootNode().callEvent(new ConnectionRequestReceivedEvent(request.source(), request)));
 
-        RegistryKey key = request.header().request();
-
         Packet packet = this.registry.retrieveValue(key)
                 .orElseThrow(() -> new UnknownRequestException("Unknown request: " + key, request.header().uniqueId()));
 
-        PacketHandlerContextImpl context = request.createHandlingContext();
+        ResponseCache cache = this.responseCaches.get(key);
+        if (cache != null) {
+            ResponseCache.CachedResponse cached = cache.get(request.source().identifier(), request.payloadBytes());
+            if (cached != null) { // Read-only request, no need to handle it again.
+                this.respondCached(request, key, cached);
+                return;
+            }
+        }
+
+        PacketHandlerContextImpl context = request.createHandlingContext(key);
+        if (this.deduplicator != null && this.deduplicate(request, context))
+            return;
+
+        if (cache != null)
+            context.responder().cache(cache, request.payloadBytes());
 
         try {
             packet.handle(context, request);
         } catch (Throwable cause) {
+            request.source().requestServed(request.header().uniqueId()); // Failure is sent as response.
+            if (this.deduplicator != null)
+                this.deduplicator.failed(request.source().identifier(), request.header().uniqueId());
+
             if (cause instanceof NetworkException)
                 throw cause;
 
@@ -99,6 +157,85 @@ public class ExecutorHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    private void respondCached(PacketBase request, RegistryKey key, ResponseCache.CachedResponse cached) {
+        PacketPackage packet = PacketPackage.createResponsePackage(request.header().uniqueId(), cached.code(),
+                cached.payload(), request.header().priority());
+
+        request.source().channel().writeAndFlush(packet);
+        request.source().metricsRecorder().requestServed(key, System.nanoTime() - request.receivedAt());
+    }
+
+    private boolean deduplicate(PacketBase request, PacketHandlerContextImpl context) {
+        UUID client = request.source().identifier();
+        UUID identifier = request.header().uniqueId();
+
+        RequestDeduplicator.Entry original = this.deduplicator.register(client, identifier);
+        if (original == null) {
+            context.responder().deduplicate(this.deduplicator.entry(client, identifier));
+            return false;
+        }
+
+        LOGGER.trace("Request {} is a duplicate, answering with the original response.", identifier);
+        request.source().metricsRecorder().requestDeduplicated();
+        original.answer(context.responder());
+        return true;
+    }
+
+    private void handleCancel(PacketBase request) throws PacketInvalidException {
+        CancelWrapper.Cancel cancel;
+        try {
+            cancel = request.payload(CancelWrapper.Cancel.class);
+        } catch (InvalidProtocolBufferException e) {
+            throw new PacketInvalidException("Invalid cancel packet!", e, request.header().uniqueId());
+        }
+
+        request.source().cancelServing(new UUID(cancel.getIdMostSig(), cancel.getIdLeastSig()));
+    }
+
+    private void handleSessionTicket(PacketBase request) throws PacketInvalidException {
+        if (!(this.socket instanceof ClientSocketImpl client))
+            throw new PacketInvalidException("Only servers may issue session tickets!", request.header().uniqueId());
+
+        SessionWrapper.IssuedTicket issued;
+        try {
+            issued = request.payload(SessionWrapper.IssuedTicket.class);
+        } catch (InvalidProtocolBufferException e) {
+            throw new PacketInvalidException("Invalid session ticket packet!", e, request.header().uniqueId());
+        }
+
+        byte[] secret = request.source().takeResumptionSecret();
+        if (secret == null) // Only one ticket per connection.
+            return;
+
+        client.storeSessionTicket(new SessionTicket(issued.getTicket().toByteArray(), secret,
+                System.currentTimeMillis() + issued.getLifetime()));
+    }
+
+    private void checkRateLimit(RegistryKey key, PacketBase request) throws RateExceededException {
+        if (this.globalLimiter == null && this.packetLimits.isEmpty())
+            return;
+
+        long now = System.nanoTime();
+        if (this.globalLimiter != null && !this.globalLimiter.tryAcquire(now))
+            throw new RateExceededException("Server request rate exceeded!", request.header().uniqueId());
+
+        if (this.packetLimits.isEmpty())
+            return;
+
+        PacketRateLimiter limiter = this.packetLimiters.get(key);
+        if (limiter == null) {
+            PacketRateLimit limit = this.packetLimits.get(key);
+            if (limit == null)
+                return;
+
+            limiter = new PacketRateLimiter(limit, now);
+            this.packetLimiters.put(key, limiter);
+        }
+
+        if (!limiter.tryAcquire(request.payloadSize(), now))
+            throw new RateExceededException("Request rate exceeded for: " + key, request.header().uniqueId());
+    }
+
     private void handleResponse(PacketBase response) {
          if (response.header().responseCode() == 0) {
             this.handleAck(response);
@@ -108,11 +245,6 @@ public class ExecutorHandler extends ChannelInboundHandlerAdapter {
         response.source().handleResponse(response.header().uniqueId(), response);
     }
 
-    private void updatePing(PacketBase packet) {
-        int currentPing = Math.round(System.currentTimeMillis() - packet.header().time());
-        packet.source().updatePing((currentPing + packet.source().ping()) / 2); // Lowers fluctuation
-    }
-
     private void handleAck(PacketBase ack) {
         UUID identifier = ack.header().uniqueId();
         long timeout;
@@ -143,7 +275,7 @@ public class ExecutorHandler extends ChannelInboundHandlerAdapter {
         short code = (short) netExc.code();
         UUID id = netExc.identifier();
 
-        PacketPackage failurePacket = PacketPackage.createResponsePackage(id, code, EmptyWrapper.Empty.newBuilder().build());
+        PacketPackage failurePacket = PacketPackage.createResponsePackage(id, code, EmptyWrapper.Empty.newBuilder().build(), Priority.HIGH);
         ctx.channel().writeAndFlush(failurePacket);
     }
 }
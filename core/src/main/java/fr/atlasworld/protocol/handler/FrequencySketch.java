@@ -0,0 +1,86 @@
+package fr.atlasworld.protocol.handler;
+
+/**
+ * Count-Min sketch estimating how often keys were accessed recently, with 4-bit counters.
+ * <p>
+ * Counters are halved once enough accesses were recorded, so old popularity fades away.
+ * Not thread-safe.
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = { // Odd constants, one per row.
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private static final long RESET_MASK = 0x7777777777777777L; // Clears the bit shifted in from the next counter.
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table; // 16 counters per long.
+    private final int tableMask;
+    private final int sampleSize;
+
+    private int size;
+
+    FrequencySketch(int maxEntries) {
+        int length = Integer.highestOneBit(Math.max(maxEntries, 1) - 1) << 1; // Next power of two.
+        this.table = new long[Math.max(length, 1)];
+        this.tableMask = this.table.length - 1;
+        this.sampleSize = 10 * Math.max(maxEntries, 1);
+    }
+
+    /**
+     * Estimates the recent access count of a key.
+     *
+     * @return estimated count, at most 15.
+     */
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; row++) {
+            long rowHash = rowHash(hash, row);
+            int count = (int) ((this.table[this.index(rowHash)] >>> offset(rowHash)) & MAX_COUNT);
+
+            frequency = Math.min(frequency, count);
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Records an access to a key.
+     */
+    void increment(int hash) {
+        boolean incremented = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            long rowHash = rowHash(hash, row);
+            int index = this.index(rowHash);
+            int offset = offset(rowHash);
+
+            if (((this.table[index] >>> offset) & MAX_COUNT) < MAX_COUNT) {
+                this.table[index] += 1L << offset;
+                incremented = true;
+            }
+        }
+
+        if (incremented && ++this.size >= this.sampleSize)
+            this.reset();
+    }
+
+    private void reset() {
+        for (int i = 0; i < this.table.length; i++) {
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+
+        this.size >>>= 1;
+    }
+
+    private int index(long rowHash) {
+        return (int) (rowHash >>> 32) & this.tableMask;
+    }
+
+    private static int offset(long rowHash) {
+        return ((int) rowHash & 0xF) << 2;
+    }
+
+    private static long rowHash(int hash, int row) {
+        long rowHash = (hash + SEEDS[row]) * SEEDS[row];
+        return rowHash ^ (rowHash >>> 29);
+    }
+}
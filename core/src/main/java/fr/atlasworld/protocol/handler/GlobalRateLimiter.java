@@ -0,0 +1,38 @@
+package fr.atlasworld.protocol.handler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limiter shared by all the connections of a socket.
+ * <p>
+ * Lock-free, tracks the time at which the next request would be allowed at the steady rate,
+ * and allows requests as long as that time doesn't run ahead of now by more than one second of burst.
+ */
+public final class GlobalRateLimiter {
+    private final long interval;
+    private final long burst;
+    private final AtomicLong nextAllowed;
+
+    /**
+     * @param rate requests allowed per second.
+     */
+    public GlobalRateLimiter(int rate) {
+        this.interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        this.burst = this.interval * rate;
+        this.nextAllowed = new AtomicLong(System.nanoTime());
+    }
+
+    public boolean tryAcquire(long now) {
+        while (true) {
+            long current = this.nextAllowed.get();
+            long next = Math.max(current, now) + this.interval;
+
+            if (next - now > this.burst)
+                return false;
+
+            if (this.nextAllowed.compareAndSet(current, next))
+                return true;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package fr.atlasworld.protocol.handler;
 
-import com.google.common.util.concurrent.RateLimiter;
 import fr.atlasworld.protocol.ApiBridge;
 import fr.atlasworld.protocol.exception.NetworkException;
 import fr.atlasworld.protocol.exception.NetworkTamperedException;
@@ -8,7 +7,9 @@ import fr.atlasworld.protocol.exception.RateExceededException;
 import fr.atlasworld.protocol.exception.request.PacketInvalidException;
 import fr.atlasworld.protocol.handshake.ClientHandshake;
 import fr.atlasworld.protocol.handshake.Handshake;
+import fr.atlasworld.protocol.handshake.HandshakeAdmission;
 import fr.atlasworld.protocol.handshake.ServerHandshake;
+import fr.atlasworld.protocol.security.HandshakeSuite;
 import fr.atlasworld.protocol.socket.ClientSocketImpl;
 import fr.atlasworld.protocol.socket.ServerSocketImpl;
 import io.netty.buffer.ByteBuf;
@@ -16,37 +17,114 @@ import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.jetbrains.annotations.Nullable;
 
 import javax.crypto.KeyGenerator;
-import java.security.KeyFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.Key;
 import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
-@SuppressWarnings("UnstableApiUsage")
 public class HandshakeHandler extends ChannelDuplexHandler {
     public static final String SIGNATURE_ALGORITHM = "HmacSHA256";
     public static final String SECRET_KEY_ALGORITHM = "AES";
     public static final String ASYMMETRIC_KEY_ALGORITHM = "RSA";
 
+    // X25519 suite
+    public static final String IDENTITY_KEY_ALGORITHM = "Ed25519";
+    public static final String EXCHANGE_KEY_ALGORITHM = "X25519";
+
+    // Handshake frames are small, anything bigger is refused before reaching the handshake.
+    public static final int MAX_HANDSHAKE_FRAME_SIZE = 16384;
+
     private final Handshake handshake;
-    private final RateLimiter limiter;
+    private final RateLimits limits;
+    private final Executor executor;
+
+    private final HandshakeAdmission admission;
+    private final long timeout;
+
+    // Only accessed from the channel's event loop.
+    private final Queue<ByteBuf> pendingFrames;
+    private boolean processing;
+    private TokenBucket frameBucket;
+    private TokenBucket byteBucket;
+    private boolean handshakeCompleted;
+    private long handshakeStart;
+    private boolean handshakeRecorded;
+    private InetAddress admittedAddress;
+    private ScheduledFuture<?> timeoutFuture;
 
-    public static HandshakeHandler createServer(ServerSocketImpl socket, KeyGenerator generator, byte[] serverInfo) {
+    public static HandshakeHandler createServer(ServerSocketImpl socket, KeyGenerator generator, byte[] serverInfo,
+                                                Executor executor, RateLimits limits) {
         ServerHandshake handshake = new ServerHandshake(socket, generator, serverInfo);
-        return new HandshakeHandler(handshake);
+        return new HandshakeHandler(handshake, executor, socket.handshakeAdmission(), socket.handshakeTimeout(), limits);
+    }
+
+    public static HandshakeHandler createClient(ClientSocketImpl socket, RateLimits limits) {
+        ClientHandshake handshake = new ClientHandshake(socket);
+        return new HandshakeHandler(handshake, Runnable::run, null, 0, limits); // Clients only have a single handshake, run it in place.
+    }
+
+    public static String identityAlgorithm(HandshakeSuite suite) {
+        return switch (suite) {
+            case RSA -> ASYMMETRIC_KEY_ALGORITHM;
+            case X25519 -> IDENTITY_KEY_ALGORITHM;
+        };
     }
 
-    public static HandshakeHandler createClient(ClientSocketImpl socket, KeyFactory factory) {
-        ClientHandshake handshake = new ClientHandshake(socket, factory);
-        return new HandshakeHandler(handshake);
+    public static boolean supportsKey(HandshakeSuite suite, Key key) {
+        return switch (suite) {
+            case RSA -> key.getAlgorithm().equals(ASYMMETRIC_KEY_ALGORITHM);
+            case X25519 -> key.getAlgorithm().equals("EdDSA") || key.getAlgorithm().equals(IDENTITY_KEY_ALGORITHM);
+        };
     }
 
-    private HandshakeHandler(Handshake handshake) {
+    private HandshakeHandler(Handshake handshake, Executor executor, @Nullable HandshakeAdmission admission, long timeout, RateLimits limits) {
         this.handshake = handshake;
-        this.limiter = RateLimiter.create(50); // Max 50 requests per sec
+        this.limits = limits;
+        this.executor = executor;
+
+        this.admission = admission;
+        this.timeout = timeout;
+
+        this.pendingFrames = new ArrayDeque<>();
     }
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        if (this.admission != null) {
+            InetAddress address = ((InetSocketAddress) ctx.channel().remoteAddress()).getAddress();
+            if (!this.admission.tryAcquire(address)) {
+                ApiBridge.LOGGER.debug("Refused connection with '{}', too many handshakes in progress.", ctx.channel().remoteAddress());
+                ctx.close();
+                return;
+            }
+
+            this.admittedAddress = address;
+        }
+
+        if (this.timeout > 0) {
+            this.timeoutFuture = ctx.executor().schedule(() -> {
+                if (this.handshake.finished())
+                    return;
+
+                ApiBridge.LOGGER.debug("Handshake with '{}' timed out.", ctx.channel().remoteAddress());
+                ctx.close();
+            }, this.timeout, TimeUnit.MILLISECONDS);
+        }
+
+        long now = System.nanoTime();
+        this.handshakeStart = now;
+        this.frameBucket = this.limits.handshakeBucket(now);
+        this.byteBucket = this.limits.byteBucket(now);
+
         ApiBridge.LOGGER.trace("Initializing new connection with '{}'..", ctx.channel().remoteAddress());
         this.handshake.initialize(ctx);
         super.channelActive(ctx);
@@ -55,9 +133,17 @@ public class HandshakeHandler extends ChannelDuplexHandler {
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         ApiBridge.LOGGER.trace("Ended connection with '{}'.", ctx.channel().remoteAddress());
+        this.releasePendingFrames();
+        this.releaseAdmission();
         super.channelInactive(ctx);
     }
 
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        this.releasePendingFrames();
+        this.releaseAdmission();
+    }
+
     @Override
     public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
         if (!ctx.channel().isActive()) {
@@ -89,8 +175,10 @@ public class HandshakeHandler extends ChannelDuplexHandler {
             byte[] unencryptedBytes = new byte[in.readableBytes()];
             in.readBytes(unencryptedBytes);
 
-            byte[] encryptedBytes = this.handshake.encryptor().encrypt(unencryptedBytes);
-            byte[] signature = this.handshake.signer().doFinal(encryptedBytes);
+            long start = System.nanoTime();
+            byte[] encryptedBytes = this.handshake.session().encrypt(unencryptedBytes);
+            byte[] signature = this.handshake.session().sign(encryptedBytes);
+            this.handshake.connection().metricsRecorder().packetEncrypted(System.nanoTime() - start);
 
             out.writeInt(encryptedBytes.length + signature.length + Short.BYTES); // Write the total length of the packet
             out.writeShort(signature.length);
@@ -107,11 +195,6 @@ public class HandshakeHandler extends ChannelDuplexHandler {
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        if (!this.limiter.tryAcquire()) {
-            ReferenceCountUtil.release(msg);
-            throw new RateExceededException("Handshake request exceeded allowed values!");
-        }
-
         if (!ctx.channel().isActive()) {
             ReferenceCountUtil.release(msg);
             return;
@@ -122,6 +205,42 @@ public class HandshakeHandler extends ChannelDuplexHandler {
             throw new IllegalArgumentException("Unexpected Packet Type!");
         }
 
+        boolean finished = this.handshake.finished();
+        if (!finished && buf.readableBytes() > MAX_HANDSHAKE_FRAME_SIZE) {
+            buf.release();
+            throw new PacketInvalidException("Handshake packet is too large!", NetworkException.UNDEFINED_COMMUNICATION_IDENTIFIER);
+        }
+
+        this.acquire(buf, finished);
+
+        if (this.processing) { // Wait for the current handshake step, keeps frames in order.
+            this.pendingFrames.add(buf);
+            return;
+        }
+
+        this.handleFrame(ctx, buf);
+    }
+
+    private void acquire(ByteBuf buf, boolean finished) throws RateExceededException {
+        long now = System.nanoTime(); // Shared by all buckets of this frame.
+
+        if (finished && !this.handshakeCompleted) { // Switch to the packet budget.
+            this.frameBucket = this.limits.packetBucket(now);
+            this.handshakeCompleted = true;
+        }
+
+        if (!this.frameBucket.tryAcquire(1, now)) {
+            buf.release();
+            throw new RateExceededException(finished ? "Packet rate exceeded allowed values!" : "Handshake request exceeded allowed values!");
+        }
+
+        if (this.byteBucket != null && !this.byteBucket.tryAcquire(buf.readableBytes(), now)) {
+            buf.release();
+            throw new RateExceededException("Bandwidth exceeded allowed values!");
+        }
+    }
+
+    private void handleFrame(ChannelHandlerContext ctx, ByteBuf buf) throws NetworkException {
         if (this.handshake.finished()) { // Encrypting & Handshake completed.
             ByteBuf outBuf = ctx.alloc().buffer();
             this.decrypt(buf, outBuf);
@@ -129,7 +248,79 @@ public class HandshakeHandler extends ChannelDuplexHandler {
             return;
         }
 
-        this.handshake.handle(buf, ctx);
+        this.processing = true;
+
+        try {
+            // Handshake steps involve asymmetric cryptography and the authenticator, keep them off the event loop.
+            this.executor.execute(() -> {
+                try {
+                    this.handshake.handle(buf, ctx);
+                } catch (Throwable e) {
+                    ctx.fireExceptionCaught(e);
+                } finally {
+                    if (ctx.executor().inEventLoop())
+                        this.processPendingFrames(ctx);
+                    else
+                        ctx.executor().execute(() -> this.processPendingFrames(ctx));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.processing = false;
+            buf.release();
+
+            throw new RateExceededException("Too many handshakes in progress!");
+        }
+    }
+
+    private void processPendingFrames(ChannelHandlerContext ctx) {
+        this.processing = false;
+
+        if (this.handshake.finished()) {
+            this.releaseAdmission();
+            this.recordHandshake();
+        }
+
+        ByteBuf buf;
+        while (!this.processing && (buf = this.pendingFrames.poll()) != null) {
+            if (!ctx.channel().isActive()) {
+                buf.release();
+                continue;
+            }
+
+            try {
+                this.handleFrame(ctx, buf);
+            } catch (Throwable e) {
+                ctx.fireExceptionCaught(e);
+            }
+        }
+    }
+
+    private void recordHandshake() {
+        if (this.handshakeRecorded)
+            return;
+
+        this.handshakeRecorded = true;
+        this.handshake.connection().metricsRecorder().handshakeCompleted(System.nanoTime() - this.handshakeStart);
+    }
+
+    private void releaseAdmission() {
+        if (this.timeoutFuture != null) {
+            this.timeoutFuture.cancel(false);
+            this.timeoutFuture = null;
+        }
+
+        if (this.admittedAddress == null)
+            return;
+
+        this.admission.release(this.admittedAddress);
+        this.admittedAddress = null;
+    }
+
+    private void releasePendingFrames() {
+        ByteBuf buf;
+        while ((buf = this.pendingFrames.poll()) != null) {
+            buf.release();
+        }
     }
 
     private void decrypt(ByteBuf in, ByteBuf out) throws NetworkException {
@@ -144,11 +335,13 @@ public class HandshakeHandler extends ChannelDuplexHandler {
             byte[] encryptedBytes = new byte[in.readableBytes()];
             in.readBytes(encryptedBytes);
 
-            byte[] actualSignature = this.handshake.signer().doFinal(encryptedBytes);
+            long start = System.nanoTime();
+            byte[] actualSignature = this.handshake.session().sign(encryptedBytes);
             if (!MessageDigest.isEqual(actualSignature, signature))
                 throw new NetworkTamperedException("Packet signatures do not match!");
 
-            out.writeBytes(this.handshake.encryptor().decrypt(encryptedBytes));
+            out.writeBytes(this.handshake.session().decrypt(encryptedBytes));
+            this.handshake.connection().metricsRecorder().packetEncrypted(System.nanoTime() - start);
         } catch (Throwable e) {
             out.release(); // Release no longer useful buffer to prevent memory leaks
 
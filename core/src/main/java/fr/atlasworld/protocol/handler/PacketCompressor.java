@@ -0,0 +1,69 @@
+package fr.atlasworld.protocol.handler;
+
+import fr.atlasworld.protocol.connection.Compression;
+import io.airlift.compress.Compressor;
+import io.airlift.compress.Decompressor;
+import io.airlift.compress.MalformedInputException;
+import io.airlift.compress.lz4.Lz4Compressor;
+import io.airlift.compress.lz4.Lz4Decompressor;
+import io.airlift.compress.zstd.ZstdCompressor;
+import io.airlift.compress.zstd.ZstdDecompressor;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Compresses and decompresses packet payloads of a single channel.
+ * <p>
+ * Not thread-safe, the compression contexts and the output buffer are reused across packets,
+ * only use it from the channel's event loop.
+ */
+public final class PacketCompressor {
+    private final Compressor compressor;
+    private final Decompressor decompressor;
+
+    private byte[] buffer;
+
+    private PacketCompressor(Compressor compressor, Decompressor decompressor) {
+        this.compressor = compressor;
+        this.decompressor = decompressor;
+
+        this.buffer = new byte[0];
+    }
+
+    /**
+     * Compresses the payload in to the internal buffer.
+     *
+     * @return size of the compressed payload in {@link #buffer()},
+     *         or -1 if compressing did not make the payload smaller.
+     */
+    public int compress(byte[] payload) {
+        int maxLength = this.compressor.maxCompressedLength(payload.length);
+        if (this.buffer.length < maxLength)
+            this.buffer = new byte[maxLength];
+
+        int length = this.compressor.compress(payload, 0, payload.length, this.buffer, 0, this.buffer.length);
+        return length < payload.length ? length : -1;
+    }
+
+    public byte[] buffer() {
+        return this.buffer;
+    }
+
+    public byte[] decompress(byte[] payload, int uncompressedSize) throws MalformedInputException {
+        byte[] output = new byte[uncompressedSize];
+
+        int length = this.decompressor.decompress(payload, 0, payload.length, output, 0, output.length);
+        if (length != uncompressedSize)
+            throw new MalformedInputException(length, "Decompressed size does not match the expected size: " + uncompressedSize);
+
+        return output;
+    }
+
+    @Nullable
+    public static PacketCompressor create(Compression compression) {
+        return switch (compression) {
+            case NONE -> null;
+            case LZ4 -> new PacketCompressor(new Lz4Compressor(), new Lz4Decompressor());
+            case ZSTD -> new PacketCompressor(new ZstdCompressor(), new ZstdDecompressor());
+        };
+    }
+}
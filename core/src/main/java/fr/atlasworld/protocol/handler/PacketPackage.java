@@ -8,6 +8,7 @@ import fr.atlasworld.protocol.connection.ConnectionImpl;
 import fr.atlasworld.protocol.generated.HeaderWrapper;
 import fr.atlasworld.protocol.packet.Header;
 import fr.atlasworld.protocol.packet.PacketBase;
+import fr.atlasworld.protocol.packet.Priority;
 import fr.atlasworld.protocol.packet.Request;
 import fr.atlasworld.registry.RegistryKey;
 import io.netty.buffer.ByteBuf;
@@ -20,17 +21,23 @@ public class PacketPackage {
     private final boolean response;
     private final HeaderWrapper.Header header;
     private final Message message;
+    private final byte[] payload; // Already serialized payload, null when sending a message.
     private final UUID requestId;
+    private final Priority priority;
 
-    private PacketPackage(boolean response, @NotNull HeaderWrapper.Header header, @NotNull Message message, @NotNull UUID requestId) {
+    private PacketPackage(boolean response, @NotNull HeaderWrapper.Header header, Message message, byte[] payload,
+                          @NotNull UUID requestId, @NotNull Priority priority) {
         Preconditions.checkNotNull(header);
-        Preconditions.checkNotNull(message);
+        Preconditions.checkArgument(message != null || payload != null, "Missing payload!");
         Preconditions.checkNotNull(requestId);
+        Preconditions.checkNotNull(priority);
 
         this.response = response;
         this.header = header;
         this.message = message;
+        this.payload = payload;
         this.requestId = requestId;
+        this.priority = priority;
     }
 
     public boolean response() {
@@ -41,41 +48,57 @@ public class PacketPackage {
         return this.header;
     }
 
-    public Message message() {
-        return this.message;
+    /**
+     * Serializes the payload, already serialized payloads are returned as is.
+     */
+    public byte[] payload() {
+        return this.payload != null ? this.payload : this.message.toByteArray();
     }
 
     public UUID requestId() {
         return this.requestId;
     }
 
+    public Priority priority() {
+        return this.priority;
+    }
+
     public PacketBase asPacket(ConnectionImpl source) {
-        return new PacketBase(new Header(this.header, this.response), source, this.message.toByteArray());
+        return new PacketBase(new Header(this.header, this.response), source, this.payload());
     }
 
-    public static PacketPackage createRequestPackage(long timeout, RegistryKey key, Message payload) {
-        UUID requestId = UUID.randomUUID();
+    public static PacketPackage createRequestPackage(long timeout, RegistryKey key, Message payload, Priority priority) {
+        return createRequestPackage(UUID.randomUUID(), timeout, key, payload, priority);
+    }
 
+    public static PacketPackage createRequestPackage(UUID requestId, long timeout, RegistryKey key, Message payload, Priority priority) {
         HeaderWrapper.Header header = HeaderWrapper.Header.newBuilder()
                 .setIdLeastSig(requestId.getLeastSignificantBits())
                 .setIdMostSig(requestId.getMostSignificantBits())
                 .setTime(System.currentTimeMillis())
                 .setTimeout(timeout)
                 .setRequest(key.toString())
+                .setPriority(priority.ordinal())
                 .build();
 
-        return new PacketPackage(false, header, payload, requestId);
+        return new PacketPackage(false, header, payload, null, requestId, priority);
     }
 
-    public static PacketPackage createResponsePackage(UUID requestId, short code, Message payload) {
-        HeaderWrapper.Header header = HeaderWrapper.Header.newBuilder()
+    public static PacketPackage createResponsePackage(UUID requestId, short code, Message payload, Priority priority) {
+        return new PacketPackage(true, createResponseHeader(requestId, code), payload, null, requestId, priority);
+    }
+
+    public static PacketPackage createResponsePackage(UUID requestId, short code, byte[] payload, Priority priority) {
+        return new PacketPackage(true, createResponseHeader(requestId, code), null, payload, requestId, priority);
+    }
+
+    private static HeaderWrapper.Header createResponseHeader(UUID requestId, short code) {
+        return HeaderWrapper.Header.newBuilder()
                 .setIdLeastSig(requestId.getLeastSignificantBits())
                 .setIdMostSig(requestId.getMostSignificantBits())
                 .setTime(System.currentTimeMillis())
                 .setCode(code)
-                .build();
-
-        return new PacketPackage(true, header, payload, requestId);
+                .build(); // Responses don't carry a priority, they are sent back with the priority of the request.
     }
 
     @Override
@@ -83,8 +106,9 @@ public class PacketPackage {
         return "PacketPackage{" +
                 "response=" + this.response +
                 ", header=" + this.header +
-                ", message=" + this.message +
+                ", message=" + (this.message != null ? this.message : this.payload.length + " bytes") +
                 ", requestId=" + this.requestId +
+                ", priority=" + this.priority +
                 '}';
     }
 }
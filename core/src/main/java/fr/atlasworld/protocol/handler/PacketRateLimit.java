@@ -0,0 +1,10 @@
+package fr.atlasworld.protocol.handler;
+
+/**
+ * Inbound rate limit of a packet type, all per second.
+ *
+ * @param requests requests of the packet type.
+ * @param bytes payload bytes of the packet type, {@code 0} if unlimited.
+ */
+public record PacketRateLimit(int requests, int bytes) {
+}
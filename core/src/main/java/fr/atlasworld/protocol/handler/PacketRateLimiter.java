@@ -0,0 +1,19 @@
+package fr.atlasworld.protocol.handler;
+
+// Buckets of a packet type for a single channel, only used from its event loop.
+final class PacketRateLimiter {
+    private final TokenBucket requests;
+    private final TokenBucket bytes;
+
+    PacketRateLimiter(PacketRateLimit limit, long now) {
+        this.requests = new TokenBucket(limit.requests(), limit.requests(), now);
+        this.bytes = limit.bytes() > 0 ? new TokenBucket(limit.bytes(), limit.bytes(), now) : null;
+    }
+
+    boolean tryAcquire(int size, long now) {
+        if (!this.requests.tryAcquire(1, now))
+            return false;
+
+        return this.bytes == null || this.bytes.tryAcquire(size, now);
+    }
+}
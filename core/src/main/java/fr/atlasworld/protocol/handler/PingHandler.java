@@ -0,0 +1,149 @@
+package fr.atlasworld.protocol.handler;
+
+import fr.atlasworld.protocol.ApiBridge;
+import fr.atlasworld.protocol.connection.ConnectionImpl;
+import fr.atlasworld.protocol.exception.NetworkException;
+import fr.atlasworld.protocol.exception.request.PacketInvalidException;
+import fr.atlasworld.protocol.handler.event.HandshakeFinishedEvent;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends keep-alive pings once the handshake is finished and answers the pings of the remote.
+ * <p>
+ * A ping carries the {@link System#nanoTime()} of its sender, which the remote echoes back untouched,
+ * so the round-trip time only ever depends on the local clock.
+ * Ping frames bypass the {@link StreamHandler} queues, bulk transfers do not inflate the measure.
+ * <p>
+ * Also reacts to the {@link IdleStateHandler} placed before it:
+ * a heartbeat ping is sent when nothing was written for a while,
+ * and the connection is evicted when nothing was received for a while.
+ */
+public class PingHandler extends ChannelInboundHandlerAdapter {
+    private static final int FRAME_SIZE = Byte.BYTES + Long.BYTES;
+
+    private final long interval;
+
+    // Only accessed from the channel's event loop.
+    private ConnectionImpl connection;
+    private ScheduledFuture<?> pingFuture;
+    private boolean awaitingPong;
+    private long pendingPing;
+
+    public PingHandler(long interval) {
+        this.interval = interval;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof ByteBuf buffer) || !buffer.isReadable()) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        byte frameType = buffer.getByte(buffer.readerIndex());
+        if (frameType != StreamHandler.FRAME_PING && frameType != StreamHandler.FRAME_PONG) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        if (buffer.readableBytes() != FRAME_SIZE) {
+            ReferenceCountUtil.release(msg);
+            throw new PacketInvalidException("Invalid ping frame size!", NetworkException.UNDEFINED_COMMUNICATION_IDENTIFIER);
+        }
+
+        buffer.skipBytes(Byte.BYTES);
+        long time = buffer.readLong();
+        buffer.release();
+
+        if (frameType == StreamHandler.FRAME_PING) {
+            this.writeFrame(ctx, StreamHandler.FRAME_PONG, time); // Echo the remote time as is.
+            return;
+        }
+
+        if (!this.awaitingPong || time != this.pendingPing || this.connection == null)
+            return; // Late or forged pong, a newer ping has been sent since.
+
+        this.awaitingPong = false;
+        this.connection.roundTripEstimator().sample(System.nanoTime() - time);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object event) throws Exception {
+        if (event instanceof IdleStateEvent idleEvent) {
+            this.handleIdle(ctx, idleEvent);
+            return; // Consumed
+        }
+
+        if (event instanceof HandshakeFinishedEvent(ConnectionImpl eventConnection)) {
+            this.connection = eventConnection;
+
+            if (this.interval > 0) {
+                this.ping(ctx); // Measure right away, the first samples matter the most for load balancing.
+                this.pingFuture = ctx.executor().scheduleAtFixedRate(() -> this.ping(ctx),
+                        this.interval, this.interval, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        super.userEventTriggered(ctx, event); // Pass event to next handler
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        this.cancelPings();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        this.cancelPings();
+    }
+
+    private void handleIdle(ChannelHandlerContext ctx, IdleStateEvent event) {
+        if (this.connection == null)
+            return; // Still in handshake, covered by the handshake timeout.
+
+        if (event.state() == IdleState.WRITER_IDLE) {
+            this.ping(ctx); // Heartbeat, lets the remote know we are alive.
+            return;
+        }
+
+        if (event.state() == IdleState.READER_IDLE) {
+            ApiBridge.LOGGER.debug("Evicting unresponsive connection '{}'.", ctx.channel().remoteAddress());
+            this.connection.evict("Remote stopped responding!");
+        }
+    }
+
+    private void ping(ChannelHandlerContext ctx) {
+        if (!ctx.channel().isActive())
+            return;
+
+        this.pendingPing = System.nanoTime();
+        this.awaitingPong = true;
+        this.writeFrame(ctx, StreamHandler.FRAME_PING, this.pendingPing);
+    }
+
+    private void writeFrame(ChannelHandlerContext ctx, byte frameType, long time) {
+        ByteBuf frame = ctx.alloc().buffer(FRAME_SIZE);
+        frame.writeByte(frameType);
+        frame.writeLong(time);
+
+        ctx.writeAndFlush(frame, ctx.voidPromise());
+    }
+
+    private void cancelPings() {
+        if (this.pingFuture == null)
+            return;
+
+        this.pingFuture.cancel(false);
+        this.pingFuture = null;
+    }
+}
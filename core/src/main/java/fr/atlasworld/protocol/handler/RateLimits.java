@@ -0,0 +1,22 @@
+package fr.atlasworld.protocol.handler;
+
+/**
+ * Inbound rate limits of a single connection, all per second.
+ *
+ * @param handshakeFrames frames received before the handshake completes.
+ * @param packets packets received once the handshake completed.
+ * @param bytes bytes received, {@code 0} if unlimited.
+ */
+public record RateLimits(int handshakeFrames, int packets, int bytes) {
+    public TokenBucket handshakeBucket(long now) {
+        return new TokenBucket(this.handshakeFrames, this.handshakeFrames, now);
+    }
+
+    public TokenBucket packetBucket(long now) {
+        return new TokenBucket(this.packets, this.packets, now);
+    }
+
+    public TokenBucket byteBucket(long now) {
+        return this.bytes > 0 ? new TokenBucket(this.bytes, this.bytes, now) : null;
+    }
+}
@@ -0,0 +1,205 @@
+package fr.atlasworld.protocol.handler;
+
+import com.google.protobuf.Message;
+import fr.atlasworld.protocol.packet.ResponderImpl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Bounded cache of the recent responses of a server, keyed by client and request identifier.
+ * <p>
+ * Replayed and hedged requests keep the identifier of the original request,
+ * duplicates are answered with the response of the first request instead of being handled again.
+ * Duplicates received while the first request is still being handled are answered once it responds.
+ * Entries expire after the configured lifetime, the oldest entries are evicted first once the cache is full.
+ * Duplicates waiting on an evicted entry are released without a response, like when the first request fails.
+ */
+public final class RequestDeduplicator {
+    private final long lifetime;
+    private final int maxEntries;
+
+    // Guarded by 'this'
+    private final LinkedHashMap<Key, Entry> entries;
+    private final List<Entry> evicted; // Evicted while their request was still handled, released outside the lock.
+
+    public RequestDeduplicator(long lifetime, int maxEntries) {
+        this.lifetime = lifetime;
+        this.maxEntries = maxEntries;
+
+        this.entries = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (this.size() <= RequestDeduplicator.this.maxEntries)
+                    return false;
+
+                RequestDeduplicator.this.evicted(eldest.getValue());
+                return true;
+            }
+        };
+        this.evicted = new ArrayList<>();
+    }
+
+    /**
+     * Registers a received request.
+     *
+     * @param client identifier of the client which sent the request.
+     * @param request identifier of the request.
+     *
+     * @return entry of the first request with this identifier, or null if the request was not seen recently and must be handled.
+     */
+    public Entry register(UUID client, UUID request) {
+        Key key = new Key(client, request);
+        long now = System.currentTimeMillis();
+
+        Entry entry;
+        List<Entry> evicted;
+        synchronized (this) {
+            this.purge(now);
+
+            entry = this.entries.get(key);
+            if (entry == null)
+                this.entries.put(key, new Entry(key, now + this.lifetime));
+
+            evicted = List.copyOf(this.evicted);
+            this.evicted.clear();
+        }
+
+        for (Entry evictedEntry : evicted) {
+            evictedEntry.release();
+        }
+
+        return entry;
+    }
+
+    /**
+     * Retrieve the entry of a request being handled.
+     *
+     * @return entry of the request, or null if it was already evicted.
+     */
+    public synchronized Entry entry(UUID client, UUID request) {
+        return this.entries.get(new Key(client, request));
+    }
+
+    /**
+     * Forgets a request whose handling failed, so its duplicates are handled again.
+     * <p>
+     * Duplicates waiting on the failed request are released without a response,
+     * the client times them out and may retry.
+     */
+    public void failed(UUID client, UUID request) {
+        Entry entry;
+        synchronized (this) {
+            entry = this.entries.get(new Key(client, request));
+            if (entry == null || entry.responded())
+                return;
+
+            this.entries.remove(entry.key);
+        }
+
+        entry.release();
+    }
+
+    private void purge(long now) {
+        Iterator<Entry> iterator = this.entries.values().iterator(); // Insertion order is also the expiration order.
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.expiresAt > now)
+                return;
+
+            this.evicted(entry);
+            iterator.remove();
+        }
+    }
+
+    private void evicted(Entry entry) {
+        if (!entry.responded()) // Duplicates waiting on it would never be answered.
+            this.evicted.add(entry);
+    }
+
+    private record Key(UUID client, UUID request) {
+    }
+
+    public static final class Entry {
+        private final Key key;
+        private final long expiresAt;
+
+        // Guarded by 'this'
+        private Message response;
+        private short code;
+        private List<ResponderImpl> waiting;
+
+        private Entry(Key key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+            this.waiting = new ArrayList<>();
+        }
+
+        /**
+         * Answers a duplicate with the response of the first request, or once the first request responds.
+         */
+        public void answer(ResponderImpl duplicate) {
+            Message response;
+            short code;
+            synchronized (this) {
+                if (this.response == null) {
+                    if (this.waiting != null)
+                        this.waiting.add(duplicate);
+                    else
+                        duplicate.release(); // First request failed.
+
+                    return;
+                }
+
+                response = this.response;
+                code = this.code;
+            }
+
+            duplicate.respond(response, code);
+        }
+
+        /**
+         * Records the response of the first request, and answers the waiting duplicates.
+         */
+        public void complete(Message response, short code) {
+            List<ResponderImpl> waiting;
+            synchronized (this) {
+                if (this.response != null || this.waiting == null)
+                    return;
+
+                this.response = response;
+                this.code = code;
+
+                waiting = this.waiting;
+                this.waiting = null;
+            }
+
+            for (ResponderImpl duplicate : waiting) {
+                duplicate.respond(response, code);
+            }
+        }
+
+        private synchronized boolean responded() {
+            return this.response != null;
+        }
+
+        private void release() {
+            List<ResponderImpl> waiting;
+            synchronized (this) {
+                waiting = this.waiting;
+                this.waiting = null;
+            }
+
+            if (waiting == null)
+                return;
+
+            for (ResponderImpl duplicate : waiting) {
+                duplicate.release();
+            }
+        }
+    }
+}
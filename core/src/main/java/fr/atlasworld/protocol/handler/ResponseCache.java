@@ -0,0 +1,271 @@
+package fr.atlasworld.protocol.handler;
+
+import fr.atlasworld.registry.RegistryKey;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Cache of the responses of a read-only packet type, keyed by request payload,
+ * and by client if the responses depend on the client which sent the request.
+ * <p>
+ * Eviction follows W-TinyLFU: new responses enter a small LRU window, responses leaving the window
+ * only replace the least recently used response of the main space if they were requested more often recently,
+ * as estimated by a {@link FrequencySketch}. Responses requested again in the main space are protected from eviction
+ * until they become the least recently used of the protected space.
+ * So bursts of one-off requests can't flush popular responses out of the cache.
+ */
+public final class ResponseCache {
+    private static final double WINDOW_RATIO = 0.01;
+    private static final double PROTECTED_RATIO = 0.8; // Of the main space.
+
+    private final long lifetime;
+    private final boolean perClient;
+    private final int windowSize;
+    private final int mainSize;
+    private final int protectedSize;
+
+    // Guarded by 'this', all in access order.
+    private final FrequencySketch sketch;
+    private final LinkedHashMap<PayloadKey, Entry> window;
+    private final LinkedHashMap<PayloadKey, Entry> probation;
+    private final LinkedHashMap<PayloadKey, Entry> protectedEntries;
+
+    public ResponseCache(Policy policy) {
+        this.lifetime = policy.lifetime();
+        this.perClient = policy.perClient();
+        this.windowSize = Math.max(1, (int) (policy.maxEntries() * WINDOW_RATIO));
+        this.mainSize = policy.maxEntries() - this.windowSize;
+        this.protectedSize = (int) (this.mainSize * PROTECTED_RATIO);
+
+        this.sketch = new FrequencySketch(policy.maxEntries());
+        this.window = new LinkedHashMap<>(16, 0.75f, true);
+        this.probation = new LinkedHashMap<>(16, 0.75f, true);
+        this.protectedEntries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Retrieve the cached response of a request.
+     *
+     * @param payload serialized payload of the request.
+     *
+     * @return cached response, or null if none or if it expired.
+     */
+    @Nullable
+    public CachedResponse get(byte[] payload) {
+        return this.get(null, payload);
+    }
+
+    /**
+     * Retrieve the cached response of a request.
+     *
+     * @param client identifier of the client which sent the request, ignored unless responses are cached per client.
+     * @param payload serialized payload of the request.
+     *
+     * @return cached response, or null if none or if it expired.
+     */
+    @Nullable
+    public synchronized CachedResponse get(@Nullable UUID client, byte[] payload) {
+        PayloadKey key = this.key(client, payload);
+        this.sketch.increment(key.hashCode());
+
+        Entry entry = this.window.get(key);
+        if (entry == null)
+            entry = this.protectedEntries.get(key);
+
+        if (entry == null) {
+            entry = this.probation.remove(key);
+            if (entry != null)
+                this.protect(key, entry);
+        }
+
+        if (entry == null)
+            return null;
+
+        if (entry.expiresAt() <= System.currentTimeMillis()) {
+            this.remove(key);
+            return null;
+        }
+
+        return entry.response();
+    }
+
+    /**
+     * Caches the response of a request.
+     *
+     * @param payload serialized payload of the request.
+     * @param response response to cache.
+     */
+    public void put(byte[] payload, CachedResponse response) {
+        this.put(null, payload, response);
+    }
+
+    /**
+     * Caches the response of a request.
+     *
+     * @param client identifier of the client which sent the request, ignored unless responses are cached per client.
+     * @param payload serialized payload of the request.
+     * @param response response to cache.
+     */
+    public synchronized void put(@Nullable UUID client, byte[] payload, CachedResponse response) {
+        PayloadKey key = this.key(client, payload);
+        Entry entry = new Entry(response, System.currentTimeMillis() + this.lifetime);
+
+        if (this.window.containsKey(key)) {
+            this.window.put(key, entry);
+            return;
+        }
+
+        if (this.protectedEntries.containsKey(key)) {
+            this.protectedEntries.put(key, entry);
+            return;
+        }
+
+        if (this.probation.containsKey(key)) {
+            this.probation.put(key, entry);
+            return;
+        }
+
+        this.window.put(key, entry);
+        if (this.window.size() > this.windowSize)
+            this.admit(this.removeEldest(this.window));
+    }
+
+    /**
+     * Invalidates the cached responses of a request payload, for every client.
+     */
+    public synchronized void invalidate(byte[] payload) {
+        if (!this.perClient) {
+            this.remove(new PayloadKey(null, payload));
+            return;
+        }
+
+        this.window.keySet().removeIf(key -> Arrays.equals(key.payload, payload));
+        this.probation.keySet().removeIf(key -> Arrays.equals(key.payload, payload));
+        this.protectedEntries.keySet().removeIf(key -> Arrays.equals(key.payload, payload));
+    }
+
+    public synchronized void invalidateAll() {
+        this.window.clear();
+        this.probation.clear();
+        this.protectedEntries.clear();
+    }
+
+    private PayloadKey key(@Nullable UUID client, byte[] payload) {
+        return new PayloadKey(this.perClient ? client : null, payload);
+    }
+
+    private void admit(Map.Entry<PayloadKey, Entry> candidate) {
+        if (this.mainSize <= 0)
+            return;
+
+        if (this.probation.size() + this.protectedEntries.size() < this.mainSize) {
+            this.probation.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+
+        LinkedHashMap<PayloadKey, Entry> victims = this.probation.isEmpty() ? this.protectedEntries : this.probation;
+        PayloadKey victim = victims.keySet().iterator().next();
+
+        if (this.sketch.frequency(candidate.getKey().hashCode()) <= this.sketch.frequency(victim.hashCode()))
+            return; // Less popular than what it would replace.
+
+        victims.remove(victim);
+        this.probation.put(candidate.getKey(), candidate.getValue());
+    }
+
+    private void protect(PayloadKey key, Entry entry) {
+        this.protectedEntries.put(key, entry);
+        if (this.protectedEntries.size() <= this.protectedSize)
+            return;
+
+        Map.Entry<PayloadKey, Entry> demoted = this.removeEldest(this.protectedEntries);
+        this.probation.put(demoted.getKey(), demoted.getValue());
+    }
+
+    private void remove(PayloadKey key) {
+        if (this.window.remove(key) == null && this.probation.remove(key) == null)
+            this.protectedEntries.remove(key);
+    }
+
+    private Map.Entry<PayloadKey, Entry> removeEldest(LinkedHashMap<PayloadKey, Entry> segment) {
+        Iterator<Map.Entry<PayloadKey, Entry>> iterator = segment.entrySet().iterator();
+        Map.Entry<PayloadKey, Entry> eldest = iterator.next();
+        Map.Entry<PayloadKey, Entry> removed = Map.entry(eldest.getKey(), eldest.getValue());
+        iterator.remove();
+
+        return removed;
+    }
+
+    /**
+     * Creates the response caches of the packet types.
+     *
+     * @param policies cache configuration per packet type.
+     *
+     * @return caches per packet type.
+     */
+    public static Map<RegistryKey, ResponseCache> create(Map<RegistryKey, Policy> policies) {
+        Map<RegistryKey, ResponseCache> caches = new HashMap<>();
+        policies.forEach((key, policy) -> caches.put(key, new ResponseCache(policy)));
+
+        return Map.copyOf(caches);
+    }
+
+    /**
+     * Checks whether a response with this code may be cached, only success responses are.
+     */
+    public static boolean cacheable(short code) {
+        return code >= 100 && code < 200;
+    }
+
+    /**
+     * Response cache configuration of a packet type.
+     *
+     * @param lifetime time in milliseconds during which a response is kept.
+     * @param maxEntries maximum amount of kept responses.
+     * @param perClient whether responses are only reused for the client which sent the request.
+     */
+    public record Policy(long lifetime, int maxEntries, boolean perClient) {
+    }
+
+    /**
+     * Serialized response, shared between the requests with the same payload.
+     *
+     * @param code response code.
+     * @param payload serialized payload of the response, must not be modified.
+     */
+    public record CachedResponse(short code, byte[] payload) {
+    }
+
+    private record Entry(CachedResponse response, long expiresAt) {
+    }
+
+    private static final class PayloadKey {
+        private final UUID client; // Null when shared between clients.
+        private final byte[] payload;
+        private final int hash;
+
+        private PayloadKey(@Nullable UUID client, byte[] payload) {
+            this.client = client;
+            this.payload = payload;
+            this.hash = 31 * Arrays.hashCode(payload) + (client == null ? 0 : client.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof PayloadKey other && this.hash == other.hash && Objects.equals(this.client, other.client)
+                    && Arrays.equals(this.payload, other.payload);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
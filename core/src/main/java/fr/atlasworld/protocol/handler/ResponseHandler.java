@@ -2,6 +2,7 @@ package fr.atlasworld.protocol.handler;
 
 import com.google.common.base.Preconditions;
 import fr.atlasworld.protocol.packet.Response;
+import fr.atlasworld.registry.RegistryKey;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.UUID;
@@ -11,6 +12,8 @@ import java.util.concurrent.TimeoutException;
 public class ResponseHandler {
     private final CompletableFuture<Response> future;
     private final UUID identifier;
+    private final RegistryKey request;
+    private final long sentAt;
 
     private volatile boolean acknowledged;
     private volatile boolean completed;
@@ -23,12 +26,26 @@ public class ResponseHandler {
         return this.acknowledged;
     }
 
-    public ResponseHandler(@NotNull CompletableFuture<Response> future, @NotNull UUID identifier) {
+    public RegistryKey request() {
+        return this.request;
+    }
+
+    /**
+     * {@link System#nanoTime()} at which the request was written to the network.
+     */
+    public long sentAt() {
+        return this.sentAt;
+    }
+
+    public ResponseHandler(@NotNull CompletableFuture<Response> future, @NotNull UUID identifier, @NotNull RegistryKey request, long sentAt) {
         Preconditions.checkNotNull(future);
         Preconditions.checkNotNull(identifier);
+        Preconditions.checkNotNull(request);
 
         this.future = future;
         this.identifier = identifier;
+        this.request = request;
+        this.sentAt = sentAt;
 
         this.acknowledged = false;
         this.completed = false;
@@ -71,6 +88,16 @@ public class ResponseHandler {
 
     }
 
+    /**
+     * Fails the request, used when the connection is terminated before a response was received.
+     */
+    public void fail(Throwable cause) {
+        this.completed = true;
+
+        if (!this.future.isDone())
+            this.future.completeExceptionally(cause);
+    }
+
     public void respond(Response response) {
         if (this.completed)
             throw new IllegalStateException("Handler was already responded to!");
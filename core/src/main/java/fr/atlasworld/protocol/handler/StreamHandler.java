@@ -0,0 +1,243 @@
+package fr.atlasworld.protocol.handler;
+
+import fr.atlasworld.protocol.exception.NetworkException;
+import fr.atlasworld.protocol.exception.request.PacketInvalidException;
+import fr.atlasworld.protocol.exception.request.PacketToBigException;
+import fr.atlasworld.protocol.packet.Priority;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+
+/**
+ * Schedules outgoing packets per {@link Priority} class and splits large packets into chunks,
+ * so bulk transfers are interleaved with smaller packets instead of blocking them.
+ * <p>
+ * Packets are held back while the channel is not writable,
+ * this keeps the Netty outbound buffer short and lets higher priority packets jump ahead.
+ */
+public class StreamHandler extends ChannelDuplexHandler {
+    public static final int CHUNK_SIZE = 16384;
+    public static final int MAX_PENDING_STREAMS = 16;
+
+    public static final byte FRAME_COMPLETE = 0;
+    public static final byte FRAME_CHUNK = 1;
+    public static final byte FRAME_LAST_CHUNK = 2;
+    public static final byte FRAME_PING = 3; // Handled by the PingHandler
+    public static final byte FRAME_PONG = 4;
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    // Only accessed from the channel's event loop.
+    private final ArrayDeque<PendingStream>[] queues;
+    private final IntObjectMap<CompositeByteBuf> incomingStreams;
+
+    private volatile int pendingStreams; // Written from the event loop only, volatile so metrics can read it.
+    private int nextStreamId;
+
+    @SuppressWarnings("unchecked")
+    public StreamHandler() {
+        this.queues = new ArrayDeque[PRIORITIES.length];
+        for (int i = 0; i < this.queues.length; i++) {
+            this.queues[i] = new ArrayDeque<>();
+        }
+
+        this.incomingStreams = new IntObjectHashMap<>();
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!ctx.channel().isActive()) {
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+
+        if (!(msg instanceof EncodedPacket packet)) {
+            ReferenceCountUtil.release(msg);
+            throw new IllegalArgumentException("Unexpected Packet Type!");
+        }
+
+        this.queues[packet.priority().ordinal()].add(new PendingStream(packet.buffer(), promise));
+        this.pendingStreams++;
+    }
+
+    /**
+     * Amount of packets waiting to be written, may be read from any thread.
+     */
+    public int pendingPackets() {
+        return this.pendingStreams;
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        this.drain(ctx);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable())
+            this.drain(ctx);
+
+        super.channelWritabilityChanged(ctx);
+    }
+
+    private void drain(ChannelHandlerContext ctx) {
+        boolean written = false;
+
+        // Weighted round-robin, each priority class may send up to 'weight' chunks per round.
+        while (this.pendingStreams > 0 && ctx.channel().isWritable()) {
+            for (Priority priority : PRIORITIES) {
+                ArrayDeque<PendingStream> queue = this.queues[priority.ordinal()];
+
+                for (int i = 0; i < priority.weight() && !queue.isEmpty(); i++) {
+                    PendingStream stream = queue.peek();
+                    this.writeChunk(ctx, stream);
+                    written = true;
+
+                    if (!stream.buffer.isReadable()) {
+                        queue.poll();
+                        this.pendingStreams--;
+                        stream.buffer.release();
+                    }
+                }
+            }
+        }
+
+        if (written)
+            ctx.flush();
+    }
+
+    private void writeChunk(ChannelHandlerContext ctx, PendingStream stream) {
+        ByteBuf buffer = stream.buffer;
+
+        if (stream.streamId == -1 && buffer.readableBytes() <= CHUNK_SIZE) { // Fits in a single frame.
+            ByteBuf frame = ctx.alloc().buffer(Byte.BYTES + buffer.readableBytes());
+            frame.writeByte(FRAME_COMPLETE);
+            frame.writeBytes(buffer);
+
+            ctx.write(frame, stream.promise);
+            return;
+        }
+
+        if (stream.streamId == -1)
+            stream.streamId = this.nextStreamId++ & Integer.MAX_VALUE;
+
+        int length = Math.min(CHUNK_SIZE, buffer.readableBytes());
+        boolean last = length == buffer.readableBytes();
+
+        ByteBuf frame = ctx.alloc().buffer(Byte.BYTES + Integer.BYTES + length);
+        frame.writeByte(last ? FRAME_LAST_CHUNK : FRAME_CHUNK);
+        frame.writeInt(stream.streamId);
+        frame.writeBytes(buffer, length);
+
+        ctx.write(frame, last ? stream.promise : ctx.voidPromise());
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!ctx.channel().isActive()) {
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+
+        if (!(msg instanceof ByteBuf buffer)) {
+            ReferenceCountUtil.release(msg);
+            throw new IllegalArgumentException("Unexpected Packet Type!");
+        }
+
+        byte frameType = buffer.readByte();
+        if (frameType == FRAME_COMPLETE) {
+            ctx.fireChannelRead(buffer);
+            return;
+        }
+
+        if (frameType != FRAME_CHUNK && frameType != FRAME_LAST_CHUNK) {
+            buffer.release();
+            throw new PacketInvalidException("Unknown frame type: " + frameType,
+                    NetworkException.UNDEFINED_COMMUNICATION_IDENTIFIER);
+        }
+
+        int streamId = buffer.readInt();
+        CompositeByteBuf stream = this.incomingStreams.get(streamId);
+
+        if (stream == null) {
+            if (this.incomingStreams.size() >= MAX_PENDING_STREAMS) {
+                buffer.release();
+                throw new PacketInvalidException("Too many interleaved streams!",
+                        NetworkException.UNDEFINED_COMMUNICATION_IDENTIFIER);
+            }
+
+            stream = ctx.alloc().compositeBuffer();
+            this.incomingStreams.put(streamId, stream);
+        }
+
+        if (stream.readableBytes() + buffer.readableBytes() > CodecHandler.MAX_PACKET_SIZE) {
+            this.incomingStreams.remove(streamId);
+            stream.release();
+            buffer.release();
+
+            throw new PacketToBigException("Packet exceeds maximum packet size (" + CodecHandler.MAX_PACKET_SIZE + " bytes)",
+                    NetworkException.UNDEFINED_COMMUNICATION_IDENTIFIER);
+        }
+
+        stream.addComponent(true, buffer);
+
+        if (frameType == FRAME_LAST_CHUNK) {
+            this.incomingStreams.remove(streamId);
+            ctx.fireChannelRead(stream);
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        this.releaseAll();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        this.releaseAll();
+    }
+
+    private void releaseAll() {
+        ClosedChannelException cause = null;
+
+        for (ArrayDeque<PendingStream> queue : this.queues) {
+            PendingStream stream;
+            while ((stream = queue.poll()) != null) {
+                if (cause == null)
+                    cause = new ClosedChannelException();
+
+                stream.buffer.release();
+                stream.promise.tryFailure(cause);
+            }
+        }
+
+        this.pendingStreams = 0;
+
+        for (CompositeByteBuf stream : this.incomingStreams.values()) {
+            stream.release();
+        }
+
+        this.incomingStreams.clear();
+    }
+
+    private static final class PendingStream {
+        private final ByteBuf buffer;
+        private final ChannelPromise promise;
+        private int streamId;
+
+        private PendingStream(ByteBuf buffer, ChannelPromise promise) {
+            this.buffer = buffer;
+            this.promise = promise;
+            this.streamId = -1;
+        }
+    }
+}
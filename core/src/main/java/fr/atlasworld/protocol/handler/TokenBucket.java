@@ -0,0 +1,59 @@
+package fr.atlasworld.protocol.handler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket refilled continuously at a fixed rate.
+ * <p>
+ * Not thread-safe, a bucket belongs to a single channel and is only used from its event loop.
+ * The caller provides the time, so a single clock read can be shared by all the buckets checked for a frame.
+ */
+public final class TokenBucket {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // Tokens are scaled by NANOS_PER_SECOND, so refilling stays exact integer arithmetic.
+    private final long rate;
+    private final long capacity;
+    private final long maxRefillNanos;
+
+    private long balance;
+    private long lastRefill;
+
+    /**
+     * @param rate tokens added per second.
+     * @param burst maximum amount of tokens the bucket can hold.
+     * @param now current time in nanoseconds.
+     */
+    public TokenBucket(long rate, long burst, long now) {
+        this.rate = rate;
+        this.capacity = burst * NANOS_PER_SECOND;
+        this.maxRefillNanos = this.capacity / rate + 1;
+
+        this.balance = this.capacity;
+        this.lastRefill = now;
+    }
+
+    /**
+     * Tries to take tokens from the bucket.
+     * Requests larger than the bucket are allowed when it is full, and empty it.
+     *
+     * @param tokens amount of tokens to take.
+     * @param now current time in nanoseconds.
+     *
+     * @return true if the tokens were taken, false if the bucket doesn't have enough tokens.
+     */
+    public boolean tryAcquire(long tokens, long now) {
+        long elapsed = Math.min(now - this.lastRefill, this.maxRefillNanos); // Prevents overflows after long idle periods.
+        if (elapsed > 0) {
+            this.balance = Math.min(this.capacity, this.balance + elapsed * this.rate);
+            this.lastRefill = now;
+        }
+
+        long cost = Math.min(tokens * NANOS_PER_SECOND, this.capacity);
+        if (this.balance < cost)
+            return false;
+
+        this.balance -= cost;
+        return true;
+    }
+}
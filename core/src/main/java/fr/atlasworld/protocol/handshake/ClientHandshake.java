@@ -2,49 +2,61 @@ package fr.atlasworld.protocol.handshake;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
-import fr.atlasworld.common.security.Encryptor;
-import fr.atlasworld.common.security.encryptor.SecretKeyEncryptor;
 import fr.atlasworld.protocol.AtlasProtocol;
 import fr.atlasworld.protocol.ServerInfoImpl;
+import fr.atlasworld.protocol.connection.Compression;
 import fr.atlasworld.protocol.connection.ConnectionImpl;
 import fr.atlasworld.protocol.exception.NetworkException;
 import fr.atlasworld.protocol.exception.NetworkIncompatibleException;
 import fr.atlasworld.protocol.exception.request.NetworkDeSyncException;
 import fr.atlasworld.protocol.exception.request.UnauthorizedRequestException;
 import fr.atlasworld.protocol.generated.HandshakeWrapper;
+import fr.atlasworld.protocol.handler.DictionaryCompressor;
 import fr.atlasworld.protocol.handler.HandshakeHandler;
 import fr.atlasworld.protocol.handler.event.HandshakeFinishedEvent;
+import fr.atlasworld.protocol.security.HandshakeSuite;
 import fr.atlasworld.protocol.socket.ClientSocketImpl;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 
 import javax.crypto.Cipher;
-import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import javax.security.auth.DestroyFailedException;
 import java.security.*;
 import java.security.spec.InvalidKeySpecException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
 
 public final class ClientHandshake implements Handshake {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
     private int state;
 
     private final ClientSocketImpl socket;
-    private final KeyFactory factory;
 
     private ConnectionImpl connection;
 
     private PublicKey serverKey;
     private SecretKey secretKey;
 
-    private Encryptor encryptor;
-    private Mac signer;
+    private SessionCipher session;
+
+    // X25519 suite
+    private HandshakeSuite suite;
+    private KeyPair exchangeKeys;
+    private byte[] serverExchangeKey;
+
+    // Session resumption
+    private SessionTicket resumingTicket;
+    private byte[] clientNonce;
+    private byte[] serverNonce;
 
-    public ClientHandshake(ClientSocketImpl socket, KeyFactory factory) {
+    public ClientHandshake(ClientSocketImpl socket) {
         this.state = 0;
 
         this.socket = socket;
-        this.factory = factory;
     }
 
     @Override
@@ -54,7 +66,7 @@ public final class ClientHandshake implements Handshake {
 
     @Override
     public void initialize(ChannelHandlerContext ctx) throws NetworkException {
-        this.connection = this.socket.connection();
+        this.connection = this.socket.connection(ctx.channel());
     }
 
     public void handle(ByteBuf packet, ChannelHandlerContext ctx) throws NetworkException {
@@ -76,17 +88,17 @@ public final class ClientHandshake implements Handshake {
     }
 
     @Override
-    public Encryptor encryptor()  {
-        return this.encryptor;
+    public SessionCipher session() {
+        return this.session;
     }
 
     @Override
-    public Mac signer() {
-        return this.signer;
+    public ConnectionImpl connection() {
+        return this.connection;
     }
 
     // State 0
-    private void initialize(ByteBuf packet, ChannelHandlerContext ctx) throws InvalidProtocolBufferException, NetworkException {
+    private void initialize(ByteBuf packet, ChannelHandlerContext ctx) throws InvalidProtocolBufferException, NetworkException, GeneralSecurityException {
         this.state++;
 
         byte[] rawData = new byte[packet.readableBytes()];
@@ -98,8 +110,15 @@ public final class ClientHandshake implements Handshake {
             throw new NetworkIncompatibleException("Protocol version does not match: " +
                     "[current: " + AtlasProtocol.PROTOCOL_VERSION + "; remote: " + serverInfo.getVersion() + "]");
 
+        this.suite = this.resolveSuite(serverInfo.getSuite());
+
+        KeyPair identityKeys = this.socket.sessionKeyPair();
+        if (!this.connection.usesCustomAuth() && !HandshakeHandler.supportsKey(this.suite, identityKeys.getPrivate()))
+            throw new NetworkIncompatibleException("Client keys are not supported by the server's handshake suite: " + this.suite);
+
         try {
-            ServerInfoImpl info = new ServerInfoImpl(serverInfo, this.factory);
+            ServerInfoImpl info = new ServerInfoImpl(serverInfo,
+                    CryptoCache.keyFactory(HandshakeHandler.identityAlgorithm(this.suite)));
             if (!this.socket.resolveCompatibility(info))
                 throw new NetworkIncompatibleException("Client and Server are incompatible!");
 
@@ -109,18 +128,75 @@ public final class ClientHandshake implements Handshake {
                     "key specifications may be out-dated!", e);
         }
 
+        // Pick our most preferred algorithm the server also supports.
+        for (Compression algorithm : this.socket.compressionAlgorithms()) {
+            if (serverInfo.getCompressionList().contains(algorithm.name())) {
+                this.connection.updateCompression(algorithm);
+                break;
+            }
+        }
+
+        // Only use dictionaries that are exactly the same on both sides.
+        Map<String, byte[]> dictionaries = new HashMap<>();
+        for (HandshakeWrapper.CompressionDictionary dictionary : serverInfo.getDictionariesList()) {
+            byte[] localDictionary = this.socket.compressionDictionaries().get(dictionary.getKey());
+
+            if (localDictionary != null && DictionaryCompressor.checksum(localDictionary) == dictionary.getChecksum())
+                dictionaries.put(dictionary.getKey(), localDictionary);
+        }
+
+        this.connection.updateCompressionDictionaries(dictionaries);
+
         this.sendInfo(ctx);
     }
 
+    private HandshakeSuite resolveSuite(String name) throws NetworkIncompatibleException {
+        if (name.isEmpty())
+            return HandshakeSuite.RSA;
+
+        try {
+            return HandshakeSuite.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new NetworkIncompatibleException("Unsupported handshake suite: " + name, e);
+        }
+    }
+
     // State 1
-    private void sendInfo(ChannelHandlerContext ctx) {
+    private void sendInfo(ChannelHandlerContext ctx) throws GeneralSecurityException {
         this.state++;
 
-        HandshakeWrapper.Initialize initializePacket = HandshakeWrapper.Initialize.newBuilder()
+        HandshakeWrapper.Initialize.Builder initializeBuilder = HandshakeWrapper.Initialize.newBuilder()
                 .setCustom(this.connection.usesCustomAuth())
                 .setIdLeastSig(this.connection.identifier().getLeastSignificantBits())
                 .setIdMostSig(this.connection.identifier().getMostSignificantBits())
-                .build();
+                .setConnectionLeastSig(this.connection.connectionId().getLeastSignificantBits())
+                .setConnectionMostSig(this.connection.connectionId().getMostSignificantBits());
+
+        UUID replacedConnection = this.connection.replacedConnection();
+        if (replacedConnection != null)
+            initializeBuilder.setReplacesLeastSig(replacedConnection.getLeastSignificantBits())
+                    .setReplacesMostSig(replacedConnection.getMostSignificantBits());
+
+        if (this.connection.compression() != Compression.NONE)
+            initializeBuilder.setCompression(this.connection.compression().name());
+
+        initializeBuilder.addAllDictionaries(this.connection.compressionDictionaries().keySet());
+
+        if (this.suite == HandshakeSuite.X25519) { // Also sent when resuming, in case the ticket gets refused.
+            this.exchangeKeys = KeyExchange.generateExchangeKeys();
+            initializeBuilder.setExchangeKey(ByteString.copyFrom(this.exchangeKeys.getPublic().getEncoded()));
+        }
+
+        this.resumingTicket = this.socket.takeSessionTicket();
+        if (this.resumingTicket != null) {
+            this.clientNonce = new byte[SessionTicketManager.NONCE_SIZE];
+            RANDOM.nextBytes(this.clientNonce);
+
+            initializeBuilder.setTicket(ByteString.copyFrom(this.resumingTicket.ticket()))
+                    .setNonce(ByteString.copyFrom(this.clientNonce));
+        }
+
+        HandshakeWrapper.Initialize initializePacket = initializeBuilder.build();
 
         // TODO: Custom Auth
 
@@ -134,7 +210,7 @@ public final class ClientHandshake implements Handshake {
     }
 
     // State 2
-    private void challenge(ByteBuf packet, ChannelHandlerContext ctx) throws GeneralSecurityException, InvalidProtocolBufferException {
+    private void challenge(ByteBuf packet, ChannelHandlerContext ctx) throws GeneralSecurityException, InvalidProtocolBufferException, NetworkException {
         this.state++;
 
         byte[] rawData = new byte[packet.readableBytes()];
@@ -142,30 +218,76 @@ public final class ClientHandshake implements Handshake {
 
         HandshakeWrapper.Challenge challenge = HandshakeWrapper.Challenge.parseFrom(rawData);
 
-        byte[] keyBytes = this.socket.clientEncryptor().decrypt(challenge.getChallenge().toByteArray());
-        this.secretKey = new SecretKeySpec(keyBytes, HandshakeHandler.SECRET_KEY_ALGORITHM);
+        if (challenge.getResumed()) {
+            this.resume(challenge);
+        } else if (this.suite == HandshakeSuite.X25519) {
+            this.exchange(challenge);
+            this.resumingTicket = null; // Server refused the ticket, full handshake.
+        } else {
+            Cipher cipher = CryptoCache.cipher(HandshakeHandler.ASYMMETRIC_KEY_ALGORITHM);
+            cipher.init(Cipher.DECRYPT_MODE, this.socket.sessionKeyPair().getPrivate());
+
+            byte[] keyBytes = cipher.doFinal(challenge.getChallenge().toByteArray());
+            this.secretKey = new SecretKeySpec(keyBytes, HandshakeHandler.SECRET_KEY_ALGORITHM);
+            this.resumingTicket = null; // Server refused the ticket, full handshake.
+        }
+
+        // The server only sends a ticket once the handshake completed, see ExecutorHandler.
+        this.connection.resumptionSecret(SessionTicketManager.deriveSecret(this.secretKey.getEncoded()));
 
-        this.encryptor = new SecretKeyEncryptor(this.secretKey);
-        this.signer = Mac.getInstance(HandshakeHandler.SIGNATURE_ALGORITHM);
-        this.signer.init(this.secretKey);
+        this.session = new SessionCipher(this.secretKey);
 
         this.sendBackChallenge(ctx);
     }
 
+    private void exchange(HandshakeWrapper.Challenge challenge) throws GeneralSecurityException, NetworkException {
+        this.serverExchangeKey = challenge.getExchangeKey().toByteArray();
+        byte[] clientExchangeKey = this.exchangeKeys.getPublic().getEncoded();
+
+        if (!KeyExchange.verify(this.serverKey, challenge.getSignature().toByteArray(), KeyExchange.SERVER_SIGNATURE_LABEL,
+                clientExchangeKey, this.serverExchangeKey))
+            throw new UnauthorizedRequestException("Server failed to prove its identity!",
+                    NetworkException.UNDEFINED_COMMUNICATION_IDENTIFIER);
+
+        this.secretKey = KeyExchange.deriveSessionKey(this.exchangeKeys.getPrivate(), this.serverExchangeKey,
+                clientExchangeKey, this.serverExchangeKey);
+    }
+
+    private void resume(HandshakeWrapper.Challenge challenge) throws GeneralSecurityException, NetworkException {
+        if (this.resumingTicket == null || challenge.getNonce().size() != SessionTicketManager.NONCE_SIZE)
+            throw new NetworkDeSyncException("Server resumed a session that was never requested!",
+                    NetworkException.UNDEFINED_COMMUNICATION_IDENTIFIER);
+
+        this.serverNonce = challenge.getNonce().toByteArray();
+        this.secretKey = SessionTicketManager.deriveSessionKey(this.resumingTicket.secret(), this.clientNonce, this.serverNonce);
+
+        byte[] expectedProof = SessionTicketManager.proof(this.secretKey, SessionTicketManager.SERVER_PROOF_LABEL, this.clientNonce);
+        if (!MessageDigest.isEqual(challenge.getChallenge().toByteArray(), expectedProof))
+            throw new UnauthorizedRequestException("Server failed to prove the resumed session!",
+                    NetworkException.UNDEFINED_COMMUNICATION_IDENTIFIER);
+
+        this.connection.markResumed();
+    }
+
     // State 3
     private void sendBackChallenge(ChannelHandlerContext ctx) throws GeneralSecurityException {
         this.state++;
 
-        Cipher cipher = Cipher.getInstance(this.serverKey.getAlgorithm());
-        cipher.init(Cipher.ENCRYPT_MODE, this.serverKey);
-
-        byte[] encryptedKeyBytes = cipher.doFinal(this.secretKey.getEncoded());
-
-        HandshakeWrapper.Challenge challenge = HandshakeWrapper.Challenge.newBuilder()
-                .setChallenge(ByteString.copyFrom(encryptedKeyBytes))
-                .build();
+        HandshakeWrapper.Challenge.Builder challenge = HandshakeWrapper.Challenge.newBuilder();
+        if (this.connection.resumed()) {
+            challenge.setChallenge(ByteString.copyFrom(SessionTicketManager.proof(this.secretKey,
+                    SessionTicketManager.CLIENT_PROOF_LABEL, this.serverNonce)));
+        } else if (this.suite == HandshakeSuite.X25519) {
+            challenge.setSignature(ByteString.copyFrom(KeyExchange.sign(this.socket.sessionKeyPair().getPrivate(),
+                    KeyExchange.CLIENT_SIGNATURE_LABEL, this.exchangeKeys.getPublic().getEncoded(), this.serverExchangeKey)));
+        } else {
+            Cipher cipher = CryptoCache.cipher(this.serverKey.getAlgorithm());
+            cipher.init(Cipher.ENCRYPT_MODE, this.serverKey);
+
+            challenge.setChallenge(ByteString.copyFrom(cipher.doFinal(this.secretKey.getEncoded())));
+        }
 
-        byte[] data = challenge.toByteArray();
+        byte[] data = challenge.build().toByteArray();
 
         ByteBuf buf = ctx.alloc().buffer();
         buf.writeInt(data.length);
@@ -176,6 +298,7 @@ public final class ClientHandshake implements Handshake {
 
             // Notify other handler of the authentication
             ctx.fireUserEventTriggered(new HandshakeFinishedEvent(this.connection));
+            this.socket.connectionReady(this.connection);
         });
     }
 }
@@ -0,0 +1,70 @@
+package fr.atlasworld.protocol.handshake;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import java.security.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-thread cache of cryptographic primitives.
+ * <p>
+ * Looking up a primitive goes through the synchronized provider tables of the JCA,
+ * which shows up during connection storms. Instances are created once per thread and algorithm, and then reused.
+ * <p>
+ * Returned instances must be (re)initialized before every use, and must not be kept past the current operation.
+ */
+public final class CryptoCache {
+    private static final ThreadLocal<Map<String, Cipher>> CIPHERS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, Mac>> MACS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, Signature>> SIGNATURES = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, KeyAgreement>> AGREEMENTS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, KeyFactory>> KEY_FACTORIES = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, KeyPairGenerator>> KEY_GENERATORS = ThreadLocal.withInitial(HashMap::new);
+
+    private CryptoCache() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static Cipher cipher(String transformation) throws GeneralSecurityException {
+        return retrieve(CIPHERS, transformation, Cipher::getInstance);
+    }
+
+    public static Mac mac(String algorithm) throws GeneralSecurityException {
+        return retrieve(MACS, algorithm, Mac::getInstance);
+    }
+
+    public static Signature signature(String algorithm) throws GeneralSecurityException {
+        return retrieve(SIGNATURES, algorithm, Signature::getInstance);
+    }
+
+    public static KeyAgreement keyAgreement(String algorithm) throws GeneralSecurityException {
+        return retrieve(AGREEMENTS, algorithm, KeyAgreement::getInstance);
+    }
+
+    public static KeyFactory keyFactory(String algorithm) throws GeneralSecurityException {
+        return retrieve(KEY_FACTORIES, algorithm, KeyFactory::getInstance);
+    }
+
+    public static KeyPairGenerator keyPairGenerator(String algorithm) throws GeneralSecurityException {
+        return retrieve(KEY_GENERATORS, algorithm, KeyPairGenerator::getInstance);
+    }
+
+    private static <T> T retrieve(ThreadLocal<Map<String, T>> cache, String algorithm, Provider<T> provider) throws GeneralSecurityException {
+        Map<String, T> instances = cache.get();
+
+        T instance = instances.get(algorithm);
+        if (instance == null) {
+            instance = provider.getInstance(algorithm);
+            instances.put(algorithm, instance);
+        }
+
+        return instance;
+    }
+
+    @FunctionalInterface
+    private interface Provider<T> {
+        T getInstance(String algorithm) throws GeneralSecurityException;
+    }
+}
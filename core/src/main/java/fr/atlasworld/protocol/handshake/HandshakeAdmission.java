@@ -0,0 +1,64 @@
+package fr.atlasworld.protocol.handshake;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the amount of handshakes in progress, globally and per remote address.
+ * <p>
+ * Checked when a connection is accepted, before any handshake state is allocated,
+ * so connection floods are refused for the cost of a counter.
+ */
+public final class HandshakeAdmission {
+    private final int maxHandshakes;
+    private final int maxHandshakesPerAddress;
+
+    private final AtomicInteger handshakes;
+    private final ConcurrentMap<InetAddress, Integer> addressHandshakes;
+
+    public HandshakeAdmission(int maxHandshakes, int maxHandshakesPerAddress) {
+        this.maxHandshakes = maxHandshakes;
+        this.maxHandshakesPerAddress = maxHandshakesPerAddress;
+
+        this.handshakes = new AtomicInteger();
+        this.addressHandshakes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Tries to reserve a handshake slot for the address.
+     *
+     * @return true if the handshake may start, every successful call must be followed by a {@link #release(InetAddress)}.
+     */
+    public boolean tryAcquire(InetAddress address) {
+        if (this.handshakes.incrementAndGet() > this.maxHandshakes) {
+            this.handshakes.decrementAndGet();
+            return false;
+        }
+
+        boolean[] acquired = new boolean[1];
+        this.addressHandshakes.compute(address, (key, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= this.maxHandshakesPerAddress)
+                return count;
+
+            acquired[0] = true;
+            return current + 1;
+        });
+
+        if (!acquired[0])
+            this.handshakes.decrementAndGet();
+
+        return acquired[0];
+    }
+
+    public void release(InetAddress address) {
+        this.addressHandshakes.computeIfPresent(address, (key, count) -> count > 1 ? count - 1 : null);
+        this.handshakes.decrementAndGet();
+    }
+
+    public int handshakes() {
+        return this.handshakes.get();
+    }
+}
@@ -0,0 +1,77 @@
+package fr.atlasworld.protocol.handshake;
+
+import fr.atlasworld.protocol.handler.HandshakeHandler;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+/**
+ * Cryptographic operations of the {@link fr.atlasworld.protocol.security.HandshakeSuite#X25519 X25519} handshake suite.
+ * <p>
+ * Both sides generate an ephemeral X25519 key pair, the session key is derived from the agreed secret
+ * and both ephemeral public keys. Each side signs both ephemeral keys with its Ed25519 identity key,
+ * proving its identity and binding the signature to this handshake only.
+ */
+public final class KeyExchange {
+    private static final byte[] SESSION_LABEL = "atlas x25519 session".getBytes(StandardCharsets.US_ASCII);
+
+    public static final byte[] SERVER_SIGNATURE_LABEL = "atlas x25519 server".getBytes(StandardCharsets.US_ASCII);
+    public static final byte[] CLIENT_SIGNATURE_LABEL = "atlas x25519 client".getBytes(StandardCharsets.US_ASCII);
+
+    private KeyExchange() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static KeyPair generateExchangeKeys() throws GeneralSecurityException {
+        return CryptoCache.keyPairGenerator(HandshakeHandler.EXCHANGE_KEY_ALGORITHM).generateKeyPair();
+    }
+
+    public static SecretKey deriveSessionKey(PrivateKey exchangeKey, byte[] remoteExchangeKey,
+                                             byte[] clientExchangeKey, byte[] serverExchangeKey) throws GeneralSecurityException {
+        PublicKey remoteKey = CryptoCache.keyFactory(HandshakeHandler.EXCHANGE_KEY_ALGORITHM)
+                .generatePublic(new X509EncodedKeySpec(remoteExchangeKey));
+
+        KeyAgreement agreement = CryptoCache.keyAgreement(HandshakeHandler.EXCHANGE_KEY_ALGORITHM);
+        agreement.init(exchangeKey);
+        agreement.doPhase(remoteKey, true);
+
+        byte[] sharedSecret = agreement.generateSecret();
+
+        Mac mac = CryptoCache.mac(HandshakeHandler.SIGNATURE_ALGORITHM);
+        mac.init(new SecretKeySpec(sharedSecret, HandshakeHandler.SIGNATURE_ALGORITHM));
+        mac.update(SESSION_LABEL);
+        mac.update(clientExchangeKey);
+        mac.update(serverExchangeKey);
+
+        Arrays.fill(sharedSecret, (byte) 0x00); // Destroy shared secret
+
+        return new SecretKeySpec(mac.doFinal(), HandshakeHandler.SECRET_KEY_ALGORITHM);
+    }
+
+    public static byte[] sign(PrivateKey identityKey, byte[] label, byte[] clientExchangeKey, byte[] serverExchangeKey) throws GeneralSecurityException {
+        Signature signature = CryptoCache.signature(HandshakeHandler.IDENTITY_KEY_ALGORITHM);
+        signature.initSign(identityKey);
+        signature.update(label);
+        signature.update(clientExchangeKey);
+        signature.update(serverExchangeKey);
+
+        return signature.sign();
+    }
+
+    public static boolean verify(PublicKey identityKey, byte[] signed, byte[] label,
+                                 byte[] clientExchangeKey, byte[] serverExchangeKey) throws GeneralSecurityException {
+        Signature signature = CryptoCache.signature(HandshakeHandler.IDENTITY_KEY_ALGORITHM);
+        signature.initVerify(identityKey);
+        signature.update(label);
+        signature.update(clientExchangeKey);
+        signature.update(serverExchangeKey);
+
+        return signature.verify(signed);
+    }
+}
@@ -2,17 +2,19 @@ package fr.atlasworld.protocol.handshake;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
-import fr.atlasworld.common.security.Encryptor;
-import fr.atlasworld.common.security.encryptor.SecretKeyEncryptor;
 import fr.atlasworld.protocol.ApiBridge;
+import fr.atlasworld.protocol.connection.Compression;
+import fr.atlasworld.protocol.connection.ConnectionGroupImpl;
 import fr.atlasworld.protocol.connection.ConnectionImpl;
 import fr.atlasworld.protocol.event.connection.ConnectionRefusedEvent;
 import fr.atlasworld.protocol.exception.NetworkException;
+import fr.atlasworld.protocol.exception.NetworkIncompatibleException;
 import fr.atlasworld.protocol.exception.request.NetworkDeSyncException;
 import fr.atlasworld.protocol.exception.request.UnauthorizedRequestException;
 import fr.atlasworld.protocol.generated.HandshakeWrapper;
 import fr.atlasworld.protocol.handler.HandshakeHandler;
 import fr.atlasworld.protocol.handler.event.HandshakeFinishedEvent;
+import fr.atlasworld.protocol.security.HandshakeSuite;
 import fr.atlasworld.protocol.socket.ServerSocketImpl;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
@@ -21,16 +23,28 @@ import javax.crypto.*;
 import javax.security.auth.DestroyFailedException;
 import java.security.*;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 public final class ServerHandshake implements Handshake {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
     private int state;
 
     private SecretKey secretKey;
     private ConnectionImpl connection;
 
-    private Encryptor encryptor;
-    private Mac signer;
+    // X25519 suite
+    private byte[] clientExchangeKey;
+    private byte[] serverExchangeKey;
+
+    // Session resumption
+    private boolean resumed;
+    private byte[] serverNonce;
+
+    private SessionCipher session;
 
     private final ServerSocketImpl socket;
     private final KeyGenerator generator;
@@ -77,13 +91,13 @@ public final class ServerHandshake implements Handshake {
     }
 
     @Override
-    public Encryptor encryptor() {
-        return this.encryptor;
+    public SessionCipher session() {
+        return this.session;
     }
 
     @Override
-    public Mac signer() {
-        return this.signer;
+    public ConnectionImpl connection() {
+        return this.connection;
     }
 
     // State 1
@@ -97,40 +111,152 @@ public final class ServerHandshake implements Handshake {
 
         // Fill in identity
         UUID identifier = new UUID(initializePayload.getIdMostSig(), initializePayload.getIdLeastSig());
+        UUID connectionId = initializePayload.hasConnectionMostSig() ?
+                new UUID(initializePayload.getConnectionMostSig(), initializePayload.getConnectionLeastSig()) : identifier;
         boolean customAuthenticator = initializePayload.getCustom();
 
-        this.connection = new ConnectionImpl(ctx.channel(), identifier, this.socket, this.socket.defaultTimeout(),
-                customAuthenticator, this.socket.rootNode());
+        // Validate the request before allocating anything for the connection.
+        Compression compression = initializePayload.hasCompression() ?
+                this.resolveCompression(initializePayload.getCompression()) : Compression.NONE;
+
+        Map<String, byte[]> dictionaries = new HashMap<>();
+        for (String key : initializePayload.getDictionariesList()) {
+            byte[] dictionary = this.socket.compressionDictionaries().get(key);
+            if (dictionary == null)
+                throw new NetworkIncompatibleException("Client selected an unknown compression dictionary: " + key);
+
+            dictionaries.put(key, dictionary);
+        }
+
+        if (this.socket.handshakeSuite() == HandshakeSuite.X25519 && initializePayload.getExchangeKey().isEmpty())
+            throw new NetworkIncompatibleException("Client did not send an exchange key!");
+
+        this.connection = new ConnectionImpl(ctx.channel(), identifier, connectionId, this.socket, this.socket.defaultTimeout(),
+                customAuthenticator, this.socket.rootNode(), this.socket.metricsRecorder(), Map.of());
+
+        if (initializePayload.hasReplacesMostSig())
+            this.connection.replaces(new UUID(initializePayload.getReplacesMostSig(), initializePayload.getReplacesLeastSig()));
+
+        this.connection.updateCompression(compression);
+        this.connection.updateCompressionDictionaries(dictionaries);
+
+        SessionTicketManager tickets = this.socket.sessionTickets();
+        if (tickets != null && initializePayload.hasTicket() && initializePayload.getNonce().size() == SessionTicketManager.NONCE_SIZE) {
+            Optional<SessionTicketManager.Session> session = tickets.redeem(initializePayload.getTicket().toByteArray());
+
+            // Fall back to a full handshake if the ticket can't be used.
+            if (session.isPresent() && session.get().identifier().equals(identifier)) {
+                this.resume(ctx, session.get(), initializePayload.getNonce().toByteArray());
+                return;
+            }
+        }
 
         if (!customAuthenticator) {
             PublicKey publicKey = this.socket.authenticator().authenticate(connection, identifier);
+            if (!HandshakeHandler.supportsKey(this.socket.handshakeSuite(), publicKey))
+                throw new NetworkIncompatibleException("Client key is not supported by the handshake suite: " + this.socket.handshakeSuite());
+
             this.connection.updateKey(publicKey);
-            this.invokeChallenge(ctx);
+
+            if (this.socket.handshakeSuite() == HandshakeSuite.X25519)
+                this.exchange(ctx, initializePayload.getExchangeKey().toByteArray());
+            else
+                this.invokeChallenge(ctx);
+
             return;
         }
 
         // Todo: Custom Authentication
     }
 
+    private Compression resolveCompression(String name) throws NetworkIncompatibleException {
+        for (Compression algorithm : this.socket.compressionAlgorithms()) {
+            if (algorithm.name().equals(name))
+                return algorithm;
+        }
+
+        throw new NetworkIncompatibleException("Client selected an unsupported compression algorithm: " + name);
+    }
+
+    // State 2, resumed session
+    private void resume(ChannelHandlerContext ctx, SessionTicketManager.Session session, byte[] clientNonce) throws GeneralSecurityException {
+        this.state++;
+        this.resumed = true;
+
+        this.connection.updateKey(session.publicKey());
+        this.connection.markResumed();
+
+        this.serverNonce = new byte[SessionTicketManager.NONCE_SIZE];
+        RANDOM.nextBytes(this.serverNonce);
+
+        this.secretKey = SessionTicketManager.deriveSessionKey(session.secret(), clientNonce, this.serverNonce);
+        Arrays.fill(session.secret(), (byte) 0x00);
+
+        this.session = new SessionCipher(this.secretKey);
+
+        HandshakeWrapper.Challenge.Builder challenge = HandshakeWrapper.Challenge.newBuilder()
+                .setResumed(true)
+                .setNonce(ByteString.copyFrom(this.serverNonce))
+                .setChallenge(ByteString.copyFrom(SessionTicketManager.proof(this.secretKey,
+                        SessionTicketManager.SERVER_PROOF_LABEL, clientNonce)));
+
+        byte[] data = challenge.build().toByteArray();
+        ByteBuf buf = ctx.alloc().buffer();
+
+        buf.writeInt(data.length);
+        buf.writeBytes(data);
+
+        ctx.writeAndFlush(buf);
+    }
+
+    // State 2, X25519 suite
+    private void exchange(ChannelHandlerContext ctx, byte[] clientExchangeKey) throws GeneralSecurityException {
+        this.state++;
+
+        KeyPair exchangeKeys = KeyExchange.generateExchangeKeys();
+        this.clientExchangeKey = clientExchangeKey;
+        this.serverExchangeKey = exchangeKeys.getPublic().getEncoded();
+
+        this.secretKey = KeyExchange.deriveSessionKey(exchangeKeys.getPrivate(), this.clientExchangeKey,
+                this.clientExchangeKey, this.serverExchangeKey);
+
+        this.session = new SessionCipher(this.secretKey);
+
+        byte[] signature = KeyExchange.sign(this.socket.sessionKeyPair().getPrivate(), KeyExchange.SERVER_SIGNATURE_LABEL,
+                this.clientExchangeKey, this.serverExchangeKey);
+
+        HandshakeWrapper.Challenge.Builder challenge = HandshakeWrapper.Challenge.newBuilder()
+                .setExchangeKey(ByteString.copyFrom(this.serverExchangeKey))
+                .setSignature(ByteString.copyFrom(signature));
+
+        byte[] data = challenge.build().toByteArray();
+        ByteBuf buf = ctx.alloc().buffer();
+
+        buf.writeInt(data.length);
+        buf.writeBytes(data);
+
+        ctx.writeAndFlush(buf);
+    }
+
     // State 2
     private void invokeChallenge(ChannelHandlerContext ctx) throws GeneralSecurityException {
         this.state++;
 
-        this.secretKey = this.generator.generateKey();
+        synchronized (this.generator) { // Generator is shared across handshake workers.
+            this.secretKey = this.generator.generateKey();
+        }
         byte[] keyBytes = this.secretKey.getEncoded();
 
-        this.encryptor = new SecretKeyEncryptor(this.secretKey);
-        this.signer = Mac.getInstance(HandshakeHandler.SIGNATURE_ALGORITHM);
-        this.signer.init(this.secretKey);
+        this.session = new SessionCipher(this.secretKey);
 
-        Cipher cipher = Cipher.getInstance(this.connection.publicKey().getAlgorithm());
+        Cipher cipher = CryptoCache.cipher(this.connection.publicKey().getAlgorithm());
         cipher.init(Cipher.ENCRYPT_MODE, this.connection.publicKey());
 
         byte[] encryptedBytes = cipher.doFinal(keyBytes);
-        HandshakeWrapper.Challenge challenge = HandshakeWrapper.Challenge.newBuilder()
-                .setChallenge(ByteString.copyFrom(encryptedBytes)).build();
+        HandshakeWrapper.Challenge.Builder challenge = HandshakeWrapper.Challenge.newBuilder()
+                .setChallenge(ByteString.copyFrom(encryptedBytes));
 
-        byte[] data = challenge.toByteArray();
+        byte[] data = challenge.build().toByteArray();
         ByteBuf buf = ctx.alloc().buffer();
 
         buf.writeInt(data.length);
@@ -150,7 +276,35 @@ public final class ServerHandshake implements Handshake {
 
         HandshakeWrapper.Challenge challenge = HandshakeWrapper.Challenge.parseFrom(rawData);
 
-        byte[] keyBytes = this.socket.serverEncryptor().decrypt(challenge.getChallenge().toByteArray());
+        if (this.resumed) {
+            byte[] expectedProof = SessionTicketManager.proof(this.secretKey, SessionTicketManager.CLIENT_PROOF_LABEL, this.serverNonce);
+
+            if (!MessageDigest.isEqual(challenge.getChallenge().toByteArray(), expectedProof)) {
+                this.connection.refuseConnection(ConnectionRefusedEvent.Cause.CHALLENGE_FAILURE);
+                throw new UnauthorizedRequestException("Unauthorized connection attempt!",
+                        NetworkException.UNDEFINED_COMMUNICATION_IDENTIFIER);
+            }
+
+            this.sendSuccess(ctx);
+            return;
+        }
+
+        if (this.socket.handshakeSuite() == HandshakeSuite.X25519) {
+            if (!KeyExchange.verify(this.connection.publicKey(), challenge.getSignature().toByteArray(),
+                    KeyExchange.CLIENT_SIGNATURE_LABEL, this.clientExchangeKey, this.serverExchangeKey)) {
+                this.connection.refuseConnection(ConnectionRefusedEvent.Cause.CHALLENGE_FAILURE);
+                throw new UnauthorizedRequestException("Unauthorized connection attempt!",
+                        NetworkException.UNDEFINED_COMMUNICATION_IDENTIFIER);
+            }
+
+            this.sendSuccess(ctx);
+            return;
+        }
+
+        Cipher cipher = CryptoCache.cipher(HandshakeHandler.ASYMMETRIC_KEY_ALGORITHM);
+        cipher.init(Cipher.DECRYPT_MODE, this.socket.sessionKeyPair().getPrivate());
+
+        byte[] keyBytes = cipher.doFinal(challenge.getChallenge().toByteArray());
         byte[] actualKeyBytes = this.secretKey.getEncoded();
 
         if (!MessageDigest.isEqual(keyBytes, actualKeyBytes)) {
@@ -166,10 +320,48 @@ public final class ServerHandshake implements Handshake {
         this.sendSuccess(ctx);
     }
 
-    private void sendSuccess(ChannelHandlerContext ctx) {
+    private void sendSuccess(ChannelHandlerContext ctx) throws GeneralSecurityException {
+        byte[] ticket = this.issueTicket();
+
         this.connection.validate();
+        this.register();
 
         // Notify other handler of the authentication
         ctx.fireUserEventTriggered(new HandshakeFinishedEvent(this.connection));
+
+        if (ticket != null) // Encrypted like any other packet, now that the connection is established.
+            this.connection.sendSessionTicket(ticket, this.socket.sessionTickets().lifetime());
+    }
+
+    private byte[] issueTicket() throws GeneralSecurityException {
+        SessionTicketManager tickets = this.socket.sessionTickets();
+        if (tickets == null)
+            return null;
+
+        // Only issued once the client proved its identity, the ticket must never reach someone claiming another identifier.
+        byte[] secret = SessionTicketManager.deriveSecret(this.secretKey.getEncoded());
+        byte[] ticket = tickets.issue(this.connection.identifier(), this.connection.publicKey(), secret);
+        Arrays.fill(secret, (byte) 0x00);
+
+        return ticket;
+    }
+
+    private void register() {
+        ConnectionImpl connection = this.connection;
+        ConnectionGroupImpl group = this.socket.globalConnectionGroup();
+
+        ConnectionImpl previous = group.registerConnection(connection);
+        connection.channel().closeFuture().addListener(closeFuture -> group.unregisterConnection(connection));
+
+        if (previous != null) // The remote reconnected, the previous connection is dead but may not be detected yet.
+            previous.evict("Replaced by a new connection!");
+
+        UUID replacedConnection = connection.replacedConnection();
+        if (replacedConnection == null)
+            return;
+
+        ConnectionImpl replaced = group.connection(replacedConnection);
+        if (replaced != null && replaced != connection && replaced.identifier().equals(connection.identifier())) // Never another client's.
+            replaced.evict("Replaced by a new connection!");
     }
 }
@@ -0,0 +1,42 @@
+package fr.atlasworld.protocol.handshake;
+
+import fr.atlasworld.protocol.handler.HandshakeHandler;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.security.GeneralSecurityException;
+
+/**
+ * Encrypts and signs the packets of a connection once the handshake completed.
+ * <p>
+ * Doesn't hold any cipher itself, the per-thread instances of {@link CryptoCache} are initialized with the session key on every use.
+ */
+public final class SessionCipher {
+    private final SecretKey key;
+
+    public SessionCipher(SecretKey key) {
+        this.key = key;
+    }
+
+    public byte[] encrypt(byte[] data) throws GeneralSecurityException {
+        Cipher cipher = CryptoCache.cipher(HandshakeHandler.SECRET_KEY_ALGORITHM);
+        cipher.init(Cipher.ENCRYPT_MODE, this.key);
+
+        return cipher.doFinal(data);
+    }
+
+    public byte[] decrypt(byte[] data) throws GeneralSecurityException {
+        Cipher cipher = CryptoCache.cipher(HandshakeHandler.SECRET_KEY_ALGORITHM);
+        cipher.init(Cipher.DECRYPT_MODE, this.key);
+
+        return cipher.doFinal(data);
+    }
+
+    public byte[] sign(byte[] data) throws GeneralSecurityException {
+        Mac mac = CryptoCache.mac(HandshakeHandler.SIGNATURE_ALGORITHM);
+        mac.init(this.key);
+
+        return mac.doFinal(data);
+    }
+}
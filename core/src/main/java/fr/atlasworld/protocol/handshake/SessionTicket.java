@@ -0,0 +1,14 @@
+package fr.atlasworld.protocol.handshake;
+
+/**
+ * Session ticket received from the server, kept by the client to resume the session on its next connection.
+ *
+ * @param ticket opaque ticket, only readable by the server.
+ * @param secret resumption secret shared with the server.
+ * @param expiresAt time in milliseconds after which the server no longer accepts the ticket.
+ */
+public record SessionTicket(byte[] ticket, byte[] secret, long expiresAt) {
+    public boolean expired() {
+        return this.expiresAt <= System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,205 @@
+package fr.atlasworld.protocol.handshake;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import fr.atlasworld.protocol.generated.SessionWrapper;
+import fr.atlasworld.protocol.handler.HandshakeHandler;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.*;
+
+/**
+ * Issues and redeems session tickets, allowing clients to resume a session without asymmetric cryptography.
+ * <p>
+ * Tickets are encrypted with a server-side key rotating every ticket lifetime,
+ * tickets encrypted with the previous key are still accepted until they expire.
+ * Every issued ticket is tracked in a bounded cache and removed once redeemed, so tickets can only be used once.
+ */
+public final class SessionTicketManager {
+    public static final int SECRET_SIZE = 32;
+    public static final int NONCE_SIZE = 32;
+
+    private static final String TICKET_CIPHER = "AES/GCM/NoPadding";
+    private static final int TICKET_IV_SIZE = 12;
+    private static final int TICKET_TAG_SIZE = 128;
+
+    private static final byte[] RESUMPTION_LABEL = "atlas resumption".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SESSION_LABEL = "atlas session".getBytes(StandardCharsets.US_ASCII);
+
+    public static final byte[] SERVER_PROOF_LABEL = "atlas server proof".getBytes(StandardCharsets.US_ASCII);
+    public static final byte[] CLIENT_PROOF_LABEL = "atlas client proof".getBytes(StandardCharsets.US_ASCII);
+
+    private final long lifetime;
+    private final int maxTickets;
+
+    private final KeyGenerator keyGenerator;
+    private final SecureRandom random;
+
+    // Guarded by 'this'
+    private final LinkedHashMap<UUID, Long> issuedTickets;
+    private SecretKey currentKey, previousKey;
+    private byte currentKeyId;
+    private long rotatesAt;
+
+    public SessionTicketManager(long lifetime, int maxTickets) throws GeneralSecurityException {
+        this.lifetime = lifetime;
+        this.maxTickets = maxTickets;
+
+        this.keyGenerator = KeyGenerator.getInstance(HandshakeHandler.SECRET_KEY_ALGORITHM);
+        this.random = new SecureRandom();
+
+        this.issuedTickets = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Long> eldest) {
+                return this.size() > SessionTicketManager.this.maxTickets;
+            }
+        };
+
+        this.currentKey = this.keyGenerator.generateKey();
+        this.rotatesAt = System.currentTimeMillis() + this.lifetime;
+    }
+
+    public long lifetime() {
+        return this.lifetime;
+    }
+
+    public byte[] issue(UUID identifier, PublicKey publicKey, byte[] secret) throws GeneralSecurityException {
+        UUID ticketId = UUID.randomUUID();
+        long expiresAt = System.currentTimeMillis() + this.lifetime;
+
+        byte[] content = SessionWrapper.SessionTicket.newBuilder()
+                .setIdMostSig(ticketId.getMostSignificantBits())
+                .setIdLeastSig(ticketId.getLeastSignificantBits())
+                .setIdentifierMostSig(identifier.getMostSignificantBits())
+                .setIdentifierLeastSig(identifier.getLeastSignificantBits())
+                .setExpiresAt(expiresAt)
+                .setSecret(ByteString.copyFrom(secret))
+                .setKeyAlgorithm(publicKey.getAlgorithm())
+                .setPublicKey(ByteString.copyFrom(publicKey.getEncoded()))
+                .build().toByteArray();
+
+        SecretKey key;
+        byte keyId;
+        synchronized (this) {
+            this.rotate();
+            this.issuedTickets.put(ticketId, expiresAt);
+
+            key = this.currentKey;
+            keyId = this.currentKeyId;
+        }
+
+        byte[] iv = new byte[TICKET_IV_SIZE];
+        this.random.nextBytes(iv);
+
+        Cipher cipher = CryptoCache.cipher(TICKET_CIPHER);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TICKET_TAG_SIZE, iv));
+        byte[] encrypted = cipher.doFinal(content);
+
+        byte[] ticket = new byte[1 + iv.length + encrypted.length];
+        ticket[0] = keyId;
+        System.arraycopy(iv, 0, ticket, 1, iv.length);
+        System.arraycopy(encrypted, 0, ticket, 1 + iv.length, encrypted.length);
+
+        return ticket;
+    }
+
+    /**
+     * Redeems a ticket, a ticket may only be redeemed once.
+     *
+     * @return session of the ticket, or empty if the ticket is invalid, expired or was already redeemed.
+     */
+    public Optional<Session> redeem(byte[] ticket) {
+        if (ticket.length <= 1 + TICKET_IV_SIZE)
+            return Optional.empty();
+
+        SecretKey key;
+        synchronized (this) {
+            this.rotate();
+
+            if (ticket[0] == this.currentKeyId)
+                key = this.currentKey;
+            else if (ticket[0] == (byte) (this.currentKeyId - 1))
+                key = this.previousKey;
+            else
+                key = null;
+        }
+
+        if (key == null)
+            return Optional.empty();
+
+        try {
+            Cipher cipher = CryptoCache.cipher(TICKET_CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TICKET_TAG_SIZE, ticket, 1, TICKET_IV_SIZE));
+
+            byte[] content = cipher.doFinal(ticket, 1 + TICKET_IV_SIZE, ticket.length - 1 - TICKET_IV_SIZE);
+            SessionWrapper.SessionTicket decodedTicket = SessionWrapper.SessionTicket.parseFrom(content);
+
+            if (decodedTicket.getExpiresAt() < System.currentTimeMillis())
+                return Optional.empty();
+
+            UUID ticketId = new UUID(decodedTicket.getIdMostSig(), decodedTicket.getIdLeastSig());
+            synchronized (this) {
+                if (this.issuedTickets.remove(ticketId) == null) // Already used or evicted.
+                    return Optional.empty();
+            }
+
+            PublicKey publicKey = CryptoCache.keyFactory(decodedTicket.getKeyAlgorithm())
+                    .generatePublic(new X509EncodedKeySpec(decodedTicket.getPublicKey().toByteArray()));
+
+            return Optional.of(new Session(new UUID(decodedTicket.getIdentifierMostSig(), decodedTicket.getIdentifierLeastSig()),
+                    publicKey, decodedTicket.getSecret().toByteArray()));
+        } catch (GeneralSecurityException | InvalidProtocolBufferException e) {
+            return Optional.empty(); // Tampered or unreadable ticket, fall back to a full handshake.
+        }
+    }
+
+    // Must hold the lock
+    private void rotate() {
+        long now = System.currentTimeMillis();
+        if (now < this.rotatesAt)
+            return;
+
+        // Previous key is only kept if it may still have valid tickets.
+        this.previousKey = now < this.rotatesAt + this.lifetime ? this.currentKey : null;
+        this.currentKey = this.keyGenerator.generateKey();
+        this.currentKeyId++;
+        this.rotatesAt = now + this.lifetime;
+
+        this.issuedTickets.values().removeIf(expiresAt -> expiresAt < now);
+    }
+
+    public static byte[] deriveSecret(byte[] sessionKey) throws GeneralSecurityException {
+        return hmac(sessionKey, RESUMPTION_LABEL);
+    }
+
+    public static SecretKey deriveSessionKey(byte[] secret, byte[] clientNonce, byte[] serverNonce) throws GeneralSecurityException {
+        return new SecretKeySpec(hmac(secret, SESSION_LABEL, clientNonce, serverNonce), HandshakeHandler.SECRET_KEY_ALGORITHM);
+    }
+
+    public static byte[] proof(SecretKey sessionKey, byte[] label, byte[] nonce) throws GeneralSecurityException {
+        return hmac(sessionKey.getEncoded(), label, nonce);
+    }
+
+    private static byte[] hmac(byte[] key, byte[]... data) throws GeneralSecurityException {
+        Mac mac = CryptoCache.mac(HandshakeHandler.SIGNATURE_ALGORITHM);
+        mac.init(new SecretKeySpec(key, HandshakeHandler.SIGNATURE_ALGORITHM));
+
+        for (byte[] part : data) {
+            mac.update(part);
+        }
+
+        return mac.doFinal();
+    }
+
+    public record Session(UUID identifier, PublicKey publicKey, byte[] secret) {
+    }
+}
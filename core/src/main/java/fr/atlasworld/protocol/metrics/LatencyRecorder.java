@@ -0,0 +1,118 @@
+package fr.atlasworld.protocol.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of nanosecond values.
+ * <p>
+ * Every power of two is split into {@value #SUB_BUCKETS} linear buckets,
+ * which bounds the relative error to 1/{@value #SUB_BUCKETS} with a fixed footprint of a few kilobytes.
+ * Recording is a single atomic increment, snapshots may be taken concurrently from any thread.
+ */
+public final class LatencyRecorder {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 36; // ~68 seconds, longer values land in the last bucket.
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets;
+    private final LongAdder sum;
+    private final LongAccumulator min;
+    private final LongAccumulator max;
+
+    public LatencyRecorder() {
+        this.buckets = new AtomicLongArray(BUCKETS);
+        this.sum = new LongAdder();
+        this.min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+
+        this.buckets.incrementAndGet(index(value));
+        this.sum.add(value);
+        this.min.accumulate(value);
+        this.max.accumulate(value);
+    }
+
+    public LatencySnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.buckets.get(i);
+            count += counts[i];
+        }
+
+        if (count == 0)
+            return LatencySnapshot.EMPTY;
+
+        long max = this.max.get();
+        long min = Math.min(this.min.get(), max); // A concurrent record may not have reached the accumulators yet.
+
+        return new LatencySnapshot(count, min, max, this.sum.sum() / count,
+                percentile(counts, count, 0.5, min, max), percentile(counts, count, 0.9, min, max),
+                percentile(counts, count, 0.99, min, max), percentile(counts, count, 0.999, min, max));
+    }
+
+    /**
+     * Computes a single percentile, cheaper than taking a full snapshot.
+     *
+     * @param percentile percentile to compute, between 0 and 1.
+     * @param minimumCount minimum amount of recorded values for the percentile to be meaningful.
+     *
+     * @return value at the percentile, or -1 if less than {@code minimumCount} values were recorded.
+     */
+    public long percentile(double percentile, long minimumCount) {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.buckets.get(i);
+            count += counts[i];
+        }
+
+        if (count == 0 || count < minimumCount)
+            return -1;
+
+        long max = this.max.get();
+        return percentile(counts, count, percentile, Math.min(this.min.get(), max), max);
+    }
+
+    private static long percentile(long[] counts, long count, double percentile, long min, long max) {
+        long target = Math.max(1, (long) Math.ceil(count * percentile));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) // Highest value of the bucket, kept within the recorded range.
+                return Math.max(min, Math.min(max, lowestValue(i + 1) - 1));
+        }
+
+        return max;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT)
+            return BUCKETS - 1;
+
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long lowestValue(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+}
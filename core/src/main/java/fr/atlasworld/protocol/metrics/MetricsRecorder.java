@@ -0,0 +1,181 @@
+package fr.atlasworld.protocol.metrics;
+
+import fr.atlasworld.registry.RegistryKey;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the metrics of a socket or a connection.
+ * <p>
+ * Connection recorders forward everything to the recorder of their socket,
+ * so socket metrics are aggregated as they are recorded instead of when they are read.
+ * All methods are lock-free and may be called from any thread.
+ */
+public final class MetricsRecorder {
+    private final MetricsRecorder parent;
+
+    private final LongAdder packetsIn;
+    private final LongAdder packetsOut;
+    private final LongAdder bytesIn;
+    private final LongAdder bytesOut;
+
+    private final LongAdder inFlightRequests;
+    private final LongAdder timeouts;
+    private final LongAdder acknowledgements;
+    private final LongAdder expiredRequests;
+    private final LongAdder deduplicatedRequests;
+
+    private final LatencyRecorder handshakeDuration;
+    private final LatencyRecorder encryptionTime;
+
+    // Created on first use, most packet types are never exchanged.
+    private final ConcurrentMap<RegistryKey, LatencyRecorder> requestLatency;
+    private final ConcurrentMap<RegistryKey, LatencyRecorder> acknowledgementLatency;
+    private final ConcurrentMap<RegistryKey, LatencyRecorder> responseLatency;
+
+    public MetricsRecorder(@Nullable MetricsRecorder parent) {
+        this.parent = parent;
+
+        this.packetsIn = new LongAdder();
+        this.packetsOut = new LongAdder();
+        this.bytesIn = new LongAdder();
+        this.bytesOut = new LongAdder();
+
+        this.inFlightRequests = new LongAdder();
+        this.timeouts = new LongAdder();
+        this.acknowledgements = new LongAdder();
+        this.expiredRequests = new LongAdder();
+        this.deduplicatedRequests = new LongAdder();
+
+        this.handshakeDuration = new LatencyRecorder();
+        this.encryptionTime = new LatencyRecorder();
+        this.requestLatency = new ConcurrentHashMap<>();
+        this.acknowledgementLatency = new ConcurrentHashMap<>();
+        this.responseLatency = new ConcurrentHashMap<>();
+    }
+
+    public void packetReceived(int bytes) {
+        this.packetsIn.increment();
+        this.bytesIn.add(bytes);
+
+        if (this.parent != null)
+            this.parent.packetReceived(bytes);
+    }
+
+    public void packetSent(int bytes) {
+        this.packetsOut.increment();
+        this.bytesOut.add(bytes);
+
+        if (this.parent != null)
+            this.parent.packetSent(bytes);
+    }
+
+    public void requestSent() {
+        this.inFlightRequests.increment();
+
+        if (this.parent != null)
+            this.parent.requestSent();
+    }
+
+    public void requestCompleted() {
+        this.inFlightRequests.decrement();
+
+        if (this.parent != null)
+            this.parent.requestCompleted();
+    }
+
+    public void requestTimedOut() {
+        this.timeouts.increment();
+
+        if (this.parent != null)
+            this.parent.requestTimedOut();
+    }
+
+    public void requestAcknowledged(RegistryKey key, long nanos) {
+        this.acknowledgements.increment();
+        record(this.acknowledgementLatency, key, nanos);
+
+        if (this.parent != null)
+            this.parent.requestAcknowledged(key, nanos);
+    }
+
+    public void requestExpired() {
+        this.expiredRequests.increment();
+
+        if (this.parent != null)
+            this.parent.requestExpired();
+    }
+
+    public void requestDeduplicated() {
+        this.deduplicatedRequests.increment();
+
+        if (this.parent != null)
+            this.parent.requestDeduplicated();
+    }
+
+    public void responseReceived(RegistryKey key, long nanos) {
+        record(this.responseLatency, key, nanos);
+
+        if (this.parent != null)
+            this.parent.responseReceived(key, nanos);
+    }
+
+    public void handshakeCompleted(long nanos) {
+        this.handshakeDuration.record(nanos);
+
+        if (this.parent != null)
+            this.parent.handshakeCompleted(nanos);
+    }
+
+    public void packetEncrypted(long nanos) {
+        this.encryptionTime.record(nanos);
+
+        if (this.parent != null)
+            this.parent.packetEncrypted(nanos);
+    }
+
+    public void requestServed(RegistryKey key, long nanos) {
+        record(this.requestLatency, key, nanos);
+
+        if (this.parent != null)
+            this.parent.requestServed(key, nanos);
+    }
+
+    /**
+     * Computes a percentile of the response latency of a packet type.
+     *
+     * @return latency at the percentile in nanoseconds, or -1 if less than {@code minimumCount} responses were received.
+     */
+    public long responseLatency(RegistryKey key, double percentile, long minimumCount) {
+        LatencyRecorder recorder = this.responseLatency.get(key);
+        return recorder == null ? -1 : recorder.percentile(percentile, minimumCount);
+    }
+
+    public NetworkMetrics snapshot(long queuedPackets, long queuedHandshakes) {
+        return new NetworkMetrics(this.packetsIn.sum(), this.packetsOut.sum(), this.bytesIn.sum(), this.bytesOut.sum(),
+                Math.max(this.inFlightRequests.sum(), 0), this.timeouts.sum(), this.acknowledgements.sum(),
+                this.expiredRequests.sum(), this.deduplicatedRequests.sum(), queuedPackets, queuedHandshakes,
+                this.handshakeDuration.snapshot(), this.encryptionTime.snapshot(),
+                snapshot(this.requestLatency), snapshot(this.acknowledgementLatency), snapshot(this.responseLatency));
+    }
+
+    private static void record(ConcurrentMap<RegistryKey, LatencyRecorder> recorders, RegistryKey key, long nanos) {
+        LatencyRecorder recorder = recorders.get(key); // Avoids locking the bin once the recorder exists.
+        if (recorder == null)
+            recorder = recorders.computeIfAbsent(key, unused -> new LatencyRecorder());
+
+        recorder.record(nanos);
+    }
+
+    private static Map<RegistryKey, LatencySnapshot> snapshot(ConcurrentMap<RegistryKey, LatencyRecorder> recorders) {
+        Map<RegistryKey, LatencySnapshot> snapshots = new HashMap<>();
+        recorders.forEach((key, recorder) -> snapshots.put(key, recorder.snapshot()));
+
+        return Map.copyOf(snapshots);
+    }
+}
@@ -11,6 +11,8 @@ import org.jetbrains.annotations.NotNull;
 import java.util.UUID;
 
 public class Header implements fr.atlasworld.protocol.packet.header.Header, ResponseHeader, RequestHeader {
+    private static final Priority[] PRIORITIES = Priority.values();
+
     private final HeaderWrapper.Header header;
     private final boolean responseHeader;
 
@@ -62,6 +64,11 @@ public class Header implements fr.atlasworld.protocol.packet.header.Header, Resp
                         new UUID(this.header.getIdMostSig(), this.header.getIdLeastSig())));
     }
 
+    @Override
+    public @NotNull Priority priority() {
+        return Header.priority(this.header);
+    }
+
     public boolean isResponseHeader() {
         return this.responseHeader;
     }
@@ -85,5 +92,15 @@ public class Header implements fr.atlasworld.protocol.packet.header.Header, Resp
         builder.setRequest(this.header.getRequest());
         builder.setCode(this.header.getCode());
         builder.setTimeout(this.header.getTimeout());
+
+        if (this.header.hasPriority())
+            builder.setPriority(this.header.getPriority());
+    }
+
+    public static Priority priority(@NotNull HeaderWrapper.Header header) {
+        if (!header.hasPriority() || header.getPriority() >= PRIORITIES.length)
+            return Priority.NORMAL;
+
+        return PRIORITIES[header.getPriority()];
     }
 }
@@ -5,6 +5,7 @@ import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
 import fr.atlasworld.protocol.connection.Connection;
 import fr.atlasworld.protocol.connection.ConnectionImpl;
+import fr.atlasworld.registry.RegistryKey;
 import org.jetbrains.annotations.NotNull;
 
 import java.lang.ref.WeakReference;
@@ -13,6 +14,7 @@ import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class PacketBase implements GenericPacket, Response, Request {
     private static final Map<Class<? extends Message>, WeakReference<Method>> CACHE =
@@ -21,11 +23,17 @@ public class PacketBase implements GenericPacket, Response, Request {
     private final Header header;
     private final ConnectionImpl source;
     private final byte[] payload;
+    private final long receivedAt;
 
     public PacketBase(Header header, ConnectionImpl source, byte[] payload) {
+        this(header, source, payload, System.nanoTime());
+    }
+
+    public PacketBase(Header header, ConnectionImpl source, byte[] payload, long receivedAt) {
         this.header = header;
         this.source = source;
         this.payload = payload;
+        this.receivedAt = receivedAt;
     }
 
     @Override
@@ -56,10 +64,37 @@ public class PacketBase implements GenericPacket, Response, Request {
         }
     }
 
-    public PacketHandlerContextImpl createHandlingContext() {
+    public int payloadSize() {
+        return this.payload.length;
+    }
+
+    /**
+     * Retrieve the serialized payload, must not be modified.
+     */
+    public byte[] payloadBytes() {
+        return this.payload;
+    }
+
+    /**
+     * Time at which the packet was decoded, in nanoseconds.
+     */
+    public long receivedAt() {
+        return this.receivedAt;
+    }
+
+    /**
+     * Checks whether the deadline of the request passed, requests without timeout never expire.
+     */
+    public boolean expired(long now) {
+        long timeout = this.header.timeout();
+        return timeout > 0 && now - this.receivedAt > TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    public PacketHandlerContextImpl createHandlingContext(RegistryKey request) {
         Preconditions.checkArgument(this.header.isRequestHeader(), "Only request can be handled!");
 
-        return new PacketHandlerContextImpl(this.source, this.source.socket(), this.header.uniqueId());
+        return new PacketHandlerContextImpl(this.source, this.source.socket(), this.header.uniqueId(), this.header.priority(),
+                request, this.receivedAt, this.header.timeout());
     }
 
     private Method determineMethod(Class<? extends Message> type) throws NoSuchMethodException {
@@ -3,10 +3,11 @@ package fr.atlasworld.protocol.packet;
 import fr.atlasworld.protocol.Side;
 import fr.atlasworld.protocol.connection.Connection;
 import fr.atlasworld.protocol.connection.ConnectionImpl;
-import fr.atlasworld.protocol.socket.ClientSocketImpl;
 import fr.atlasworld.protocol.socket.Socket;
+import fr.atlasworld.registry.RegistryKey;
 import org.jetbrains.annotations.NotNull;
 
+import java.time.Duration;
 import java.util.UUID;
 
 public class PacketHandlerContextImpl implements PacketHandlerContext {
@@ -14,20 +15,34 @@ public class PacketHandlerContextImpl implements PacketHandlerContext {
     private final ResponderImpl responder;
     private final Socket socket;
 
-    public PacketHandlerContextImpl(Connection connection, Socket socket, UUID packetIdentifier) {
+    public PacketHandlerContextImpl(ConnectionImpl connection, Socket socket, UUID packetIdentifier, Priority priority,
+                                    RegistryKey request, long receivedAt, long timeout) {
         this.connection = connection;
         this.socket = socket;
 
-        this.responder = connection instanceof ConnectionImpl ?
-                ((ConnectionImpl) connection).createResponder(packetIdentifier) :
-                ((ClientSocketImpl) connection).connection().createResponder(packetIdentifier);
+        this.responder = connection.createResponder(packetIdentifier, priority, request, receivedAt, timeout);
     }
 
     @Override
-    public Responder responder() {
+    public ResponderImpl responder() {
         return this.responder;
     }
 
+    @Override
+    public boolean cancelled() {
+        return this.responder.cancelled();
+    }
+
+    @Override
+    public @NotNull Duration remainingTime() {
+        return Duration.ofNanos(Math.max(this.responder.remainingNanos(), 0));
+    }
+
+    @Override
+    public boolean expired() {
+        return this.responder.remainingNanos() <= 0;
+    }
+
     @Override
     public @NotNull Side side() {
         return this.socket.side();
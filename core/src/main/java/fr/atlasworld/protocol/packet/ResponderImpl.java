@@ -3,27 +3,99 @@ package fr.atlasworld.protocol.packet;
 import com.google.common.base.Preconditions;
 import com.google.protobuf.Message;
 import fr.atlasworld.protocol.ApiBridge;
+import fr.atlasworld.protocol.connection.ConnectionImpl;
 import fr.atlasworld.protocol.generated.AcknowledgementWrapper;
 import fr.atlasworld.protocol.generated.EmptyWrapper;
 import fr.atlasworld.protocol.handler.PacketPackage;
-import io.netty.channel.Channel;
+import fr.atlasworld.protocol.handler.RequestDeduplicator;
+import fr.atlasworld.protocol.handler.ResponseCache;
+import fr.atlasworld.registry.RegistryKey;
 import org.jetbrains.annotations.NotNull;
 
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 // TODO
 public class ResponderImpl implements Responder {
     public static final Duration DEFAULT_ACK_TIMEOUT = Duration.of(2, ChronoUnit.MINUTES);
 
-    private final Channel channel;
+    private final ConnectionImpl connection;
     private final UUID requestIdentifier;
+    private final Priority priority;
 
-    public ResponderImpl(Channel channel, UUID requestIdentifier) {
-        this.channel = channel;
+    // Metrics
+    private final RegistryKey request;
+    private final long receivedAt;
+
+    private volatile boolean cancelled;
+    private volatile long deadline; // Nanoseconds, Long.MAX_VALUE when the request has no timeout.
+    private volatile RequestDeduplicator.Entry deduplication; // Null when not deduplicating.
+    private volatile ResponseCache cache; // Null when the responses of the request are not cached.
+    private volatile byte[] cacheKey;
+
+    public ResponderImpl(ConnectionImpl connection, UUID requestIdentifier, Priority priority, RegistryKey request,
+                         long receivedAt, long timeout) {
+        this.connection = connection;
         this.requestIdentifier = requestIdentifier;
+        this.priority = priority;
+
+        this.request = request;
+        this.receivedAt = receivedAt;
+
+        this.deadline = timeout > 0 ? receivedAt + TimeUnit.MILLISECONDS.toNanos(timeout) : Long.MAX_VALUE;
+    }
+
+    public UUID requestIdentifier() {
+        return this.requestIdentifier;
+    }
+
+    public boolean cancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Cancels the request, called when the remote cancelled it.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Records the response in the deduplication entry of the request once responding.
+     */
+    public void deduplicate(RequestDeduplicator.Entry entry) {
+        this.deduplication = entry;
+    }
+
+    /**
+     * Caches the response once responding.
+     *
+     * @param cache response cache of the packet type.
+     * @param payload serialized payload of the request.
+     */
+    public void cache(ResponseCache cache, byte[] payload) {
+        this.cacheKey = payload;
+        this.cache = cache;
+    }
+
+    /**
+     * Stops serving the request without responding.
+     */
+    public void release() {
+        this.connection.requestServed(this.requestIdentifier);
+    }
+
+    /**
+     * Time left before the remote stops awaiting the response, in nanoseconds.
+     *
+     * @return remaining time, negative if the deadline passed, or {@link Long#MAX_VALUE} if the request has no timeout.
+     */
+    public long remainingNanos() {
+        long deadline = this.deadline;
+        return deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
     }
 
     @Override
@@ -35,14 +107,18 @@ public class ResponderImpl implements Responder {
     public CompletableFuture<Void> acknowledge(@NotNull Duration timeout) {
         Preconditions.checkNotNull(timeout);
 
-        if (!this.channel.isActive())
+        if (this.cancelled || !this.connection.channel().isActive())
             return CompletableFuture.completedFuture(null);
 
+        if (this.deadline != Long.MAX_VALUE) // The remote now waits for the acknowledged timeout.
+            this.deadline = System.nanoTime() + timeout.toNanos();
+
         AcknowledgementWrapper.Acknowledge acknowledge = AcknowledgementWrapper.Acknowledge
                 .newBuilder().setTimeout(timeout.toMillis()).build();
-        PacketPackage packet = PacketPackage.createResponsePackage(this.requestIdentifier, (short) 0, acknowledge);
+        PacketPackage packet = PacketPackage.createResponsePackage(this.requestIdentifier, (short) 0, acknowledge,
+                Priority.HIGH); // Acknowledgements are tiny, don't let them wait behind bulk transfers.
 
-        return ApiBridge.waitOnChannel(this.channel.writeAndFlush(packet));
+        return ApiBridge.waitOnChannel(this.connection.channel().writeAndFlush(packet));
     }
 
     @Override
@@ -50,11 +126,27 @@ public class ResponderImpl implements Responder {
         Preconditions.checkNotNull(response);
         Preconditions.checkArgument(code != 0, "Acknowledge code is not allowed, use #acknowledge().");
 
-        if (!this.channel.isActive())
+        RequestDeduplicator.Entry deduplication = this.deduplication;
+        if (deduplication != null) // Even when cancelled, the request was handled.
+            deduplication.complete(response, code);
+
+        byte[] payload = null;
+        ResponseCache cache = this.cache;
+        if (cache != null && ResponseCache.cacheable(code)) {
+            payload = response.toByteArray(); // Serialized once, for the cache and the packet.
+            cache.put(this.connection.identifier(), this.cacheKey, new ResponseCache.CachedResponse(code, payload));
+        }
+
+        this.connection.requestServed(this.requestIdentifier);
+        if (this.cancelled || !this.connection.channel().isActive()) // Nobody awaits the response anymore.
             return CompletableFuture.completedFuture(null);
 
-        PacketPackage packet = PacketPackage.createResponsePackage(this.requestIdentifier, code, response);
-        return ApiBridge.waitOnChannel(this.channel.writeAndFlush(packet));
+        PacketPackage packet = payload != null ?
+                PacketPackage.createResponsePackage(this.requestIdentifier, code, payload, this.priority) :
+                PacketPackage.createResponsePackage(this.requestIdentifier, code, response, this.priority);
+        this.connection.metricsRecorder().requestServed(this.request, System.nanoTime() - this.receivedAt);
+
+        return ApiBridge.waitOnChannel(this.connection.channel().writeAndFlush(packet));
     }
 
     @Override
@@ -0,0 +1,97 @@
+package fr.atlasworld.protocol.socket;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ClientRouterImpl implements ClientRouter {
+    private final List<Node> nodes; // Copy on write, routing is far more frequent than changing sockets.
+
+    public ClientRouterImpl() {
+        this.nodes = new CopyOnWriteArrayList<>();
+    }
+
+    @Override
+    public synchronized void addSocket(@NotNull ClientSocket socket) {
+        Preconditions.checkNotNull(socket);
+
+        InetSocketAddress address = socket.address();
+        String identifier = address.getHostString() + ":" + address.getPort();
+
+        for (Node node : this.nodes) {
+            Preconditions.checkArgument(node.socket() != socket, "Socket was already added!");
+            Preconditions.checkArgument(!node.identifier().equals(identifier),
+                    "A socket with the address '" + identifier + "' was already added!");
+        }
+
+        this.nodes.add(new Node(socket, identifier, identifier.hashCode()));
+    }
+
+    @Override
+    public synchronized boolean removeSocket(@NotNull ClientSocket socket) {
+        Preconditions.checkNotNull(socket);
+
+        return this.nodes.removeIf(node -> node.socket() == socket);
+    }
+
+    @Override
+    public @NotNull List<ClientSocket> sockets() {
+        return this.nodes.stream().map(Node::socket).toList();
+    }
+
+    @Override
+    public @NotNull ClientSocket route(@NotNull Object key) {
+        Preconditions.checkNotNull(key);
+
+        int keyHash = key.hashCode();
+        Node selected = null;
+        long selectedWeight = 0;
+
+        for (Node node : this.nodes) { // Highest random weight, skipping disconnected sockets.
+            long weight = weight(node.hash(), keyHash);
+            if ((selected != null && Long.compareUnsigned(weight, selectedWeight) <= 0) || !connected(node.socket()))
+                continue;
+
+            selected = node;
+            selectedWeight = weight;
+        }
+
+        if (selected == null)
+            throw new IllegalStateException("No socket available!");
+
+        return selected.socket();
+    }
+
+    private static boolean connected(ClientSocket socket) {
+        if (!socket.running())
+            return false;
+
+        try {
+            return socket.connection().connected();
+        } catch (IllegalStateException e) { // Still connecting.
+            return false;
+        }
+    }
+
+    /**
+     * Mixes the hashes of a socket and of a key,
+     * using the finalizer of MurmurHash3 so every bit of the input affects the weight.
+     */
+    private static long weight(int nodeHash, int keyHash) {
+        long weight = ((long) nodeHash << 32) | (keyHash & 0xFFFFFFFFL);
+
+        weight ^= weight >>> 33;
+        weight *= 0xFF51AFD7ED558CCDL;
+        weight ^= weight >>> 33;
+        weight *= 0xC4CEB9FE1A85EC53L;
+        weight ^= weight >>> 33;
+
+        return weight;
+    }
+
+    private record Node(ClientSocket socket, String identifier, int hash) {
+    }
+}
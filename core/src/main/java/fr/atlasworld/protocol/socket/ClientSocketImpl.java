@@ -1,44 +1,69 @@
 package fr.atlasworld.protocol.socket;
 
-import fr.atlasworld.common.security.Encryptor;
-import fr.atlasworld.common.security.encryptor.KeyPairEncryptor;
+import com.google.common.base.Preconditions;
+import com.google.protobuf.Message;
 import fr.atlasworld.event.api.Event;
 import fr.atlasworld.event.api.EventNode;
 import fr.atlasworld.protocol.ApiBridge;
 import fr.atlasworld.protocol.ServerInfo;
 import fr.atlasworld.protocol.Side;
+import fr.atlasworld.protocol.connection.Compression;
+import fr.atlasworld.protocol.connection.Connection;
 import fr.atlasworld.protocol.connection.ConnectionImpl;
+import fr.atlasworld.protocol.connection.ConnectionPool;
+import fr.atlasworld.protocol.connection.EndpointHealth;
+import fr.atlasworld.protocol.connection.PoolStrategy;
+import fr.atlasworld.protocol.connection.ReconnectPolicy;
 import fr.atlasworld.protocol.event.NetworkEvent;
 import fr.atlasworld.protocol.event.socket.SocketClosedEvent;
 import fr.atlasworld.protocol.event.socket.SocketOpenedEvent;
+import fr.atlasworld.protocol.handler.PacketRateLimit;
+import fr.atlasworld.protocol.handler.RateLimits;
+import fr.atlasworld.protocol.handler.ResponseCache;
+import fr.atlasworld.protocol.handshake.SessionTicket;
+import fr.atlasworld.protocol.metrics.MetricsRecorder;
+import fr.atlasworld.protocol.metrics.NetworkMetrics;
 import fr.atlasworld.protocol.packet.Packet;
 import fr.atlasworld.protocol.security.HandshakeHandler;
 import fr.atlasworld.protocol.socket.init.ClientSocketInitializer;
 import fr.atlasworld.registry.Registry;
+import fr.atlasworld.registry.RegistryKey;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.net.InetSocketAddress;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Predicate;
 
 public class ClientSocketImpl implements ClientSocket {
     private final UUID identifier;
     private final KeyPair sessionKeyPair;
-    private final Encryptor sessionEncryptor;
 
-    private final InetSocketAddress address;
+    private final List<EndpointHealth> endpoints;
 
     private final Registry<Packet> registry;
+    private final Map<RegistryKey, PacketRateLimit> packetRateLimits;
     private final Predicate<ServerInfo> compatibilityResolver;
 
     private final EventNode<Event> rootNode;
@@ -46,29 +71,61 @@ public class ClientSocketImpl implements ClientSocket {
 
     private final long defaultTimeout;
     private final long handshakeTimeout;
+    private final long pingInterval;
+    private final long readIdleTimeout;
+    private final long writeIdleTimeout;
+
+    private final List<Compression> compressionAlgorithms;
+    private final int compressionThreshold;
+    private final Map<String, byte[]> compressionDictionaries;
 
     private final boolean customAuth;
     private final HandshakeHandler handler;
 
     private final Bootstrap bootstrap;
+    private final MetricsRecorder metrics;
+
+    private final int poolSize;
+    private final ConnectionPool pool;
+    private final AtomicReferenceArray<ConnectionImpl> connections;
+    private final AtomicInteger openConnections; // Connections connected, connecting or awaiting reconnection.
+
+    private final ReconnectPolicy reconnectPolicy;
+    private final Set<RegistryKey> idempotentPackets;
+    private final double hedgingPercentile;
+    private final Map<RegistryKey, ResponseCache> responseCaches;
+    private final AtomicIntegerArray reconnectAttempts;
+    private final AtomicReferenceArray<ScheduledFuture<?>> reconnects;
+    private final AtomicReferenceArray<ConnectionRace> races;
+    private final AtomicReferenceArray<UUID> lostConnections; // Last connection lost by each slot.
+    private final ConcurrentMap<ConnectionImpl, ConnectionRace> racingConnections; // Still in handshake.
 
     private EventLoopGroup workerGroup;
-    private ConnectionImpl connection;
+    private volatile Bootstrap activeBootstrap;
+    private volatile SessionTicket sessionTicket;
 
     private volatile boolean running;
+    private volatile boolean opened;
+    private volatile boolean stopping;
 
-    public ClientSocketImpl(InetSocketAddress address, UUID identifier, KeyPair sessionKeyPair,
+    public ClientSocketImpl(List<InetSocketAddress> addresses, UUID identifier, KeyPair sessionKeyPair,
                             boolean customConnection, Registry<Packet> registry,
                             Predicate<ServerInfo> compatibilityResolver, EventNode<Event> rootNode,
                             Bootstrap bootstrap, long timeout, long handshakeTimeout, HandshakeHandler handler,
-                            int rateLimit) throws GeneralSecurityException {
+                            RateLimits rateLimits, Map<RegistryKey, PacketRateLimit> packetRateLimits,
+                            List<Compression> compressionAlgorithms, int compressionThreshold,
+                            Map<String, byte[]> compressionDictionaries, long pingInterval,
+                            long readIdleTimeout, long writeIdleTimeout, int poolSize,
+                            PoolStrategy poolStrategy, ReconnectPolicy reconnectPolicy,
+                            Set<RegistryKey> idempotentPackets, double hedgingPercentile,
+                            Map<RegistryKey, ResponseCache.Policy> responseCaches) throws GeneralSecurityException {
 
         this.identifier = identifier;
-        this.address = address;
+        this.endpoints = addresses.stream().map(EndpointHealth::new).toList();
         this.sessionKeyPair = sessionKeyPair;
-        this.sessionEncryptor = new KeyPairEncryptor(this.sessionKeyPair);
 
         this.registry = registry;
+        this.packetRateLimits = packetRateLimits;
         this.compatibilityResolver = compatibilityResolver;
 
         this.rootNode = rootNode;
@@ -77,13 +134,40 @@ public class ClientSocketImpl implements ClientSocket {
 
         this.defaultTimeout = timeout;
         this.handshakeTimeout = handshakeTimeout;
+        this.pingInterval = pingInterval;
+        this.readIdleTimeout = readIdleTimeout;
+        this.writeIdleTimeout = writeIdleTimeout;
+
+        this.compressionAlgorithms = compressionAlgorithms;
+        this.compressionThreshold = compressionThreshold;
+        this.compressionDictionaries = compressionDictionaries;
 
         this.customAuth = customConnection;
         this.handler = handler;
 
+        this.metrics = new MetricsRecorder(null);
+
+        this.poolSize = poolSize;
+        this.connections = new AtomicReferenceArray<>(poolSize);
+        this.openConnections = new AtomicInteger();
+
+        this.reconnectPolicy = reconnectPolicy;
+        this.idempotentPackets = idempotentPackets;
+        this.hedgingPercentile = hedgingPercentile;
+        this.responseCaches = ResponseCache.create(responseCaches);
+        this.reconnectAttempts = new AtomicIntegerArray(poolSize);
+        this.reconnects = new AtomicReferenceArray<>(poolSize);
+        this.races = new AtomicReferenceArray<>(poolSize);
+        this.lostConnections = new AtomicReferenceArray<>(poolSize);
+        this.racingConnections = new ConcurrentHashMap<>();
+
+        // Reconnecting clients need a connection outliving the channels.
+        this.pool = poolSize > 1 || reconnectPolicy != null ?
+                new ConnectionPool(this, poolStrategy, timeout, reconnectPolicy) : null;
+
         this.bootstrap = bootstrap;
         this.bootstrap.channel(NioSocketChannel.class);
-        this.bootstrap.handler(new ClientSocketInitializer(this, rateLimit));
+        this.bootstrap.handler(new ClientSocketInitializer(this, rateLimits));
     }
 
     @Override
@@ -103,7 +187,18 @@ public class ClientSocketImpl implements ClientSocket {
 
     @Override
     public InetSocketAddress address() {
-        return this.address;
+        ConnectionImpl connection = this.connections.get(0);
+        return connection != null ? connection.remoteAddress() : this.endpoints.getFirst().address();
+    }
+
+    @Override
+    public NetworkMetrics metrics() {
+        long queuedPackets = 0;
+        for (ConnectionImpl connection : this.activeConnections()) {
+            queuedPackets += connection.queuedPackets();
+        }
+
+        return this.metrics.snapshot(queuedPackets, 0);
     }
 
     @Override
@@ -112,49 +207,261 @@ public class ClientSocketImpl implements ClientSocket {
             throw new IllegalStateException("Socket is already running!");
 
         this.running = true;
+        this.opened = false;
+        this.stopping = false;
 
         if (this.workerGroup == null || this.workerGroup.isTerminated() || this.workerGroup.isShuttingDown())
             this.workerGroup = new NioEventLoopGroup();
 
-        ChannelFuture future = this.bootstrap
-                .group(this.workerGroup)
-                .connect(this.address);
+        this.activeBootstrap = this.bootstrap.clone(this.workerGroup); // Group can only be set once per bootstrap.
+        this.openConnections.set(this.poolSize);
+
+        CompletableFuture<?>[] futures = new CompletableFuture[this.poolSize];
+        for (int slot = 0; slot < this.poolSize; slot++) {
+            this.reconnectAttempts.set(slot, 0);
+            futures[slot] = this.connect(slot);
+        }
+
+        return CompletableFuture.allOf(futures).whenComplete((unused, cause) -> {
+            if (cause != null) { // Don't keep a partial pool around.
+                for (ConnectionImpl connection : this.activeConnections()) {
+                    connection.channel().close();
+                }
 
-        future.addListener((ChannelFutureListener) bindFuture -> {
-            if (!bindFuture.isSuccess()) {
-                this.running = false;
-                this.cleanUp();
                 return;
             }
 
+            this.opened = true;
             CompletableFuture.runAsync(() -> {
                 this.rootNode.callEvent(new SocketOpenedEvent(this));
             });
-
-            this.connection = new ConnectionImpl(future.channel(), this.identifier, this,
-                    this.defaultTimeout, this.customAuth, this.rootNode);
-
-            this.connection.channel().closeFuture().addListener(closeFuture -> {
-                this.running = false;
-                this.connection = null;
-                this.cleanUp();
-
-                this.rootNode.callEvent(new SocketClosedEvent(this));
-            });
         });
-
-        return ApiBridge.waitOnChannel(future);
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public CompletableFuture<Void> stop(boolean interrupt) {
         if (!this.running)
             throw new IllegalStateException("Socket is not running!");
 
         if (!interrupt)
-            this.connection.disconnect("Client Stopping!").join();
+            this.disconnect("Client Stopping!").join();
+
+        return CompletableFuture.allOf(this.halt().stream()
+                .map(connection -> ApiBridge.waitOnChannel(connection.channel().close()))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Disconnects all the connections of the client, without reconnecting.
+     *
+     * @param reason reason of the disconnection.
+     *
+     * @return future completed once all connections are disconnected.
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Void> disconnect(String reason) {
+        return CompletableFuture.allOf(this.halt().stream()
+                .filter(connection -> connection.channel().isActive())
+                .map(connection -> connection.disconnect(reason))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    @Override
+    public void invalidateResponses(@NotNull RegistryKey packet) {
+        Preconditions.checkNotNull(packet);
+
+        ResponseCache cache = this.responseCaches.get(packet);
+        if (cache != null)
+            cache.invalidateAll();
+    }
+
+    @Override
+    public void invalidateResponse(@NotNull RegistryKey packet, @NotNull Message payload) {
+        Preconditions.checkNotNull(packet);
+        Preconditions.checkNotNull(payload);
+
+        ResponseCache cache = this.responseCaches.get(packet);
+        if (cache != null)
+            cache.invalidate(payload.toByteArray());
+    }
+
+    /**
+     * Stops reconnecting and cancels the scheduled reconnections.
+     *
+     * @return connections still open.
+     */
+    private List<ConnectionImpl> halt() {
+        this.stopping = true;
+
+        int cancelled = 0;
+        synchronized (this.reconnects) {
+            for (int slot = 0; slot < this.poolSize; slot++) {
+                ScheduledFuture<?> reconnect = this.reconnects.getAndSet(slot, null);
+                if (reconnect != null && reconnect.cancel(false))
+                    cancelled++;
+            }
+        }
+
+        for (int i = 0; i < cancelled; i++) {
+            this.releaseSlot();
+        }
+
+        for (int slot = 0; slot < this.poolSize; slot++) {
+            ConnectionRace race = this.races.get(slot);
+            if (race != null)
+                race.cancel();
+        }
+
+        return this.activeConnections();
+    }
+
+    private CompletableFuture<Void> connect(int slot) {
+        ConnectionRace race = new ConnectionRace(this, this.endpoints, this.lostConnections.get(slot));
+        this.races.set(slot, race);
+
+        CompletableFuture<Void> future = race.start().handle((connection, cause) -> {
+            this.races.compareAndSet(slot, race, null);
+
+            if (cause != null) {
+                this.connectionLost(slot, null);
+                throw new CompletionException(cause);
+            }
+
+            long connectedAt = System.nanoTime();
+            this.connections.set(slot, connection);
+            connection.channel().closeFuture().addListener(closeFuture -> {
+                this.connections.compareAndSet(slot, connection, null);
+                this.lostConnections.set(slot, connection.connectionId()); // Evicted by the server once reconnected.
+
+                if (this.stableConnection(connectedAt)) // Peers dropping connections right away keep backing off.
+                    this.reconnectAttempts.set(slot, 0);
+
+                if (!this.stopping) // Fail over to other endpoints first.
+                    race.winnerEndpoint().failure();
+
+                this.connectionLost(slot, race.winnerEndpoint());
+            });
+
+            if (this.stopping) { // Stopped while racing, the slot is released once closed.
+                connection.channel().close();
+                return null;
+            }
+
+            if (this.pool != null)
+                this.pool.flush(); // Send requests buffered while reconnecting.
+
+            return null;
+        });
+
+        if (this.stopping) // Halted while starting the race.
+            race.cancel();
+
+        return future;
+    }
+
+    private void connectionLost(int slot, @Nullable EndpointHealth lostEndpoint) {
+        if (this.reconnectPolicy == null || !this.opened || this.stopping) {
+            this.releaseSlot();
+            return;
+        }
+
+        int attempt = this.reconnectAttempts.getAndIncrement(slot);
+        long delay = attempt == 0 && this.failoverAvailable(lostEndpoint) ? 0 : // Fail over right away.
+                this.reconnectPolicy.delay(attempt);
+
+        ApiBridge.LOGGER.debug("Reconnecting in {}ms (attempt {}).", delay, attempt + 1);
+
+        synchronized (this.reconnects) {
+            if (this.stopping) { // Halted since checked.
+                this.releaseSlot();
+                return;
+            }
+
+            this.reconnects.set(slot, this.workerGroup.schedule(() -> this.reconnect(slot), delay, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private boolean stableConnection(long connectedAt) {
+        if (this.reconnectPolicy == null)
+            return true;
 
-        return ApiBridge.waitOnChannel(this.connection.channel().close());
+        long minimumUptime = Math.max(this.reconnectPolicy.initialDelay(), this.pingInterval);
+        return System.nanoTime() - connectedAt >= TimeUnit.MILLISECONDS.toNanos(minimumUptime);
+    }
+
+    /**
+     * Checks whether the next race starts with another endpoint than the lost one.
+     */
+    private boolean failoverAvailable(@Nullable EndpointHealth lostEndpoint) {
+        if (lostEndpoint == null || this.endpoints.size() < 2) // Every endpoint was just tried.
+            return false;
+
+        return this.endpoints.stream().min(EndpointHealth.HEALTHIEST_FIRST).orElse(lostEndpoint) != lostEndpoint;
+    }
+
+    private void reconnect(int slot) {
+        synchronized (this.reconnects) {
+            if (this.reconnects.getAndSet(slot, null) == null) // Cancelled
+                return;
+        }
+
+        this.connect(slot);
+    }
+
+    /**
+     * Called once a connection finished its handshake.
+     *
+     * @param connection connection which finished its handshake.
+     */
+    public void connectionReady(ConnectionImpl connection) {
+        ConnectionRace race = this.racingConnections.remove(connection);
+        if (race != null)
+            race.handshakeFinished(connection);
+    }
+
+    ChannelFuture connect(InetSocketAddress address) {
+        return this.activeBootstrap.connect(address);
+    }
+
+    ScheduledFuture<?> schedule(Runnable task, long delay) {
+        return this.workerGroup.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    ConnectionImpl createConnection(Channel channel, ConnectionRace race) {
+        long timeout = this.pool != null ? this.pool.timeout().toMillis() : this.defaultTimeout;
+        // Each pooled connection has its own identifier, so the server doesn't take them for reconnections of each other.
+        ConnectionImpl connection = new ConnectionImpl(channel, this.identifier, UUID.randomUUID(), this,
+                timeout, this.customAuth, this.rootNode, this.metrics, this.responseCaches);
+        connection.replaces(race.replacedConnection());
+
+        this.racingConnections.put(connection, race);
+        return connection;
+    }
+
+    void raceFinished(ConnectionImpl connection) {
+        this.racingConnections.remove(connection);
+    }
+
+    private void releaseSlot() {
+        if (this.openConnections.decrementAndGet() > 0)
+            return;
+
+        this.running = false;
+        this.cleanUp();
+
+        this.rootNode.callEvent(new SocketClosedEvent(this));
+    }
+
+    private List<ConnectionImpl> activeConnections() {
+        List<ConnectionImpl> connections = new ArrayList<>(this.poolSize);
+        for (int slot = 0; slot < this.poolSize; slot++) {
+            ConnectionImpl connection = this.connections.get(slot);
+            if (connection != null)
+                connections.add(connection);
+        }
+
+        return connections;
     }
 
     private void cleanUp() {
@@ -165,24 +472,134 @@ public class ClientSocketImpl implements ClientSocket {
         return this.registry;
     }
 
+    public Map<RegistryKey, PacketRateLimit> packetRateLimits() {
+        return this.packetRateLimits;
+    }
+
+    public long handshakeTimeout() {
+        return this.handshakeTimeout;
+    }
+
+    public long pingInterval() {
+        return this.pingInterval;
+    }
+
+    public long readIdleTimeout() {
+        return this.readIdleTimeout;
+    }
+
+    public long writeIdleTimeout() {
+        return this.writeIdleTimeout;
+    }
+
+    public MetricsRecorder metricsRecorder() {
+        return this.metrics;
+    }
+
     @NotNull
     @Override
-    public ConnectionImpl connection() {
-        if (!this.running || this.connection == null)
+    public Connection connection() {
+        if (!this.running)
             throw new IllegalStateException("Socket is not running!");
 
-        return this.connection;
+        if (this.pool != null)
+            return this.pool;
+
+        ConnectionImpl connection = this.connections.get(0);
+        if (connection == null)
+            throw new IllegalStateException("Socket is not running!");
+
+        return connection;
+    }
+
+    /**
+     * Retrieve the pooled connection using the specified channel.
+     *
+     * @param channel channel of the connection.
+     *
+     * @return connection of the channel.
+     *
+     * @throws IllegalStateException if the channel isn't part of the pool.
+     */
+    public ConnectionImpl connection(Channel channel) {
+        for (ConnectionImpl connection : this.racingConnections.keySet()) {
+            if (connection.channel() == channel)
+                return connection;
+        }
+
+        for (ConnectionImpl connection : this.activeConnections()) {
+            if (connection.channel() == channel)
+                return connection;
+        }
+
+        throw new IllegalStateException("Unknown connection channel!");
+    }
+
+    /**
+     * Retrieve the pooled connection at the specified slot.
+     *
+     * @param slot slot of the connection, between 0 and {@link #poolSize()} excluded.
+     *
+     * @return connection at the slot, or null if the slot is not connected.
+     */
+    @Nullable
+    public ConnectionImpl pooledConnection(int slot) {
+        return this.connections.get(slot);
+    }
+
+    public int poolSize() {
+        return this.poolSize;
+    }
+
+    public boolean idempotent(RegistryKey packet) {
+        return this.idempotentPackets.contains(packet);
+    }
+
+    /**
+     * Percentile of the response latency after which idempotent requests are hedged, {@code 0} if disabled.
+     */
+    public double hedgingPercentile() {
+        return this.hedgingPercentile;
     }
 
     public EventNode<Event> rootNode() {
         return this.rootNode;
     }
 
+    public List<Compression> compressionAlgorithms() {
+        return this.compressionAlgorithms;
+    }
+
+    public int compressionThreshold() {
+        return this.compressionThreshold;
+    }
+
+    public Map<String, byte[]> compressionDictionaries() {
+        return this.compressionDictionaries;
+    }
+
+    /**
+     * Takes the stored session ticket, tickets can only be used once.
+     *
+     * @return stored session ticket, or null if there is none or if it expired.
+     */
+    @Nullable
+    public synchronized SessionTicket takeSessionTicket() {
+        SessionTicket ticket = this.sessionTicket;
+        this.sessionTicket = null;
+
+        return ticket == null || ticket.expired() ? null : ticket;
+    }
+
+    public synchronized void storeSessionTicket(SessionTicket ticket) {
+        this.sessionTicket = ticket;
+    }
+
     public boolean resolveCompatibility(ServerInfo serverInfo) {
         return this.compatibilityResolver.test(serverInfo);
     }
 
-    public Encryptor clientEncryptor() {
-        return this.sessionEncryptor;
+    public KeyPair sessionKeyPair() {
+        return this.sessionKeyPair;
     }
 }
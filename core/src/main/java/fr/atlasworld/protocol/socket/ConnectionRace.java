@@ -0,0 +1,218 @@
+package fr.atlasworld.protocol.socket;
+
+import fr.atlasworld.protocol.ApiBridge;
+import fr.atlasworld.protocol.connection.ConnectionImpl;
+import fr.atlasworld.protocol.connection.EndpointHealth;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Races connections to the endpoints of a server for a pool slot, keeping the first one to finish its handshake.
+ * <p>
+ * Endpoints are tried healthiest first, like Happy Eyeballs (RFC 8305) a new attempt is started
+ * every {@value #ATTEMPT_DELAY}ms, or as soon as all the ongoing attempts failed.
+ * The slower attempts are closed once a connection won.
+ */
+public class ConnectionRace {
+    public static final long ATTEMPT_DELAY = 250; // Milliseconds, recommended by RFC 8305.
+
+    private final ClientSocketImpl socket;
+    private final List<EndpointHealth> endpoints;
+    private final CompletableFuture<ConnectionImpl> future;
+    private final UUID replacedConnection;
+
+    // Guarded by this
+    private final Map<ConnectionImpl, Attempt> attempts;
+    private ScheduledFuture<?> nextAttempt;
+    private int nextEndpoint;
+    private int ongoingAttempts;
+
+    private volatile ConnectionImpl winner;
+    private volatile EndpointHealth winnerEndpoint;
+
+    public ConnectionRace(ClientSocketImpl socket, List<EndpointHealth> endpoints, @Nullable UUID replacedConnection) {
+        this.socket = socket;
+        this.replacedConnection = replacedConnection;
+        this.endpoints = new ArrayList<>(endpoints);
+        this.endpoints.sort(EndpointHealth.HEALTHIEST_FIRST);
+        this.future = new CompletableFuture<>();
+
+        this.attempts = new HashMap<>();
+    }
+
+    /**
+     * Starts the race.
+     *
+     * @return future completed with the connection which won the race, once its handshake finished.
+     */
+    public CompletableFuture<ConnectionImpl> start() {
+        this.attempt();
+        return this.future;
+    }
+
+    /**
+     * Cancels the race, closing all the ongoing attempts.
+     */
+    public void cancel() {
+        if (this.future.completeExceptionally(new CancellationException("Connection race cancelled.")))
+            this.closeAttempts(null);
+    }
+
+    /**
+     * Called once a racing connection finished its handshake.
+     *
+     * @param connection connection which finished its handshake.
+     */
+    public void handshakeFinished(ConnectionImpl connection) {
+        Attempt attempt;
+        synchronized (this) {
+            attempt = this.attempts.get(connection);
+            if (attempt == null || this.future.isDone()) { // Lost the race.
+                connection.channel().close();
+                return;
+            }
+
+            this.winner = connection;
+            this.winnerEndpoint = attempt.endpoint();
+            this.cancelNextAttempt();
+        }
+
+        attempt.endpoint().success(System.nanoTime() - attempt.startedAt());
+        this.closeAttempts(connection);
+
+        ApiBridge.LOGGER.debug("Connected to '{}'.", attempt.endpoint().address());
+        this.future.complete(connection);
+    }
+
+    public EndpointHealth winnerEndpoint() {
+        return this.winnerEndpoint;
+    }
+
+    /**
+     * Retrieve the lost connection of the slot this race reconnects.
+     *
+     * @return identifier of the lost connection, or null if the slot never connected.
+     */
+    @Nullable
+    public UUID replacedConnection() {
+        return this.replacedConnection;
+    }
+
+    private void attempt() {
+        EndpointHealth endpoint;
+        synchronized (this) {
+            if (this.future.isDone() || this.nextEndpoint >= this.endpoints.size())
+                return;
+
+            endpoint = this.endpoints.get(this.nextEndpoint++);
+            this.ongoingAttempts++;
+
+            if (this.nextEndpoint < this.endpoints.size())
+                this.nextAttempt = this.socket.schedule(this::attempt, ATTEMPT_DELAY);
+        }
+
+        long startedAt = System.nanoTime();
+        ChannelFuture connectFuture = this.socket.connect(endpoint.address());
+
+        connectFuture.addListener((ChannelFutureListener) future -> {
+            if (!future.isSuccess()) {
+                endpoint.failure();
+                this.attemptFailed(future.cause());
+                return;
+            }
+
+            ConnectionImpl connection = this.socket.createConnection(future.channel(), this);
+            synchronized (this) {
+                if (this.future.isDone()) { // Someone else won while connecting.
+                    this.socket.raceFinished(connection);
+                    future.channel().close();
+                    return;
+                }
+
+                this.attempts.put(connection, new Attempt(endpoint, startedAt));
+            }
+
+            ScheduledFuture<?> handshakeTimeout = this.socket.schedule(() -> { // Endpoint accepted but stalls the handshake.
+                synchronized (this) {
+                    if (connection == this.winner || !this.attempts.containsKey(connection))
+                        return;
+                }
+
+                ApiBridge.LOGGER.debug("Handshake with '{}' timed out.", endpoint.address());
+                connection.channel().close();
+            }, this.socket.handshakeTimeout());
+
+            connection.channel().closeFuture().addListener(closeFuture -> {
+                handshakeTimeout.cancel(false);
+                this.socket.raceFinished(connection);
+
+                synchronized (this) {
+                    if (this.attempts.remove(connection) == null || connection == this.winner)
+                        return; // Closed after the race.
+                }
+
+                endpoint.failure();
+                this.attemptFailed(new ConnectException("Connection to '" + endpoint.address() + "' closed during handshake."));
+            });
+        });
+    }
+
+    private void attemptFailed(Throwable cause) {
+        boolean attemptNow = false;
+        synchronized (this) {
+            this.ongoingAttempts--;
+
+            if (this.future.isDone() || this.ongoingAttempts > 0)
+                return;
+
+            if (this.nextEndpoint < this.endpoints.size()) { // Don't wait for the delay, nothing is racing.
+                this.cancelNextAttempt();
+                attemptNow = true;
+            }
+        }
+
+        if (attemptNow) {
+            this.attempt();
+            return;
+        }
+
+        ApiBridge.LOGGER.debug("Could not connect to any of the {} endpoint(s).", this.endpoints.size());
+        this.future.completeExceptionally(cause); // Report the last failure.
+    }
+
+    private void closeAttempts(ConnectionImpl kept) {
+        List<ConnectionImpl> losers;
+        synchronized (this) {
+            this.cancelNextAttempt();
+            losers = new ArrayList<>(this.attempts.keySet());
+            losers.remove(kept);
+            this.attempts.keySet().retainAll(kept == null ? List.of() : List.of(kept));
+        }
+
+        for (ConnectionImpl loser : losers) {
+            loser.channel().close();
+        }
+    }
+
+    private void cancelNextAttempt() {
+        if (this.nextAttempt == null)
+            return;
+
+        this.nextAttempt.cancel(false);
+        this.nextAttempt = null;
+    }
+
+    private record Attempt(EndpointHealth endpoint, long startedAt) {
+    }
+}
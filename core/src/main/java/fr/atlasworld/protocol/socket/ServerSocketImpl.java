@@ -1,20 +1,34 @@
 package fr.atlasworld.protocol.socket;
 
-import fr.atlasworld.common.security.Encryptor;
-import fr.atlasworld.common.security.encryptor.KeyPairEncryptor;
+import com.google.common.base.Preconditions;
+import com.google.protobuf.Message;
 import fr.atlasworld.event.api.Event;
 import fr.atlasworld.event.api.EventNode;
 import fr.atlasworld.protocol.ApiBridge;
 import fr.atlasworld.protocol.Side;
+import fr.atlasworld.protocol.connection.Compression;
+import fr.atlasworld.protocol.connection.Connection;
 import fr.atlasworld.protocol.connection.ConnectionGroupImpl;
+import fr.atlasworld.protocol.connection.ConnectionImpl;
 import fr.atlasworld.protocol.event.NetworkEvent;
 import fr.atlasworld.protocol.event.socket.SocketClosedEvent;
 import fr.atlasworld.protocol.event.socket.SocketOpenedEvent;
+import fr.atlasworld.protocol.handler.GlobalRateLimiter;
+import fr.atlasworld.protocol.handler.PacketRateLimit;
+import fr.atlasworld.protocol.handler.RateLimits;
+import fr.atlasworld.protocol.handler.RequestDeduplicator;
+import fr.atlasworld.protocol.handler.ResponseCache;
+import fr.atlasworld.protocol.handshake.HandshakeAdmission;
+import fr.atlasworld.protocol.handshake.SessionTicketManager;
+import fr.atlasworld.protocol.metrics.MetricsRecorder;
+import fr.atlasworld.protocol.metrics.NetworkMetrics;
 import fr.atlasworld.protocol.packet.Packet;
 import fr.atlasworld.protocol.security.Authenticator;
 import fr.atlasworld.protocol.security.HandshakeHandler;
+import fr.atlasworld.protocol.security.HandshakeSuite;
 import fr.atlasworld.protocol.socket.init.ServerSocketInitializer;
 import fr.atlasworld.registry.Registry;
+import fr.atlasworld.registry.RegistryKey;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
@@ -22,63 +36,127 @@ import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.traffic.GlobalTrafficShapingHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.net.InetSocketAddress;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class ServerSocketImpl implements ServerSocket {
+    private static final long TRAFFIC_CHECK_INTERVAL = 1000; // Milliseconds
+
     private final InetSocketAddress address;
     private final KeyPair sessionKeyPair;
-    private final Encryptor sessionEncryptor;
 
     private final ServerBootstrap bootstrap;
 
     private final Registry<Packet> registry;
+    private final Map<RegistryKey, PacketRateLimit> packetRateLimits;
     private final EventNode<Event> rootNode;
     private final EventNode<NetworkEvent> node;
 
     private final long defaultTimeout;
     private final long handshakeTimeout;
+    private final long pingInterval;
+    private final long readIdleTimeout;
+    private final long writeIdleTimeout;
+
+    // Compression
+    private final List<Compression> compressionAlgorithms;
+    private final int compressionThreshold;
+    private final Map<String, byte[]> compressionDictionaries;
 
     // Security
     private final Authenticator authenticator;
     private final HandshakeHandler handler;
+    private final HandshakeSuite suite;
+    private final SessionTicketManager sessionTickets;
+
+    private final RequestDeduplicator requestDeduplicator;
+    private final Map<RegistryKey, ResponseCache> responseCaches;
 
     private final ConnectionGroupImpl globalConnectionGroup;
+    private final MetricsRecorder metrics;
+
+    // Socket-wide limits
+    private final GlobalRateLimiter globalRateLimiter;
+    private final long globalReadLimit;
+    private final long globalWriteLimit;
+
+    // Handshake workers
+    private final int handshakeThreads;
+    private final int maxPendingHandshakes;
+    private final HandshakeAdmission handshakeAdmission;
 
     private EventLoopGroup bossGroup, workerGroup;
+    private ThreadPoolExecutor handshakeExecutor;
+    private volatile GlobalTrafficShapingHandler trafficShaper;
     private Channel serverChannel;
     private volatile boolean running;
 
     public ServerSocketImpl(ServerBootstrap bootstrap, EventNode<Event> rootNode, InetSocketAddress bindAddress,
                              KeyPair sessionKeyPair, Registry<Packet> registry, long defaultTimeout, long handshakeTimeout,
                              Authenticator authenticator, HandshakeHandler handler, Map<String, String> properties,
-                            int rateLimit) throws GeneralSecurityException {
+                            RateLimits rateLimits, Map<RegistryKey, PacketRateLimit> packetRateLimits,
+                            List<Compression> compressionAlgorithms, int compressionThreshold,
+                            Map<String, byte[]> compressionDictionaries, long sessionTicketLifetime,
+                            int maxSessionTickets, HandshakeSuite suite, int handshakeThreads,
+                            int maxPendingHandshakes, int maxHandshakes, int maxHandshakesPerAddress,
+                            int globalRateLimit, long globalReadLimit, long globalWriteLimit, long pingInterval,
+                            long readIdleTimeout, long writeIdleTimeout, long deduplicationLifetime,
+                            int maxDeduplicatedRequests, Map<RegistryKey, ResponseCache.Policy> responseCaches)
+            throws GeneralSecurityException {
         this.address = bindAddress;
         this.sessionKeyPair = sessionKeyPair;
-        this.sessionEncryptor = new KeyPairEncryptor(this.sessionKeyPair);
+        this.suite = suite;
+
+        this.handshakeThreads = handshakeThreads;
+        this.maxPendingHandshakes = maxPendingHandshakes;
+        this.handshakeAdmission = new HandshakeAdmission(maxHandshakes, maxHandshakesPerAddress);
 
         this.registry = registry;
+        this.packetRateLimits = packetRateLimits;
         this.handshakeTimeout = handshakeTimeout;
         this.defaultTimeout = defaultTimeout;
+        this.pingInterval = pingInterval;
+        this.readIdleTimeout = readIdleTimeout;
+        this.writeIdleTimeout = writeIdleTimeout;
+
+        this.compressionAlgorithms = compressionAlgorithms;
+        this.compressionThreshold = compressionThreshold;
+        this.compressionDictionaries = compressionDictionaries;
 
         this.authenticator = authenticator;
         this.handler = handler;
+        this.sessionTickets = sessionTicketLifetime > 0 ? new SessionTicketManager(sessionTicketLifetime, maxSessionTickets) : null;
+        this.requestDeduplicator = deduplicationLifetime > 0 ?
+                new RequestDeduplicator(deduplicationLifetime, maxDeduplicatedRequests) : null;
+        this.responseCaches = ResponseCache.create(responseCaches);
         this.rootNode = rootNode;
         this.node = this.rootNode.createChildNode("server-socket-" + this.hashCode(), NetworkEvent.class,
                 event -> event.socket() == this);
 
         this.globalConnectionGroup = new ConnectionGroupImpl();
+        this.metrics = new MetricsRecorder(null);
+
+        this.globalRateLimiter = globalRateLimit > 0 ? new GlobalRateLimiter(globalRateLimit) : null;
+        this.globalReadLimit = globalReadLimit;
+        this.globalWriteLimit = globalWriteLimit;
 
         this.bootstrap = bootstrap;
         this.bootstrap.channel(NioServerSocketChannel.class);
-        this.bootstrap.childHandler(new ServerSocketInitializer(this, properties, rateLimit));
+        this.bootstrap.childHandler(new ServerSocketInitializer(this, properties, rateLimits));
     }
 
     @Override
@@ -111,6 +189,17 @@ public class ServerSocketImpl implements ServerSocket {
         return this.address;
     }
 
+    @Override
+    public NetworkMetrics metrics() {
+        long queuedPackets = 0;
+        for (Connection connection : this.globalConnectionGroup.connections()) {
+            queuedPackets += ((ConnectionImpl) connection).queuedPackets();
+        }
+
+        ThreadPoolExecutor executor = this.handshakeExecutor;
+        return this.metrics.snapshot(queuedPackets, executor == null ? 0 : executor.getQueue().size());
+    }
+
     @Override
     public CompletableFuture<Void> start() {
         if (this.running)
@@ -122,6 +211,14 @@ public class ServerSocketImpl implements ServerSocket {
         if (this.workerGroup == null || this.workerGroup.isTerminated() || this.workerGroup.isShuttingDown())
             this.workerGroup = new NioEventLoopGroup();
 
+        if (this.handshakeExecutor == null || this.handshakeExecutor.isShutdown())
+            this.handshakeExecutor = new ThreadPoolExecutor(this.handshakeThreads, this.handshakeThreads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(this.maxPendingHandshakes), new DefaultThreadFactory("atlas-handshake", true));
+
+        // Created on every start, the shaper is bound to the worker group. Limits of 0 only measure traffic.
+        this.trafficShaper = new GlobalTrafficShapingHandler(this.workerGroup, this.globalWriteLimit, this.globalReadLimit,
+                TRAFFIC_CHECK_INTERVAL);
+
         ChannelFuture future = this.bootstrap
                 .group(this.bossGroup, this.workerGroup)
                 .bind(this.address);
@@ -162,9 +259,30 @@ public class ServerSocketImpl implements ServerSocket {
         return ApiBridge.waitOnChannel(this.serverChannel.close());
     }
 
+    @Override
+    public void invalidateResponses(@NotNull RegistryKey packet) {
+        Preconditions.checkNotNull(packet);
+
+        ResponseCache cache = this.responseCaches.get(packet);
+        if (cache != null)
+            cache.invalidateAll();
+    }
+
+    @Override
+    public void invalidateResponse(@NotNull RegistryKey packet, @NotNull Message payload) {
+        Preconditions.checkNotNull(packet);
+        Preconditions.checkNotNull(payload);
+
+        ResponseCache cache = this.responseCaches.get(packet);
+        if (cache != null)
+            cache.invalidate(payload.toByteArray());
+    }
+
     private void cleanUp() {
         this.bossGroup.shutdownGracefully(0, 100, TimeUnit.MILLISECONDS);
         this.workerGroup.shutdownGracefully(0, 100, TimeUnit.MILLISECONDS);
+        this.handshakeExecutor.shutdownNow();
+        this.trafficShaper.release();
     }
 
     public long defaultTimeout() {
@@ -175,6 +293,30 @@ public class ServerSocketImpl implements ServerSocket {
         return this.handshakeTimeout;
     }
 
+    public long pingInterval() {
+        return this.pingInterval;
+    }
+
+    public long readIdleTimeout() {
+        return this.readIdleTimeout;
+    }
+
+    public long writeIdleTimeout() {
+        return this.writeIdleTimeout;
+    }
+
+    public List<Compression> compressionAlgorithms() {
+        return this.compressionAlgorithms;
+    }
+
+    public int compressionThreshold() {
+        return this.compressionThreshold;
+    }
+
+    public Map<String, byte[]> compressionDictionaries() {
+        return this.compressionDictionaries;
+    }
+
     public Authenticator authenticator() {
         return this.authenticator;
     }
@@ -183,14 +325,65 @@ public class ServerSocketImpl implements ServerSocket {
         return this.handler;
     }
 
-    public Encryptor serverEncryptor() {
-        return this.sessionEncryptor;
+    public Executor handshakeExecutor() {
+        return this.handshakeExecutor;
+    }
+
+    public HandshakeAdmission handshakeAdmission() {
+        return this.handshakeAdmission;
+    }
+
+    public HandshakeSuite handshakeSuite() {
+        return this.suite;
+    }
+
+    @Nullable
+    public SessionTicketManager sessionTickets() {
+        return this.sessionTickets;
+    }
+
+    @Nullable
+    public RequestDeduplicator requestDeduplicator() {
+        return this.requestDeduplicator;
+    }
+
+    public Map<RegistryKey, ResponseCache> responseCaches() {
+        return this.responseCaches;
     }
 
     public Registry<Packet> registry() {
         return this.registry;
     }
 
+    public Map<RegistryKey, PacketRateLimit> packetRateLimits() {
+        return this.packetRateLimits;
+    }
+
+    @Override
+    public long inboundThroughput() {
+        GlobalTrafficShapingHandler shaper = this.trafficShaper;
+        return shaper == null || !this.running ? 0 : shaper.trafficCounter().lastReadThroughput();
+    }
+
+    @Override
+    public long outboundThroughput() {
+        GlobalTrafficShapingHandler shaper = this.trafficShaper;
+        return shaper == null || !this.running ? 0 : shaper.trafficCounter().lastWriteThroughput();
+    }
+
+    public GlobalTrafficShapingHandler trafficShaper() {
+        return this.trafficShaper;
+    }
+
+    @Nullable
+    public GlobalRateLimiter globalRateLimiter() {
+        return this.globalRateLimiter;
+    }
+
+    public MetricsRecorder metricsRecorder() {
+        return this.metrics;
+    }
+
     public ConnectionGroupImpl globalConnectionGroup() {
         return this.globalConnectionGroup;
     }
@@ -4,12 +4,21 @@ import com.google.common.base.Preconditions;
 import fr.atlasworld.event.api.Event;
 import fr.atlasworld.event.api.EventNode;
 import fr.atlasworld.protocol.AtlasProtocol;
+import fr.atlasworld.protocol.connection.Compression;
+import fr.atlasworld.protocol.connection.DictionaryTrainer;
+import fr.atlasworld.protocol.connection.PoolStrategy;
+import fr.atlasworld.protocol.connection.ReconnectPolicy;
+import fr.atlasworld.protocol.handler.PacketRateLimit;
+import fr.atlasworld.protocol.handler.RateLimits;
+import fr.atlasworld.protocol.handler.ResponseCache;
 import fr.atlasworld.protocol.ServerInfo;
 import fr.atlasworld.protocol.packet.Packet;
 import fr.atlasworld.protocol.security.HandshakeHandler;
+import fr.atlasworld.protocol.security.HandshakeSuite;
 import fr.atlasworld.protocol.socket.ClientSocket;
 import fr.atlasworld.protocol.socket.ClientSocketImpl;
 import fr.atlasworld.registry.Registry;
+import fr.atlasworld.registry.RegistryKey;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.ChannelOption;
 import org.jetbrains.annotations.NotNull;
@@ -17,17 +26,21 @@ import org.jetbrains.annotations.NotNull;
 import java.net.InetSocketAddress;
 import java.security.*;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Predicate;
 
-import static fr.atlasworld.protocol.handler.HandshakeHandler.ASYMMETRIC_KEY_ALGORITHM;
+import static fr.atlasworld.protocol.handler.HandshakeHandler.supportsKey;
 
 public class ClientSocketBuilder implements ClientSocket.Builder {
     private final Bootstrap bootstrap;
 
-    private InetSocketAddress address;
+    private List<InetSocketAddress> addresses;
     private HandshakeHandler handshakeHandler;
     private Registry<Packet> registry;
     private EventNode<Event> rootNode;
@@ -38,26 +51,75 @@ public class ClientSocketBuilder implements ClientSocket.Builder {
     private Predicate<ServerInfo> compatibilityResolver;
 
     private int rateLimit;
+    private int handshakeRateLimit;
+    private int bandwidthLimit;
+    private final Map<RegistryKey, PacketRateLimit> packetRateLimits;
     private long requestTimeout;
     private long handshakeTimeout;
+    private long pingInterval;
+    private long readIdleTimeout;
+    private long writeIdleTimeout;
+    private int poolSize;
+    private PoolStrategy poolStrategy;
+    private ReconnectPolicy reconnectPolicy;
+    private final Set<RegistryKey> idempotentPackets;
+    private double hedgingPercentile;
+    private final Map<RegistryKey, ResponseCache.Policy> responseCaches;
+
+    private List<Compression> compressionAlgorithms;
+    private int compressionThreshold;
+    private final Map<String, byte[]> compressionDictionaries;
 
     public ClientSocketBuilder() {
         this.bootstrap = new Bootstrap();
-        this.address = new InetSocketAddress(AtlasProtocol.DEFAULT_PORT);
+        this.addresses = List.of(new InetSocketAddress(AtlasProtocol.DEFAULT_PORT));
 
         this.customAuthentication = false;
         this.compatibilityResolver = info -> true; // Always accept
 
         this.rateLimit = 50;
+        this.handshakeRateLimit = 10;
+        this.bandwidthLimit = 0; // Unlimited
+        this.packetRateLimits = new HashMap<>();
         this.requestTimeout = Duration.ofSeconds(30).toMillis();
         this.handshakeTimeout = Duration.ofMinutes(2).toMillis();
+        this.pingInterval = Duration.ofSeconds(5).toMillis();
+        this.readIdleTimeout = Duration.ofSeconds(30).toMillis();
+        this.writeIdleTimeout = Duration.ofSeconds(10).toMillis();
+        this.poolSize = 1;
+        this.poolStrategy = PoolStrategy.LEAST_IN_FLIGHT;
+        this.reconnectPolicy = null; // Disabled
+        this.idempotentPackets = new HashSet<>();
+        this.hedgingPercentile = 0; // Disabled
+        this.responseCaches = new HashMap<>();
+
+        this.compressionAlgorithms = List.of();
+        this.compressionThreshold = 256;
+        this.compressionDictionaries = new HashMap<>();
     }
 
     @Override
     public ClientSocket.Builder connectAddress(@NotNull InetSocketAddress address) {
         Preconditions.checkNotNull(address);
 
-        this.address = address;
+        this.addresses = List.of(address);
+        return this;
+    }
+
+    @Override
+    public ClientSocket.Builder connectAddresses(@NotNull InetSocketAddress... addresses) {
+        Preconditions.checkNotNull(addresses);
+        Preconditions.checkArgument(addresses.length > 0, "At least one address must be specified!");
+
+        List<InetSocketAddress> connectAddresses = new ArrayList<>();
+        for (InetSocketAddress address : addresses) {
+            Preconditions.checkNotNull(address);
+
+            if (!connectAddresses.contains(address))
+                connectAddresses.add(address);
+        }
+
+        this.addresses = List.copyOf(connectAddresses);
         return this;
     }
 
@@ -95,8 +157,8 @@ public class ClientSocketBuilder implements ClientSocket.Builder {
         Preconditions.checkNotNull(identifier);
         Preconditions.checkNotNull(pair);
         Preconditions.checkNotNull(pair.getPrivate(), "Missing private key!");
-        Preconditions.checkArgument(pair.getPrivate().getAlgorithm()
-                .equals(ASYMMETRIC_KEY_ALGORITHM), "Only '" + ASYMMETRIC_KEY_ALGORITHM + "' are supported!");
+        Preconditions.checkArgument(supportsKey(HandshakeSuite.RSA, pair.getPrivate())
+                || supportsKey(HandshakeSuite.X25519, pair.getPrivate()), "Only 'RSA' and 'Ed25519' keys are supported!");
 
         this.identifier = identifier;
         this.keys = pair;
@@ -122,6 +184,37 @@ public class ClientSocketBuilder implements ClientSocket.Builder {
         return this;
     }
 
+    @Override
+    public ClientSocket.Builder handshakeRateLimit(int rateLimit) {
+        Preconditions.checkArgument(rateLimit > 0, "Handshake rate limit may not be negative!");
+
+        this.handshakeRateLimit = rateLimit;
+        return this;
+    }
+
+    @Override
+    public ClientSocket.Builder bandwidthLimit(int bytesPerSecond) {
+        Preconditions.checkArgument(bytesPerSecond >= 0, "Bandwidth limit may not be negative!");
+
+        this.bandwidthLimit = bytesPerSecond;
+        return this;
+    }
+
+    @Override
+    public ClientSocket.Builder packetRateLimit(@NotNull RegistryKey packet, int rateLimit) {
+        return this.packetRateLimit(packet, rateLimit, 0);
+    }
+
+    @Override
+    public ClientSocket.Builder packetRateLimit(@NotNull RegistryKey packet, int rateLimit, int bytesPerSecond) {
+        Preconditions.checkNotNull(packet);
+        Preconditions.checkArgument(rateLimit > 0, "Rate limit may not be negative!");
+        Preconditions.checkArgument(bytesPerSecond >= 0, "Bandwidth limit may not be negative!");
+
+        this.packetRateLimits.put(packet, new PacketRateLimit(rateLimit, bytesPerSecond));
+        return this;
+    }
+
     @Override
     public ClientSocket.Builder requestTimeout(@NotNull Duration timeout) {
         Preconditions.checkNotNull(timeout);
@@ -140,12 +233,117 @@ public class ClientSocketBuilder implements ClientSocket.Builder {
         return this;
     }
 
+    @Override
+    public ClientSocket.Builder pingInterval(@NotNull Duration interval) {
+        Preconditions.checkNotNull(interval);
+        Preconditions.checkArgument(!interval.isNegative(), "Ping interval may not be negative!");
+
+        this.pingInterval = interval.toMillis();
+        return this;
+    }
+
+    @Override
+    public ClientSocket.Builder idleTimeout(@NotNull Duration readTimeout, @NotNull Duration writeTimeout) {
+        Preconditions.checkNotNull(readTimeout);
+        Preconditions.checkNotNull(writeTimeout);
+        Preconditions.checkArgument(!readTimeout.isNegative(), "Read idle timeout may not be negative!");
+        Preconditions.checkArgument(!writeTimeout.isNegative(), "Write idle timeout may not be negative!");
+
+        this.readIdleTimeout = readTimeout.toMillis();
+        this.writeIdleTimeout = writeTimeout.toMillis();
+        return this;
+    }
+
+    @Override
+    public ClientSocket.Builder connectionPool(int size, @NotNull PoolStrategy strategy) {
+        Preconditions.checkNotNull(strategy);
+        Preconditions.checkArgument(size > 0, "Pool size must be higher than 0!");
+
+        this.poolSize = size;
+        this.poolStrategy = strategy;
+        return this;
+    }
+
+    @Override
+    public ClientSocket.Builder reconnect(@NotNull Duration initialDelay, @NotNull Duration maxDelay, int bufferSize) {
+        Preconditions.checkNotNull(initialDelay);
+        Preconditions.checkNotNull(maxDelay);
+        Preconditions.checkArgument(initialDelay.toMillis() > 0, "Initial delay must be higher than 0!");
+        Preconditions.checkArgument(maxDelay.compareTo(initialDelay) >= 0, "Max delay may not be lower than the initial delay!");
+        Preconditions.checkArgument(bufferSize >= 0, "Buffer size may not be negative!");
+
+        this.reconnectPolicy = new ReconnectPolicy(initialDelay.toMillis(), maxDelay.toMillis(), bufferSize);
+        return this;
+    }
+
+    @Override
+    public ClientSocket.Builder idempotentPacket(@NotNull RegistryKey packet) {
+        Preconditions.checkNotNull(packet);
+
+        this.idempotentPackets.add(packet);
+        return this;
+    }
+
+    @Override
+    public ClientSocket.Builder hedging(double percentile) {
+        Preconditions.checkArgument(percentile > 0 && percentile < 1, "Percentile must be between 0 and 1!");
+
+        this.hedgingPercentile = percentile;
+        return this;
+    }
+
+    @Override
+    public ClientSocket.Builder cacheResponses(@NotNull RegistryKey packet, @NotNull Duration lifetime, int maxEntries) {
+        Preconditions.checkNotNull(packet);
+        Preconditions.checkNotNull(lifetime);
+        Preconditions.checkArgument(lifetime.toMillis() > 0, "Cache lifetime must be higher than 0!");
+        Preconditions.checkArgument(maxEntries > 0, "Max entries must be higher than 0!");
+
+        this.responseCaches.put(packet, new ResponseCache.Policy(lifetime.toMillis(), maxEntries, false));
+        return this;
+    }
+
     @Override
     public ClientSocket.Builder enableFastTCP(boolean fastTcp) {
         this.bootstrap.option(ChannelOption.TCP_FASTOPEN_CONNECT, fastTcp);
         return this;
     }
 
+    @Override
+    public ClientSocket.Builder compression(@NotNull Compression... algorithms) {
+        Preconditions.checkNotNull(algorithms);
+
+        List<Compression> compressionAlgorithms = new ArrayList<>();
+        for (Compression algorithm : algorithms) {
+            Preconditions.checkNotNull(algorithm);
+
+            if (algorithm != Compression.NONE && !compressionAlgorithms.contains(algorithm))
+                compressionAlgorithms.add(algorithm);
+        }
+
+        this.compressionAlgorithms = List.copyOf(compressionAlgorithms);
+        return this;
+    }
+
+    @Override
+    public ClientSocket.Builder compressionThreshold(int threshold) {
+        Preconditions.checkArgument(threshold >= 0, "Compression threshold may not be negative!");
+
+        this.compressionThreshold = threshold;
+        return this;
+    }
+
+    @Override
+    public ClientSocket.Builder compressionDictionary(@NotNull RegistryKey packet, byte @NotNull [] dictionary) {
+        Preconditions.checkNotNull(packet);
+        Preconditions.checkNotNull(dictionary);
+        Preconditions.checkArgument(dictionary.length > 0 && dictionary.length <= DictionaryTrainer.MAX_DICTIONARY_SIZE,
+                "Dictionary size must be between 1 and " + DictionaryTrainer.MAX_DICTIONARY_SIZE + " bytes!");
+
+        this.compressionDictionaries.put(packet.toString(), dictionary.clone());
+        return this;
+    }
+
     @Override
     public ClientSocket.Builder enableNoDelay(boolean noDelay) {
         this.bootstrap.option(ChannelOption.TCP_NODELAY, noDelay);
@@ -158,8 +356,13 @@ public class ClientSocketBuilder implements ClientSocket.Builder {
         Preconditions.checkNotNull(this.rootNode, "Missing root node, please provide one!");
         Preconditions.checkArgument(!(this.customAuthentication && (this.identifier == null || this.keys == null)));
 
-        return new ClientSocketImpl(this.address, this.identifier, this.keys, this.customAuthentication, this.registry,
+        return new ClientSocketImpl(this.addresses, this.identifier, this.keys, this.customAuthentication, this.registry,
                 this.compatibilityResolver, this.rootNode, this.bootstrap, this.requestTimeout, this.handshakeTimeout,
-                this.handshakeHandler, this.rateLimit);
+                this.handshakeHandler, new RateLimits(this.handshakeRateLimit, this.rateLimit, this.bandwidthLimit),
+                Map.copyOf(this.packetRateLimits), this.compressionAlgorithms, this.compressionThreshold,
+                Map.copyOf(this.compressionDictionaries),
+                this.pingInterval, this.readIdleTimeout, this.writeIdleTimeout, this.poolSize, this.poolStrategy,
+                this.reconnectPolicy, Set.copyOf(this.idempotentPackets), this.hedgingPercentile,
+                Map.copyOf(this.responseCaches));
     }
 }
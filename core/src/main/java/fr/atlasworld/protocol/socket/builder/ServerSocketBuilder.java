@@ -3,14 +3,20 @@ package fr.atlasworld.protocol.socket.builder;
 import com.google.common.base.Preconditions;
 import fr.atlasworld.event.api.Event;
 import fr.atlasworld.event.api.EventNode;
-import fr.atlasworld.protocol.ApiBridge;
 import fr.atlasworld.protocol.AtlasProtocol;
+import fr.atlasworld.protocol.connection.Compression;
+import fr.atlasworld.protocol.connection.DictionaryTrainer;
+import fr.atlasworld.protocol.handler.PacketRateLimit;
+import fr.atlasworld.protocol.handler.RateLimits;
+import fr.atlasworld.protocol.handler.ResponseCache;
 import fr.atlasworld.protocol.packet.Packet;
 import fr.atlasworld.protocol.security.Authenticator;
 import fr.atlasworld.protocol.security.HandshakeHandler;
+import fr.atlasworld.protocol.security.HandshakeSuite;
 import fr.atlasworld.protocol.socket.ServerSocket;
 import fr.atlasworld.protocol.socket.ServerSocketImpl;
 import fr.atlasworld.registry.Registry;
+import fr.atlasworld.registry.RegistryKey;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelOption;
 import org.jetbrains.annotations.NotNull;
@@ -19,12 +25,14 @@ import java.net.InetSocketAddress;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
-import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-import static fr.atlasworld.protocol.handler.HandshakeHandler.ASYMMETRIC_KEY_ALGORITHM;
+import static fr.atlasworld.protocol.handler.HandshakeHandler.identityAlgorithm;
+import static fr.atlasworld.protocol.handler.HandshakeHandler.supportsKey;
 
 public class ServerSocketBuilder implements ServerSocket.Builder {
     private final Map<String, String> properties;
@@ -37,10 +45,39 @@ public class ServerSocketBuilder implements ServerSocket.Builder {
     private EventNode<Event> rootNode;
 
     private int rateLimit;
+    private int handshakeRateLimit;
+    private int bandwidthLimit;
+    private final Map<RegistryKey, PacketRateLimit> packetRateLimits;
+
+    private int globalRateLimit;
+    private long globalReadLimit;
+    private long globalWriteLimit;
     private long requestTimeout;
     private long handshakeTimeout;
+    private long pingInterval;
+    private long readIdleTimeout;
+    private long writeIdleTimeout;
+
+    private List<Compression> compressionAlgorithms;
+    private int compressionThreshold;
+    private final Map<String, byte[]> compressionDictionaries;
+
+    private long sessionTicketLifetime;
+    private int maxSessionTickets;
+
+    private long deduplicationLifetime;
+    private int maxDeduplicatedRequests;
+
+    private final Map<RegistryKey, ResponseCache.Policy> responseCaches;
 
     private KeyPair keyPair;
+    private HandshakeSuite suite;
+
+    private int handshakeThreads;
+    private int maxPendingHandshakes;
+
+    private int maxHandshakes;
+    private int maxHandshakesPerAddress;
 
     public ServerSocketBuilder() {
         this.properties = new HashMap<>();
@@ -49,17 +86,33 @@ public class ServerSocketBuilder implements ServerSocket.Builder {
         this.address = new InetSocketAddress(AtlasProtocol.DEFAULT_PORT);
 
         this.rateLimit = 50;
+        this.handshakeRateLimit = 10;
+        this.bandwidthLimit = 0; // Unlimited
+        this.packetRateLimits = new HashMap<>();
+        this.responseCaches = new HashMap<>();
+
+        this.globalRateLimit = 0; // Unlimited
+        this.globalReadLimit = 0;
+        this.globalWriteLimit = 0;
         this.requestTimeout = Duration.ofSeconds(30).toMillis();
         this.handshakeTimeout = Duration.ofMinutes(2).toMillis();
+        this.pingInterval = Duration.ofSeconds(5).toMillis();
+        this.readIdleTimeout = Duration.ofSeconds(30).toMillis();
+        this.writeIdleTimeout = Duration.ofSeconds(10).toMillis();
 
-        this.bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
+        this.compressionAlgorithms = List.of();
+        this.compressionThreshold = 256;
+        this.compressionDictionaries = new HashMap<>();
 
-        try {
-            this.keyPair = KeyPairGenerator.getInstance(ASYMMETRIC_KEY_ALGORITHM).generateKeyPair();
-        } catch (NoSuchAlgorithmException e) {
-            ApiBridge.LOGGER.error("'" + ASYMMETRIC_KEY_ALGORITHM + "' is not supported on this system.");
-            this.keyPair = null;
-        }
+        this.suite = HandshakeSuite.RSA;
+
+        this.handshakeThreads = Runtime.getRuntime().availableProcessors();
+        this.maxPendingHandshakes = 256;
+
+        this.maxHandshakes = 1024;
+        this.maxHandshakesPerAddress = 16;
+
+        this.bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
     }
 
     @Override
@@ -110,6 +163,55 @@ public class ServerSocketBuilder implements ServerSocket.Builder {
         return this;
     }
 
+    @Override
+    public ServerSocket.Builder handshakeRateLimit(int rateLimit) {
+        Preconditions.checkArgument(rateLimit > 0, "Handshake rate limit may not be negative!");
+
+        this.handshakeRateLimit = rateLimit;
+        return this;
+    }
+
+    @Override
+    public ServerSocket.Builder bandwidthLimit(int bytesPerSecond) {
+        Preconditions.checkArgument(bytesPerSecond >= 0, "Bandwidth limit may not be negative!");
+
+        this.bandwidthLimit = bytesPerSecond;
+        return this;
+    }
+
+    @Override
+    public ServerSocket.Builder packetRateLimit(@NotNull RegistryKey packet, int rateLimit) {
+        return this.packetRateLimit(packet, rateLimit, 0);
+    }
+
+    @Override
+    public ServerSocket.Builder packetRateLimit(@NotNull RegistryKey packet, int rateLimit, int bytesPerSecond) {
+        Preconditions.checkNotNull(packet);
+        Preconditions.checkArgument(rateLimit > 0, "Rate limit may not be negative!");
+        Preconditions.checkArgument(bytesPerSecond >= 0, "Bandwidth limit may not be negative!");
+
+        this.packetRateLimits.put(packet, new PacketRateLimit(rateLimit, bytesPerSecond));
+        return this;
+    }
+
+    @Override
+    public ServerSocket.Builder globalRateLimit(int rateLimit) {
+        Preconditions.checkArgument(rateLimit >= 0, "Global rate limit may not be negative!");
+
+        this.globalRateLimit = rateLimit;
+        return this;
+    }
+
+    @Override
+    public ServerSocket.Builder globalBandwidthLimit(long inboundBytesPerSecond, long outboundBytesPerSecond) {
+        Preconditions.checkArgument(inboundBytesPerSecond >= 0, "Inbound bandwidth limit may not be negative!");
+        Preconditions.checkArgument(outboundBytesPerSecond >= 0, "Outbound bandwidth limit may not be negative!");
+
+        this.globalReadLimit = inboundBytesPerSecond;
+        this.globalWriteLimit = outboundBytesPerSecond;
+        return this;
+    }
+
     @Override
     public ServerSocket.Builder handshakeProperties(@NotNull String key, @NotNull String value) {
         Preconditions.checkNotNull(key);
@@ -137,26 +239,146 @@ public class ServerSocketBuilder implements ServerSocket.Builder {
         return this;
     }
 
+    @Override
+    public ServerSocket.Builder pingInterval(@NotNull Duration interval) {
+        Preconditions.checkNotNull(interval);
+        Preconditions.checkArgument(!interval.isNegative(), "Ping interval may not be negative!");
+
+        this.pingInterval = interval.toMillis();
+        return this;
+    }
+
+    @Override
+    public ServerSocket.Builder idleTimeout(@NotNull Duration readTimeout, @NotNull Duration writeTimeout) {
+        Preconditions.checkNotNull(readTimeout);
+        Preconditions.checkNotNull(writeTimeout);
+        Preconditions.checkArgument(!readTimeout.isNegative(), "Read idle timeout may not be negative!");
+        Preconditions.checkArgument(!writeTimeout.isNegative(), "Write idle timeout may not be negative!");
+
+        this.readIdleTimeout = readTimeout.toMillis();
+        this.writeIdleTimeout = writeTimeout.toMillis();
+        return this;
+    }
+
     @Override
     public ServerSocket.Builder keyPair(@NotNull KeyPair pair) {
         Preconditions.checkNotNull(pair);
         Preconditions.checkNotNull(pair.getPublic());
         Preconditions.checkNotNull(pair.getPrivate());
-        Preconditions.checkArgument(pair.getPublic().getAlgorithm()
-                .equals(ASYMMETRIC_KEY_ALGORITHM), "Only '" + ASYMMETRIC_KEY_ALGORITHM + "' are supported!");
-        Preconditions.checkArgument(pair.getPrivate().getAlgorithm()
-                .equals(ASYMMETRIC_KEY_ALGORITHM), "Only '" + ASYMMETRIC_KEY_ALGORITHM + "' are supported!");
+        Preconditions.checkArgument(pair.getPublic().getAlgorithm().equals(pair.getPrivate().getAlgorithm()),
+                "Public and private keys use different algorithms!");
 
         this.keyPair = pair;
         return this;
     }
 
+    @Override
+    public ServerSocket.Builder handshakeSuite(@NotNull HandshakeSuite suite) {
+        Preconditions.checkNotNull(suite);
+
+        this.suite = suite;
+        return this;
+    }
+
+    @Override
+    public ServerSocket.Builder sessionTickets(@NotNull Duration lifetime, int maxTickets) {
+        Preconditions.checkNotNull(lifetime);
+        Preconditions.checkArgument(lifetime.toMillis() > 0, "Ticket lifetime cannot be negative!");
+        Preconditions.checkArgument(maxTickets > 0, "Max tickets must be higher than 0!");
+
+        this.sessionTicketLifetime = lifetime.toMillis();
+        this.maxSessionTickets = maxTickets;
+        return this;
+    }
+
+    @Override
+    public ServerSocket.Builder requestDeduplication(@NotNull Duration lifetime, int maxRequests) {
+        Preconditions.checkNotNull(lifetime);
+        Preconditions.checkArgument(lifetime.toMillis() > 0, "Deduplication lifetime must be higher than 0!");
+        Preconditions.checkArgument(maxRequests > 0, "Max requests must be higher than 0!");
+
+        this.deduplicationLifetime = lifetime.toMillis();
+        this.maxDeduplicatedRequests = maxRequests;
+        return this;
+    }
+
+    @Override
+    public ServerSocket.Builder cacheResponses(@NotNull RegistryKey packet, @NotNull Duration lifetime, int maxEntries) {
+        return this.cacheResponses(packet, lifetime, maxEntries, false);
+    }
+
+    @Override
+    public ServerSocket.Builder cacheResponses(@NotNull RegistryKey packet, @NotNull Duration lifetime, int maxEntries, boolean perClient) {
+        Preconditions.checkNotNull(packet);
+        Preconditions.checkNotNull(lifetime);
+        Preconditions.checkArgument(lifetime.toMillis() > 0, "Cache lifetime must be higher than 0!");
+        Preconditions.checkArgument(maxEntries > 0, "Max entries must be higher than 0!");
+
+        this.responseCaches.put(packet, new ResponseCache.Policy(lifetime.toMillis(), maxEntries, perClient));
+        return this;
+    }
+
+    @Override
+    public ServerSocket.Builder handshakeWorkers(int threads, int maxPending) {
+        Preconditions.checkArgument(threads > 0, "Handshake threads must be higher than 0!");
+        Preconditions.checkArgument(maxPending > 0, "Max pending handshakes must be higher than 0!");
+
+        this.handshakeThreads = threads;
+        this.maxPendingHandshakes = maxPending;
+        return this;
+    }
+
+    @Override
+    public ServerSocket.Builder maxHandshakes(int maxHandshakes, int maxPerAddress) {
+        Preconditions.checkArgument(maxHandshakes > 0, "Max handshakes must be higher than 0!");
+        Preconditions.checkArgument(maxPerAddress > 0, "Max handshakes per address must be higher than 0!");
+
+        this.maxHandshakes = maxHandshakes;
+        this.maxHandshakesPerAddress = maxPerAddress;
+        return this;
+    }
+
     @Override
     public ServerSocket.Builder keepAlive(boolean keepAlive) {
         this.bootstrap.childOption(ChannelOption.SO_KEEPALIVE, keepAlive);
         return this;
     }
 
+    @Override
+    public ServerSocket.Builder compression(@NotNull Compression... algorithms) {
+        Preconditions.checkNotNull(algorithms);
+
+        List<Compression> compressionAlgorithms = new ArrayList<>();
+        for (Compression algorithm : algorithms) {
+            Preconditions.checkNotNull(algorithm);
+
+            if (algorithm != Compression.NONE && !compressionAlgorithms.contains(algorithm))
+                compressionAlgorithms.add(algorithm);
+        }
+
+        this.compressionAlgorithms = List.copyOf(compressionAlgorithms);
+        return this;
+    }
+
+    @Override
+    public ServerSocket.Builder compressionThreshold(int threshold) {
+        Preconditions.checkArgument(threshold >= 0, "Compression threshold may not be negative!");
+
+        this.compressionThreshold = threshold;
+        return this;
+    }
+
+    @Override
+    public ServerSocket.Builder compressionDictionary(@NotNull RegistryKey packet, byte @NotNull [] dictionary) {
+        Preconditions.checkNotNull(packet);
+        Preconditions.checkNotNull(dictionary);
+        Preconditions.checkArgument(dictionary.length > 0 && dictionary.length <= DictionaryTrainer.MAX_DICTIONARY_SIZE,
+                "Dictionary size must be between 1 and " + DictionaryTrainer.MAX_DICTIONARY_SIZE + " bytes!");
+
+        this.compressionDictionaries.put(packet.toString(), dictionary.clone());
+        return this;
+    }
+
     @Override
     public ServerSocket.Builder enableNoDelay(boolean noDelay) {
         this.bootstrap.childOption(ChannelOption.TCP_NODELAY, noDelay);
@@ -177,13 +399,24 @@ public class ServerSocketBuilder implements ServerSocket.Builder {
 
     @Override
     public @NotNull ServerSocket build() throws GeneralSecurityException {
-        Preconditions.checkNotNull(this.keyPair, "Failed to generate KeyPair, please provide one!");
         Preconditions.checkNotNull(this.rootNode, "Missing root node, please provide one!");
         Preconditions.checkArgument(!(this.authenticator == null && this.handshakeHandler == null) , "Missing authenticator or handshake handler, please provide one!");
         Preconditions.checkNotNull(this.registry, "Missing packet registry, please provide one!");
 
+        if (this.keyPair == null)
+            this.keyPair = KeyPairGenerator.getInstance(identityAlgorithm(this.suite)).generateKeyPair();
+
+        Preconditions.checkArgument(supportsKey(this.suite, this.keyPair.getPrivate()),
+                "Key pair is not supported by the '" + this.suite + "' handshake suite!");
+
         return new ServerSocketImpl(this.bootstrap, this.rootNode, this.address, this.keyPair, this.registry,
                 this.requestTimeout, this.handshakeTimeout, this.authenticator, this.handshakeHandler, this.properties,
-                this.rateLimit);
+                new RateLimits(this.handshakeRateLimit, this.rateLimit, this.bandwidthLimit),
+                Map.copyOf(this.packetRateLimits), this.compressionAlgorithms,
+                this.compressionThreshold, Map.copyOf(this.compressionDictionaries), this.sessionTicketLifetime, this.maxSessionTickets,
+                this.suite, this.handshakeThreads, this.maxPendingHandshakes, this.maxHandshakes, this.maxHandshakesPerAddress,
+                this.globalRateLimit, this.globalReadLimit, this.globalWriteLimit,
+                this.pingInterval, this.readIdleTimeout, this.writeIdleTimeout, this.deduplicationLifetime,
+                this.maxDeduplicatedRequests, Map.copyOf(this.responseCaches));
     }
 }
@@ -3,24 +3,27 @@ package fr.atlasworld.protocol.socket.init;
 import fr.atlasworld.protocol.handler.CodecHandler;
 import fr.atlasworld.protocol.handler.ExecutorHandler;
 import fr.atlasworld.protocol.handler.HandshakeHandler;
+import fr.atlasworld.protocol.handler.PingHandler;
+import fr.atlasworld.protocol.handler.RateLimits;
+import fr.atlasworld.protocol.handler.StreamHandler;
 import fr.atlasworld.protocol.socket.ClientSocketImpl;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.timeout.IdleStateHandler;
 
 import java.security.GeneralSecurityException;
-import java.security.KeyFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class ClientSocketInitializer extends ChannelInitializer<SocketChannel> {
     private final ClientSocketImpl socket;
-    private final KeyFactory factory;
-    private final int rateLimit;
+    private final RateLimits rateLimits;
 
-    public ClientSocketInitializer(ClientSocketImpl socket, int rateLimit) throws GeneralSecurityException {
+    public ClientSocketInitializer(ClientSocketImpl socket, RateLimits rateLimits) throws GeneralSecurityException {
         this.socket = socket;
-        this.factory = KeyFactory.getInstance(HandshakeHandler.ASYMMETRIC_KEY_ALGORITHM);
-        this.rateLimit = rateLimit;
+        this.rateLimits = rateLimits;
     }
 
     @Override
@@ -28,8 +31,15 @@ public class ClientSocketInitializer extends ChannelInitializer<SocketChannel> {
         ChannelPipeline pipeline = ch.pipeline();
 
         pipeline.addLast(new LengthFieldBasedFrameDecoder(CodecHandler.MAX_PACKET_SIZE, 0, Integer.BYTES, 0, Integer.BYTES));
-        pipeline.addLast(HandshakeHandler.createClient(this.socket, this.factory, this.rateLimit));
-        pipeline.addLast(new CodecHandler()); // Decode Requests
-        pipeline.addLast(new ExecutorHandler(this.socket, this.socket.registry(), this.socket.rootNode())); // Handles requests
+        pipeline.addLast(HandshakeHandler.createClient(this.socket, this.rateLimits));
+        if (this.socket.readIdleTimeout() > 0 || this.socket.writeIdleTimeout() > 0)
+            pipeline.addLast(new IdleStateHandler(this.socket.readIdleTimeout(), this.socket.writeIdleTimeout(), 0,
+                    TimeUnit.MILLISECONDS)); // Dead peer detection
+
+        pipeline.addLast(new PingHandler(this.socket.pingInterval())); // Keep-alive & round-trip time
+        pipeline.addLast(new StreamHandler()); // Schedule & interleave packets by priority
+        pipeline.addLast(new CodecHandler(this.socket.compressionThreshold())); // Decode Requests
+        pipeline.addLast(new ExecutorHandler(this.socket, this.socket.registry(), this.socket.rootNode(),
+                null, this.socket.packetRateLimits(), null, Map.of())); // Handles requests
     }
 }
@@ -4,41 +4,54 @@ import com.google.protobuf.ByteString;
 import fr.atlasworld.protocol.AtlasProtocol;
 import fr.atlasworld.protocol.generated.HandshakeWrapper;
 import fr.atlasworld.protocol.handler.CodecHandler;
+import fr.atlasworld.protocol.handler.DictionaryCompressor;
 import fr.atlasworld.protocol.handler.ExecutorHandler;
 import fr.atlasworld.protocol.handler.HandshakeHandler;
+import fr.atlasworld.protocol.handler.PingHandler;
+import fr.atlasworld.protocol.handler.RateLimits;
+import fr.atlasworld.protocol.handler.StreamHandler;
 import fr.atlasworld.protocol.socket.ServerSocketImpl;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.timeout.IdleStateHandler;
 import org.jetbrains.annotations.NotNull;
 
 import javax.crypto.KeyGenerator;
 import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class ServerSocketInitializer extends ChannelInitializer<SocketChannel> {
     private final ServerSocketImpl socket;
     private final byte[] precalculatedServerInfo;
     private final KeyGenerator secretKeyGenerator;
-    private final int rateLimit;
+    private final RateLimits rateLimits;
 
-    public ServerSocketInitializer(ServerSocketImpl socket, Map<String, String> properties, int rateLimit) throws GeneralSecurityException {
+    public ServerSocketInitializer(ServerSocketImpl socket, Map<String, String> properties, RateLimits rateLimits) throws GeneralSecurityException {
         this.socket = socket;
-        this.rateLimit = rateLimit;
+        this.rateLimits = rateLimits;
 
         // Initialize everything now to prevent too much processing for new connections.
         // Only one down-side, server information are static, maybe dynamic server info in the future ?
         HandshakeWrapper.ServerInfo.Builder info = HandshakeWrapper.ServerInfo.newBuilder()
                 .setPublicKey(ByteString.copyFrom(this.socket.sessionKeyPair().getPublic().getEncoded()))
-                .setVersion(AtlasProtocol.PROTOCOL_VERSION);
+                .setVersion(AtlasProtocol.PROTOCOL_VERSION)
+                .setSuite(this.socket.handshakeSuite().name());
 
         properties.forEach((key, value) -> {
             info.addProperties(HandshakeWrapper.ServerProperty.newBuilder()
                     .setKey(key).setValue(value).build());
         });
 
+        this.socket.compressionAlgorithms().forEach(algorithm -> info.addCompression(algorithm.name()));
+        this.socket.compressionDictionaries().forEach((key, dictionary) -> {
+            info.addDictionaries(HandshakeWrapper.CompressionDictionary.newBuilder()
+                    .setKey(key).setChecksum(DictionaryCompressor.checksum(dictionary)).build());
+        });
+
         this.precalculatedServerInfo = info.build().toByteArray();
         this.secretKeyGenerator = KeyGenerator.getInstance(HandshakeHandler.SECRET_KEY_ALGORITHM);
     }
@@ -47,9 +60,19 @@ public class ServerSocketInitializer extends ChannelInitializer<SocketChannel> {
     protected void initChannel(@NotNull SocketChannel ch) throws Exception {
         ChannelPipeline pipeline = ch.pipeline();
 
+        pipeline.addLast(this.socket.trafficShaper()); // Socket-wide bandwidth shaping
         pipeline.addLast(new LengthFieldBasedFrameDecoder(CodecHandler.MAX_PACKET_SIZE, 0, Integer.BYTES, 0, Integer.BYTES));
-        pipeline.addLast(HandshakeHandler.createServer(this.socket, this.secretKeyGenerator, this.precalculatedServerInfo, this.rateLimit)); // Handle Handshake
-        pipeline.addLast(new CodecHandler()); // Decode Requests
-        pipeline.addLast(new ExecutorHandler(this.socket, this.socket.registry(), this.socket.rootNode())); // Handles requests
+        pipeline.addLast(HandshakeHandler.createServer(this.socket, this.secretKeyGenerator, this.precalculatedServerInfo,
+                this.socket.handshakeExecutor(), this.rateLimits)); // Handle Handshake
+        if (this.socket.readIdleTimeout() > 0 || this.socket.writeIdleTimeout() > 0)
+            pipeline.addLast(new IdleStateHandler(this.socket.readIdleTimeout(), this.socket.writeIdleTimeout(), 0,
+                    TimeUnit.MILLISECONDS)); // Dead peer detection
+
+        pipeline.addLast(new PingHandler(this.socket.pingInterval())); // Keep-alive & round-trip time
+        pipeline.addLast(new StreamHandler()); // Schedule & interleave packets by priority
+        pipeline.addLast(new CodecHandler(this.socket.compressionThreshold())); // Decode Requests
+        pipeline.addLast(new ExecutorHandler(this.socket, this.socket.registry(), this.socket.rootNode(),
+                this.socket.globalRateLimiter(), this.socket.packetRateLimits(),
+                this.socket.requestDeduplicator(), this.socket.responseCaches())); // Handles requests
     }
 }